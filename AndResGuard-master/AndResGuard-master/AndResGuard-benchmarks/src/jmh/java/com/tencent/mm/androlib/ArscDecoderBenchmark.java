@@ -0,0 +1,95 @@
+package com.tencent.mm.androlib;
+
+import com.tencent.mm.androlib.res.decoder.ARSCTable;
+import com.tencent.mm.benchmark.BenchmarkSupport;
+import com.tencent.mm.directory.DirectoryException;
+import com.tencent.mm.resourceproguard.Configuration;
+import com.tencent.mm.resourceproguard.InputParam;
+import com.tencent.mm.util.Log;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import org.apache.commons.io.IOUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * resources.arsc 的解析、混淆和重写，输入 apk 通过 -PbenchmarkApk 指定
+ * <p>
+ * decodeAndWrite 走的是 {@link ApkDecoder#decode()} 的 streamZip 模式，资源文件直接从 apk 中读取，
+ * 不包含解压到 temp 的时间；mergeDuplicatedRes=true 时同时包含重复资源的查找和合并
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ArscDecoderBenchmark {
+    @Param({"false", "true"})
+    public boolean mergeDuplicatedRes;
+
+    private File mApkFile;
+    private File mOutDir;
+    private Configuration mConfig;
+    private byte[] mArsc;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        mApkFile = BenchmarkSupport.apkFile();
+        mOutDir = BenchmarkSupport.createTempDir("arsc");
+        InputParam param = new InputParam.Builder().setWhiteList(new ArrayList<String>())
+            .setCompressFilePattern(new ArrayList<String>())
+            .setMergeDuplicatedRes(mergeDuplicatedRes)
+            .setStreamZip(true)
+            .setLogLevel("warn")
+            .setMetaName("META-INF")
+            .setApkPath(mApkFile.getAbsolutePath())
+            .setOutBuilder(mOutDir.getAbsolutePath())
+            .create();
+        mConfig = new Configuration(param);
+        Log.setLevel(mConfig.mLogLevel);
+
+        try (ZipFile zipFile = new ZipFile(mApkFile)) {
+            ZipEntry entry = zipFile.getEntry("resources.arsc");
+            if (entry == null) {
+                throw new IOException(String.format("%s has no resources.arsc", mApkFile.getAbsolutePath()));
+            }
+            try (InputStream in = zipFile.getInputStream(entry)) {
+                mArsc = IOUtils.toByteArray(in);
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchmarkSupport.deleteDir(mOutDir);
+    }
+
+    /**
+     * 只解析 arsc 的结构，不做混淆
+     */
+    @Benchmark
+    public ARSCTable readTable() throws AndrolibException {
+        return ARSCTable.read(new ByteArrayInputStream(mArsc));
+    }
+
+    @Benchmark
+    public File decodeAndWrite() throws AndrolibException, IOException, DirectoryException {
+        //每个 ApkDecoder 默认带一个新的 ResguardContext，不需要清理上一次的结果
+        ApkDecoder decoder = new ApkDecoder(mConfig, mApkFile);
+        decoder.setOutDir(mOutDir);
+        decoder.decode();
+        return decoder.getOutARSCFile();
+    }
+}
@@ -0,0 +1,67 @@
+package com.tencent.mm.androlib.res.decoder;
+
+import com.tencent.mm.androlib.AndrolibException;
+import com.tencent.mm.util.WhiteListMatcher;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * 给一个类型下的所有资源分配混淆名称，和 ARSCDecoder 处理每个类型时的调用顺序一样：
+ * reset 白名单，剔除已经存在的名称，再逐个取名
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ResguardStringBuilderBenchmark {
+    @Param({"1000", "20000"})
+    public int entryCount;
+
+    /**
+     * none 不配置白名单，pattern 配置几条和 README 里类似的通配符白名单
+     */
+    @Param({"none", "pattern"})
+    public String whiteList;
+
+    private ARSCDecoder.ResguardStringBuilder mBuilder;
+    private WhiteListMatcher mWhiteList;
+    //这个类型下已经存在的、和混淆名称冲突的资源名
+    private List<String> mExistNames;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        mBuilder = new ARSCDecoder.ResguardStringBuilder();
+        if ("pattern".equals(whiteList)) {
+            mWhiteList = new WhiteListMatcher();
+            mWhiteList.add("a*");
+            mWhiteList.add("ic_*");
+            mWhiteList.add("[0-9a-z]_[0-9a-z]");
+        }
+        mExistNames = new ArrayList<>();
+        for (int i = 0; i < entryCount; i += 7) {
+            mExistNames.add(ResguardNameTable.nameAt(i));
+        }
+    }
+
+    @Benchmark
+    public void allocateNames(Blackhole blackhole) throws AndrolibException {
+        mBuilder.reset(mWhiteList);
+        mBuilder.removeStrings(mExistNames);
+        for (int id = 0; id < entryCount; id++) {
+            if (!mBuilder.isReplaced(id) && !mBuilder.isInWhiteList(id)) {
+                blackhole.consume(mBuilder.getReplaceString());
+                mBuilder.setInReplaceList(id);
+            }
+        }
+    }
+}
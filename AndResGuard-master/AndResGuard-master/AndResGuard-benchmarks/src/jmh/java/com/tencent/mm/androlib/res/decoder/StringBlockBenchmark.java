@@ -0,0 +1,144 @@
+package com.tencent.mm.androlib.res.decoder;
+
+import com.tencent.mm.androlib.AndrolibException;
+import com.tencent.mm.util.ByteBufferInput;
+import com.tencent.mm.util.ByteBufferOutput;
+import com.tencent.mm.util.ExtDataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * 字符串池的读取和混淆后重写
+ * <p>
+ * 字符串池是按 resources.arsc 的格式生成的，内容类似资源名和资源路径，分 utf-8 和 utf-16 两种编码
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class StringBlockBenchmark {
+    private static final int CHUNK_STRINGPOOL_TYPE = 0x001C0001;
+    private static final int UTF8_FLAG = 0x00000100;
+    private static final int HEADER_SIZE = 7 * 4;
+
+    @Param({"utf8", "utf16"})
+    public String encoding;
+
+    @Param({"1000", "20000"})
+    public int stringCount;
+
+    private byte[] mPool;
+    //混淆后的名称 -> 原来的名称
+    private Map<String, Set<String>> mSpecNames;
+    //全局字符串池中资源文件路径的下标 -> 混淆后的路径
+    private Map<Integer, String> mTableProguardMap;
+    private Map<String, Integer> mCurSpecNameToPos;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        boolean utf8 = "utf8".equals(encoding);
+        String[] strings = new String[stringCount];
+        for (int i = 0; i < stringCount; i++) {
+            //一半是资源文件路径，一半是资源名
+            strings[i] = i % 2 == 0
+                ? String.format("res/drawable-xhdpi-v4/abc_ic_menu_item_%d.png", i)
+                : String.format("abc_action_bar_item_%d", i);
+        }
+        mPool = buildPool(strings, utf8);
+
+        mSpecNames = new LinkedHashMap<>();
+        mTableProguardMap = new HashMap<>();
+        for (int i = 0; i < stringCount; i++) {
+            String name = ResguardNameTable.nameAt(i);
+            Set<String> specNames = new HashSet<>();
+            specNames.add(strings[i]);
+            mSpecNames.put(name, specNames);
+            if (i % 2 == 0) {
+                mTableProguardMap.put(i, "r/" + ResguardNameTable.nameAt(i % 26) + "/" + name + ".png");
+            }
+        }
+        mCurSpecNameToPos = new LinkedHashMap<>();
+    }
+
+    @Benchmark
+    public StringBlock read() throws IOException {
+        return StringBlock.read(ByteBufferInput.wrap(mPool));
+    }
+
+    @Benchmark
+    public ByteBufferOutput writeSpecNameStringBlock() throws IOException, AndrolibException {
+        ByteBufferOutput buffer = new ByteBufferOutput(mPool.length);
+        StringBlock.writeSpecNameStringBlock(ByteBufferInput.wrap(mPool),
+                new ExtDataOutput(buffer),
+                mSpecNames,
+                mCurSpecNameToPos
+        );
+        return buffer;
+    }
+
+    @Benchmark
+    public ByteBufferOutput writeTableNameStringBlock() throws IOException, AndrolibException {
+        ByteBufferOutput buffer = new ByteBufferOutput(mPool.length);
+        StringBlock.writeTableNameStringBlock(ByteBufferInput.wrap(mPool), new ExtDataOutput(buffer), mTableProguardMap);
+        return buffer;
+    }
+
+    /**
+     * 生成一个没有 style 的 ResStringPool，字符串都是 ascii 并且长度小于 128
+     */
+    static byte[] buildPool(String[] strings, boolean utf8) {
+        byte[][] encoded = new byte[strings.length][];
+        int dataSize = 0;
+        for (int i = 0; i < strings.length; i++) {
+            encoded[i] = strings[i].getBytes(utf8 ? StandardCharsets.UTF_8 : StandardCharsets.UTF_16LE);
+            //utf-8 前面是字符数和字节数各一个字节，utf-16 前面是两个字节的字符数，最后都有一个 0 结尾
+            dataSize += utf8 ? encoded[i].length + 3 : encoded[i].length + 4;
+        }
+        dataSize = (dataSize + 3) & ~3;
+        int stringsStart = HEADER_SIZE + 4 * strings.length;
+        int chunkSize = stringsStart + dataSize;
+
+        ByteBuffer buffer = ByteBuffer.allocate(chunkSize).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(CHUNK_STRINGPOOL_TYPE);
+        buffer.putInt(chunkSize);
+        buffer.putInt(strings.length);
+        buffer.putInt(0);
+        buffer.putInt(utf8 ? UTF8_FLAG : 0);
+        buffer.putInt(stringsStart);
+        buffer.putInt(0);
+        int offset = 0;
+        for (byte[] bytes : encoded) {
+            buffer.putInt(offset);
+            offset += utf8 ? bytes.length + 3 : bytes.length + 4;
+        }
+        for (int i = 0; i < encoded.length; i++) {
+            if (utf8) {
+                buffer.put((byte) strings[i].length());
+                buffer.put((byte) encoded[i].length);
+                buffer.put(encoded[i]);
+                buffer.put((byte) 0);
+            } else {
+                buffer.putShort((short) strings[i].length());
+                buffer.put(encoded[i]);
+                buffer.putShort((short) 0);
+            }
+        }
+        return buffer.array();
+    }
+}
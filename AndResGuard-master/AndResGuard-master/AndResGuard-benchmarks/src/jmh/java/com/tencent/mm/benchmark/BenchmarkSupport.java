@@ -0,0 +1,56 @@
+package com.tencent.mm.benchmark;
+
+import com.tencent.mm.util.FileOperation;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+/**
+ * benchmark 共用的输入和临时目录
+ */
+public final class BenchmarkSupport {
+  /**
+   * 用来跑端到端 benchmark 的 apk，通过 gradle 的 -PbenchmarkApk 传进来
+   */
+  public static final String APK_PROPERTY = "andresguard.benchmark.apk";
+
+  private static File sSyntheticApk;
+
+  private BenchmarkSupport() {
+  }
+
+  /**
+   * 没有指定 apk 的时候用 {@link SyntheticApkGenerator} 的默认参数生成一个，同一个进程中只生成一次
+   */
+  public static synchronized File apkFile() throws IOException {
+    String path = System.getProperty(APK_PROPERTY);
+    if (path == null || path.isEmpty()) {
+      if (sSyntheticApk == null) {
+        File dir = createTempDir("synthetic");
+        File apk = new File(dir, "synthetic.apk");
+        //deleteOnExit 按注册的相反顺序删除，先删文件再删目录
+        dir.deleteOnExit();
+        apk.deleteOnExit();
+        System.out.printf("benchmark apk is not set, generating %s\n", apk.getAbsolutePath());
+        new SyntheticApkGenerator.Builder().create().generate(apk);
+        sSyntheticApk = apk;
+      }
+      return sSyntheticApk;
+    }
+    File apk = new File(path);
+    if (!apk.isFile()) {
+      throw new IOException(String.format("benchmark apk %s does not exist", apk.getAbsolutePath()));
+    }
+    return apk;
+  }
+
+  public static File createTempDir(String prefix) throws IOException {
+    return Files.createTempDirectory("andresguard-" + prefix).toFile();
+  }
+
+  public static void deleteDir(File dir) {
+    if (dir != null) {
+      FileOperation.deleteDir(dir);
+    }
+  }
+}
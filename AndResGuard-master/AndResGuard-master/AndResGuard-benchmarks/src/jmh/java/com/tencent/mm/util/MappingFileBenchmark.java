@@ -0,0 +1,117 @@
+package com.tencent.mm.util;
+
+import com.tencent.mm.benchmark.BenchmarkSupport;
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * 加载 keepmapping 文件，和 Configuration 一样解析成 package -> type -> name 的 map
+ * <p>
+ * lookup 按 (package, type, name) 查找所有的资源，text 查解析好的 map，binary 直接在 mmap 的文件中二分
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class MappingFileBenchmark {
+  private static final String PACKAGE_NAME = "com.tencent.mm";
+  private static final int TYPE_COUNT = 20;
+
+  @Param({"10000", "150000"})
+  public int entryCount;
+
+  @Param({"text", "binary"})
+  public String format;
+
+  private File mWorkDir;
+  private File mMappingFile;
+  private HashMap<String, HashMap<String, HashMap<String, String>>> mLoaded;
+  private MappingFile mMapped;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    mWorkDir = BenchmarkSupport.createTempDir("mapping");
+    File textFile = new File(mWorkDir, "resource_mapping.txt");
+    try (MappingFile.TextWriter writer = new MappingFile.TextWriter(textFile)) {
+      for (int i = 0; i < TYPE_COUNT; i++) {
+        writer.visitFile("res/type" + i, "r/" + i);
+      }
+      for (int i = 0; i < entryCount; i++) {
+        writer.visitRes(PACKAGE_NAME, typeName(i), resName(i), Integer.toString(i, Character.MAX_RADIX));
+      }
+    }
+    if ("binary".equals(format)) {
+      mMappingFile = new File(mWorkDir, "resource_mapping.bin");
+      MappingFile.convert(textFile, mMappingFile);
+      mMapped = MappingFile.open(mMappingFile);
+    } else {
+      mMappingFile = textFile;
+      mLoaded = load();
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    if (mMapped != null) {
+      mMapped.close();
+    }
+    BenchmarkSupport.deleteDir(mWorkDir);
+  }
+
+  @Benchmark
+  public HashMap<String, HashMap<String, HashMap<String, String>>> load() throws IOException {
+    final HashMap<String, HashMap<String, HashMap<String, String>>> resMapping = new HashMap<>();
+    MappingFile.read(mMappingFile, new MappingFile.Visitor() {
+      @Override
+      public void visitFile(String raw, String result) {
+      }
+
+      @Override
+      public void visitRes(String packageName, String typeName, String name, String replace) {
+        HashMap<String, HashMap<String, String>> typeMap = resMapping.get(packageName);
+        if (typeMap == null) {
+          typeMap = new HashMap<>();
+          resMapping.put(packageName, typeMap);
+        }
+        HashMap<String, String> namesMap = typeMap.get(typeName);
+        if (namesMap == null) {
+          namesMap = new HashMap<>();
+          typeMap.put(typeName, namesMap);
+        }
+        namesMap.put(name, replace);
+      }
+    });
+    return resMapping;
+  }
+
+  @Benchmark
+  public void lookup(Blackhole blackhole) {
+    for (int i = 0; i < entryCount; i++) {
+      if (mMapped != null) {
+        blackhole.consume(mMapped.getReplace(PACKAGE_NAME, typeName(i), resName(i)));
+      } else {
+        blackhole.consume(mLoaded.get(PACKAGE_NAME).get(typeName(i)).get(resName(i)));
+      }
+    }
+  }
+
+  private static String typeName(int index) {
+    return "type" + (index % TYPE_COUNT);
+  }
+
+  private static String resName(int index) {
+    return "res_name_" + index;
+  }
+}
@@ -0,0 +1,92 @@
+package com.tencent.mm.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * 用同一个 type 下的白名单匹配所有的资源名
+ * <p>
+ * regex 和原来一样逐条执行转换后的 Pattern，compiled 使用 {@link WhiteListMatcher}。
+ * 白名单大部分是完整的资源名，其次是 prefix*，只有少量真正的通配符
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class WhiteListMatcherBenchmark {
+  @Param({"100", "1200"})
+  public int patternCount;
+
+  @Param({"regex", "compiled"})
+  public String matcher;
+
+  private static final int NAME_COUNT = 20000;
+
+  private List<Pattern> mPatterns;
+  private WhiteListMatcher mMatcher;
+  private String[] mNames;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    List<String> whiteList = new ArrayList<>();
+    for (int i = 0; i < patternCount; i++) {
+      switch (i % 20) {
+        case 0:
+          whiteList.add("*_module" + i + "_?");
+          break;
+        case 1:
+        case 2:
+        case 3:
+        case 4:
+        case 5:
+        case 6:
+          whiteList.add("module" + i + "_*");
+          break;
+        default:
+          whiteList.add("res_name_" + (i * 13));
+          break;
+      }
+    }
+    mPatterns = new ArrayList<>();
+    mMatcher = new WhiteListMatcher();
+    for (String name : whiteList) {
+      mPatterns.add(Pattern.compile(Utils.convertToPatternString(name)));
+      mMatcher.add(name);
+    }
+    mNames = new String[NAME_COUNT];
+    for (int i = 0; i < NAME_COUNT; i++) {
+      mNames[i] = i % 5 == 0 ? "module" + (i % patternCount) + "_icon" : "res_name_" + i;
+    }
+  }
+
+  @Benchmark
+  public int matchAll() {
+    int matched = 0;
+    boolean compiled = "compiled".equals(matcher);
+    for (String name : mNames) {
+      if (compiled ? mMatcher.matches(name) : matchRegex(name)) {
+        matched++;
+      }
+    }
+    return matched;
+  }
+
+  private boolean matchRegex(String name) {
+    for (Pattern pattern : mPatterns) {
+      if (pattern.matcher(name).matches()) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
@@ -0,0 +1,77 @@
+package com.tencent.mm.util;
+
+import com.tencent.mm.benchmark.BenchmarkSupport;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * 把解压出来的 apk 重新打包，和 ResourceApkBuilder 生成 unsigned apk 一样
+ * <p>
+ * rawCopy=true 时所有文件都当作没有修改过，直接从原 apk 中拷贝压缩后的数据
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ZipFilesBenchmark {
+  @Param({"false", "true"})
+  public boolean rawCopy;
+
+  private File mApkFile;
+  private File mWorkDir;
+  private File mUnzipDir;
+  private File mOutApk;
+  private HashMap<String, Integer> mCompressData;
+  private List<File> mFiles;
+  private Map<String, String> mRawEntryNames;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    mApkFile = BenchmarkSupport.apkFile();
+    mWorkDir = BenchmarkSupport.createTempDir("zip");
+    mUnzipDir = new File(mWorkDir, TypedValue.UNZIP_FILE_PATH);
+    mOutApk = new File(mWorkDir, "out.apk");
+    mCompressData = FileOperation.unZipAPk(mApkFile.getAbsolutePath(), mUnzipDir.getAbsolutePath());
+
+    File[] files = mUnzipDir.listFiles();
+    mFiles = new ArrayList<>();
+    if (files != null) {
+      for (File file : files) {
+        mFiles.add(file);
+      }
+    }
+    mRawEntryNames = new HashMap<>();
+    for (String name : mCompressData.keySet()) {
+      mRawEntryNames.put(name, name);
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    BenchmarkSupport.deleteDir(mWorkDir);
+  }
+
+  @Benchmark
+  public File zipFiles() throws IOException {
+    if (rawCopy) {
+      FileOperation.zipFiles(mFiles, mUnzipDir, mOutApk, mCompressData, mApkFile, mRawEntryNames);
+    } else {
+      FileOperation.zipFiles(mFiles, mUnzipDir, mOutApk, mCompressData);
+    }
+    return mOutApk;
+  }
+}
@@ -0,0 +1,587 @@
+package com.tencent.mm.benchmark;
+
+import com.tencent.mm.benchmark.SyntheticArscWriter.ConfigDef;
+import com.tencent.mm.benchmark.SyntheticArscWriter.PackageDef;
+import com.tencent.mm.benchmark.SyntheticArscWriter.TypeDef;
+import com.tencent.mm.benchmark.SyntheticArscWriter.Value;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * 按参数生成用来做压力测试和 benchmark 的 apk，相同的参数和 seed 生成的 apk 内容完全一样
+ * <p>
+ * resources.arsc 可以被 ARSCDecoder 正常混淆；只有一个 package 并且是 utf-8 字符串池时 arscparse 也能完整解析。
+ * 多个 package 时只有第一个 package 带资源文件，其余 package 只有值类型的资源。
+ * AndroidManifest.xml 和 classes.dex 只是占位，生成的 apk 不能安装
+ */
+public class SyntheticApkGenerator {
+  private static final String ARG_OUT = "-out";
+  private static final String ARG_PACKAGES = "-packages";
+  private static final String ARG_TYPES = "-types";
+  private static final String ARG_ENTRIES = "-entriesPerType";
+  private static final String ARG_CONFIGS = "-configsPerEntry";
+  private static final String ARG_ENCODING = "-encoding";
+  private static final String ARG_DUPLICATE = "-duplicateRatio";
+  private static final String ARG_RES_FILE_SIZE = "-resFileSize";
+  private static final String ARG_ASSETS = "-assets";
+  private static final String ARG_ASSET_SIZE = "-assetSize";
+  private static final String ARG_SEED = "-seed";
+
+  private static final int MAX_ZIP_ENTRIES = 0xffff;
+  private static final String BASE_PACKAGE_NAME = "com.tencent.mm.synthetic";
+  // 2019-01-01，固定 zip 中的时间，保证每次生成的 apk 一样
+  private static final long ENTRY_TIME = 1546300800000L;
+  private static final byte[] PNG_SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n'};
+  private static final byte[] XML_HEADER = {0x03, 0x00, 0x08, 0x00};
+  private static final byte[] DEX_MAGIC = {'d', 'e', 'x', '\n', '0', '3', '5', 0};
+
+  // ACONFIGURATION_* 中对应的位，写到 typeSpec 中
+  private static final int CONFIG_LOCALE = 0x0004;
+  private static final int CONFIG_ORIENTATION = 0x0080;
+  private static final int CONFIG_DENSITY = 0x0100;
+  private static final int CONFIG_VERSION = 0x0400;
+  private static final int CONFIG_UI_MODE = 0x1000;
+  private static final int CONFIG_SMALLEST_SCREEN_SIZE = 0x2000;
+
+  private static final Qualifier[] QUALIFIERS = {
+      new Qualifier("", null, null, 0, 0, 0, 0, 0),
+      new Qualifier("-mdpi-v4", null, null, 0, 160, 4, 0, 0),
+      new Qualifier("-hdpi-v4", null, null, 0, 240, 4, 0, 0),
+      new Qualifier("-xhdpi-v4", null, null, 0, 320, 4, 0, 0),
+      new Qualifier("-xxhdpi-v4", null, null, 0, 480, 4, 0, 0),
+      new Qualifier("-xxxhdpi-v4", null, null, 0, 640, 4, 0, 0),
+      new Qualifier("-ldpi-v4", null, null, 0, 120, 4, 0, 0),
+      new Qualifier("-anydpi-v21", null, null, 0, 0xfffe, 21, 0, 0),
+      new Qualifier("-v21", null, null, 0, 0, 21, 0, 0),
+      new Qualifier("-land", null, null, 2, 0, 0, 0, 0),
+      new Qualifier("-zh-rCN", "zh", "CN", 0, 0, 0, 0, 0),
+      new Qualifier("-en-rGB", "en", "GB", 0, 0, 0, 0, 0),
+      new Qualifier("-night-v8", null, null, 0, 0, 8, 0x20, 0),
+      new Qualifier("-sw600dp-v13", null, null, 0, 0, 13, 0, 600),
+  };
+  // 图片类型优先用不同的 density，其他类型优先用 sdk 版本、横竖屏和语言
+  private static final int[] DENSITY_ORDER = {0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13};
+  private static final int[] OTHER_ORDER = {0, 8, 9, 10, 11, 12, 13, 2, 3, 4, 1, 5, 6, 7};
+
+  /**
+   * 类型的排列顺序让少量类型时也同时有文件和值
+   */
+  private static final TypeKind[] TYPES = {
+      new TypeKind("drawable", Kind.PNG),
+      new TypeKind("layout", Kind.XML),
+      new TypeKind("string", Kind.STRING),
+      new TypeKind("mipmap", Kind.PNG),
+      new TypeKind("dimen", Kind.DIMEN),
+      new TypeKind("anim", Kind.XML),
+      new TypeKind("color", Kind.COLOR),
+      new TypeKind("xml", Kind.XML),
+      new TypeKind("id", Kind.ID),
+      new TypeKind("raw", Kind.RAW),
+      new TypeKind("style", Kind.COMPLEX),
+      new TypeKind("menu", Kind.XML),
+      new TypeKind("integer", Kind.INTEGER),
+      new TypeKind("animator", Kind.XML),
+      new TypeKind("bool", Kind.BOOL),
+      new TypeKind("array", Kind.COMPLEX),
+      new TypeKind("interpolator", Kind.XML),
+      new TypeKind("plurals", Kind.COMPLEX),
+      new TypeKind("font", Kind.RAW),
+      new TypeKind("attr", Kind.COMPLEX),
+      new TypeKind("navigation", Kind.XML),
+      new TypeKind("fraction", Kind.FRACTION),
+      new TypeKind("transition", Kind.XML),
+  };
+
+  private final int mPackageCount;
+  private final int mTypeCount;
+  private final int mEntriesPerType;
+  private final int mConfigsPerEntry;
+  private final boolean mUtf8;
+  private final double mDuplicateRatio;
+  private final int mResFileSize;
+  private final int mAssetCount;
+  private final int mAssetSize;
+  private final long mSeed;
+
+  private SyntheticApkGenerator(Builder builder) {
+    mPackageCount = builder.packageCount;
+    mTypeCount = builder.typeCount;
+    mEntriesPerType = builder.entriesPerType;
+    mConfigsPerEntry = builder.configsPerEntry;
+    mUtf8 = builder.utf8;
+    mDuplicateRatio = builder.duplicateRatio;
+    mResFileSize = builder.resFileSize;
+    mAssetCount = builder.assetCount;
+    mAssetSize = builder.assetSize;
+    mSeed = builder.seed;
+  }
+
+  public static void main(String[] args) {
+    Builder builder = new Builder();
+    File out = null;
+    try {
+      for (int i = 0; i < args.length; i++) {
+        String arg = args[i];
+        if (i + 1 >= args.length) {
+          throw new IllegalArgumentException(String.format("missing value of %s", arg));
+        }
+        String value = args[++i];
+        switch (arg) {
+          case ARG_OUT:
+            out = new File(value);
+            break;
+          case ARG_PACKAGES:
+            builder.setPackageCount(Integer.parseInt(value));
+            break;
+          case ARG_TYPES:
+            builder.setTypeCount(Integer.parseInt(value));
+            break;
+          case ARG_ENTRIES:
+            builder.setEntriesPerType(Integer.parseInt(value));
+            break;
+          case ARG_CONFIGS:
+            builder.setConfigsPerEntry(Integer.parseInt(value));
+            break;
+          case ARG_ENCODING:
+            builder.setEncoding(value);
+            break;
+          case ARG_DUPLICATE:
+            builder.setDuplicateRatio(Double.parseDouble(value));
+            break;
+          case ARG_RES_FILE_SIZE:
+            builder.setResFileSize(Integer.parseInt(value));
+            break;
+          case ARG_ASSETS:
+            builder.setAssetCount(Integer.parseInt(value));
+            break;
+          case ARG_ASSET_SIZE:
+            builder.setAssetSize(Integer.parseInt(value));
+            break;
+          case ARG_SEED:
+            builder.setSeed(Long.parseLong(value));
+            break;
+          default:
+            throw new IllegalArgumentException(String.format("unknown argument %s", arg));
+        }
+      }
+      if (out == null) {
+        throw new IllegalArgumentException(String.format("%s is required", ARG_OUT));
+      }
+      Summary summary = builder.create().generate(out);
+      System.out.printf("generated %s: %s\n", out.getAbsolutePath(), summary);
+    } catch (IllegalArgumentException e) {
+      System.err.println(e.getMessage());
+      printUsage(System.err);
+      System.exit(2);
+    } catch (IOException e) {
+      e.printStackTrace();
+      System.exit(1);
+    }
+  }
+
+  private static void printUsage(PrintStream out) {
+    out.println();
+    out.println("Usage: SyntheticApkGenerator " + ARG_OUT + " out.apk [options]");
+    printOption(out, ARG_PACKAGES + " <count>", "package count, only the first one has res files, default 1");
+    printOption(out, ARG_TYPES + " <count>", "resource types per package, 1-" + TYPES.length + ", default 10");
+    printOption(out, ARG_ENTRIES + " <count>", "entries per type, default 1000");
+    printOption(out, ARG_CONFIGS + " <count>", "configs per entry, 1-" + QUALIFIERS.length + ", default 3");
+    printOption(out, ARG_ENCODING + " <utf8|utf16>", "string pool encoding, default utf8");
+    printOption(out, ARG_DUPLICATE + " <0-1>", "ratio of res files duplicating another file, default 0.1");
+    printOption(out, ARG_RES_FILE_SIZE + " <bytes>", "average res file size, default 512");
+    printOption(out, ARG_ASSETS + " <count>", "asset file count, default 10");
+    printOption(out, ARG_ASSET_SIZE + " <bytes>", "asset file size, default 65536");
+    printOption(out, ARG_SEED + " <seed>", "random seed, default 1");
+  }
+
+  private static void printOption(PrintStream out, String option, String description) {
+    out.println(String.format("  %-28s %s", option, description));
+  }
+
+  public Summary generate(File apk) throws IOException {
+    Summary summary = new Summary();
+    Random random = new Random(mSeed);
+    SyntheticArscWriter arsc = new SyntheticArscWriter(mUtf8);
+    List<ResFile> resFiles = new ArrayList<>();
+
+    for (int p = 0; p < mPackageCount; p++) {
+      PackageDef pkg = arsc.addPackage(0x7f - p, p == 0 ? BASE_PACKAGE_NAME : BASE_PACKAGE_NAME + ".lib" + p);
+      String keyPrefix = p == 0 ? "" : "lib" + p + "_";
+      for (TypeKind kind : typesOfPackage(p)) {
+        String[] keys = new String[mEntriesPerType];
+        for (int e = 0; e < mEntriesPerType; e++) {
+          keys[e] = String.format("%s%s_item_%d", keyPrefix, kind.mName, e);
+        }
+        TypeDef type = pkg.addType(kind.mName, keys);
+        int[] order = kind.mKind == Kind.PNG ? DENSITY_ORDER : OTHER_ORDER;
+        int typeFirstFile = resFiles.size();
+        for (int c = 0; c < mConfigsPerEntry; c++) {
+          Qualifier qualifier = QUALIFIERS[order[c]];
+          Value[] values = new Value[mEntriesPerType];
+          for (int e = 0; e < mEntriesPerType; e++) {
+            if (kind.mKind.mExtension != null) {
+              String path = String.format("res/%s%s/%s%s", kind.mName, qualifier.mSuffix, keys[e], kind.mKind.mExtension);
+              values[e] = new Value(SyntheticArscWriter.VALUE_STRING, arsc.globalString(path));
+              int index = resFiles.size();
+              // 重复的文件只和同一个类型里面之前的文件重复
+              int source = index > typeFirstFile && random.nextDouble() < mDuplicateRatio
+                  ? resFiles.get(typeFirstFile + random.nextInt(index - typeFirstFile)).mSource
+                  : index;
+              resFiles.add(new ResFile(path, kind.mKind, source));
+              if (source != index) {
+                summary.duplicatedFiles++;
+              }
+            } else {
+              values[e] = createValue(arsc, kind, keys[e], qualifier, random);
+            }
+          }
+          type.addConfig(qualifier.mConfig, values);
+        }
+        summary.entries += mEntriesPerType;
+      }
+    }
+    summary.resFiles = resFiles.size();
+
+    byte[] arscData = arsc.write();
+    summary.arscSize = arscData.length;
+    File parent = apk.getAbsoluteFile().getParentFile();
+    if (parent != null && !parent.exists()) {
+      parent.mkdirs();
+    }
+    try (ZipOutputStream out = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(apk, false)))) {
+      // 空的 binary xml
+      putEntry(out, "AndroidManifest.xml", new byte[] {0x03, 0x00, 0x08, 0x00, 0x08, 0x00, 0x00, 0x00}, true);
+      putEntry(out, "classes.dex", randomContent(new Random(mSeed - 1), DEX_MAGIC, 64 * 1024, true), true);
+      putEntry(out, "resources.arsc", arscData, false);
+      for (ResFile file : resFiles) {
+        String name = resFiles.get(file.mSource).mPath;
+        byte[] content = fileContent(name, file.mKind);
+        putEntry(out, file.mPath, content, file.mKind != Kind.PNG);
+      }
+      for (int i = 0; i < mAssetCount; i++) {
+        Random assetRandom = new Random(mSeed * 31 + i);
+        putEntry(out, String.format("assets/asset_%d.bin", i), randomContent(assetRandom, null, mAssetSize, i % 2 == 0), true);
+      }
+    }
+    summary.apkSize = apk.length();
+    return summary;
+  }
+
+  /**
+   * 所有 package 共用 res 下的目录，混淆后的文件名在每个 package 中都是从头分配的，
+   * 所以只有第一个 package 有文件类型的资源，其他 package 只有值
+   */
+  private List<TypeKind> typesOfPackage(int packageIndex) {
+    List<TypeKind> types = new ArrayList<>();
+    for (TypeKind kind : TYPES) {
+      if (types.size() == mTypeCount) {
+        break;
+      }
+      if (packageIndex == 0 || kind.mKind.mExtension == null) {
+        types.add(kind);
+      }
+    }
+    return types;
+  }
+
+  private Value createValue(SyntheticArscWriter arsc, TypeKind kind, String key, Qualifier qualifier, Random random) {
+    switch (kind.mKind) {
+      case STRING:
+        return new Value(SyntheticArscWriter.VALUE_STRING, arsc.globalString(key + qualifier.mSuffix));
+      case DIMEN:
+        // mantissa 在高 24 位，单位是 dip
+        return new Value(SyntheticArscWriter.VALUE_DIMENSION, (random.nextInt(512) << 8) | 1);
+      case COLOR:
+        return new Value(SyntheticArscWriter.VALUE_INT_COLOR_ARGB8, 0xff000000 | random.nextInt(0x1000000));
+      case ID:
+        return new Value(SyntheticArscWriter.VALUE_INT_BOOLEAN, 0);
+      case INTEGER:
+        return new Value(SyntheticArscWriter.VALUE_INT_DEC, random.nextInt(10000));
+      case BOOL:
+        return new Value(SyntheticArscWriter.VALUE_INT_BOOLEAN, random.nextBoolean() ? -1 : 0);
+      case FRACTION:
+        return new Value(SyntheticArscWriter.VALUE_FRACTION, random.nextInt(100) << 8);
+      case COMPLEX:
+        // 引用几个 android 的 attr，complex entry 的值不参与混淆
+        int count = 1 + random.nextInt(4);
+        int[] names = new int[count];
+        for (int i = 0; i < count; i++) {
+          names[i] = 0x01010000 + random.nextInt(0x600);
+        }
+        return new Value(SyntheticArscWriter.VALUE_INT_DEC, random.nextInt(10000), names);
+      default:
+        throw new IllegalStateException(String.format("%s is a file type", kind.mName));
+    }
+  }
+
+  /**
+   * 文件内容只由路径和 seed 决定，重复的文件用被重复的文件的路径生成
+   */
+  private byte[] fileContent(String path, Kind kind) {
+    Random random = new Random(mSeed * 31 + path.hashCode());
+    int size = mResFileSize / 2 + random.nextInt(mResFileSize + 1);
+    switch (kind) {
+      case PNG:
+        return randomContent(random, PNG_SIGNATURE, size, false);
+      case XML:
+        return randomContent(random, XML_HEADER, size, true);
+      default:
+        return randomContent(random, null, size, random.nextBoolean());
+    }
+  }
+
+  /**
+   * @param compressible true 时生成重复的文本，false 时生成随机字节，压缩不了
+   */
+  private static byte[] randomContent(Random random, byte[] header, int size, boolean compressible) {
+    int headerSize = header == null ? 0 : header.length;
+    byte[] data = new byte[Math.max(size, headerSize)];
+    if (compressible) {
+      byte[] text = String.format("<item name=\"synthetic_%d\" value=\"%d\"/>\n", random.nextInt(100), random.nextInt())
+          .getBytes(StandardCharsets.US_ASCII);
+      for (int i = headerSize; i < data.length; i++) {
+        data[i] = text[i % text.length];
+      }
+    } else {
+      random.nextBytes(data);
+    }
+    if (header != null) {
+      System.arraycopy(header, 0, data, 0, headerSize);
+    }
+    return data;
+  }
+
+  private static void putEntry(ZipOutputStream out, String name, byte[] data, boolean deflate) throws IOException {
+    ZipEntry entry = new ZipEntry(name);
+    entry.setTime(ENTRY_TIME);
+    if (deflate) {
+      entry.setMethod(ZipEntry.DEFLATED);
+    } else {
+      CRC32 crc = new CRC32();
+      crc.update(data);
+      entry.setMethod(ZipEntry.STORED);
+      entry.setSize(data.length);
+      entry.setCompressedSize(data.length);
+      entry.setCrc(crc.getValue());
+    }
+    out.putNextEntry(entry);
+    out.write(data);
+    out.closeEntry();
+  }
+
+  private enum Kind {
+    PNG(".png"), XML(".xml"), RAW(".bin"), STRING, DIMEN, COLOR, ID, INTEGER, BOOL, FRACTION, COMPLEX;
+
+    // 不为 null 的是文件类型，值是 global 字符串池中的文件路径
+    private final String mExtension;
+
+    Kind() {
+      this(null);
+    }
+
+    Kind(String extension) {
+      mExtension = extension;
+    }
+  }
+
+  private static class TypeKind {
+    private final String mName;
+    private final Kind mKind;
+
+    TypeKind(String name, Kind kind) {
+      mName = name;
+      mKind = kind;
+    }
+  }
+
+  private static class Qualifier {
+    private final String mSuffix;
+    private final ConfigDef mConfig;
+
+    Qualifier(
+        String suffix, String language, String country, int orientation, int density, int sdkVersion, int uiMode,
+        int smallestScreenWidthDp) {
+      mSuffix = suffix;
+      int specFlags = (language != null ? CONFIG_LOCALE : 0)
+          | (orientation != 0 ? CONFIG_ORIENTATION : 0)
+          | (density != 0 ? CONFIG_DENSITY : 0)
+          | (sdkVersion != 0 ? CONFIG_VERSION : 0)
+          | (uiMode != 0 ? CONFIG_UI_MODE : 0)
+          | (smallestScreenWidthDp != 0 ? CONFIG_SMALLEST_SCREEN_SIZE : 0);
+      mConfig = new ConfigDef(language,
+          country,
+          orientation,
+          density,
+          sdkVersion,
+          uiMode,
+          smallestScreenWidthDp,
+          specFlags
+      );
+    }
+  }
+
+  private static class ResFile {
+    private final String mPath;
+    private final Kind mKind;
+    // 内容和哪个文件一样，不重复的时候是自己
+    private final int mSource;
+
+    ResFile(String path, Kind kind, int source) {
+      mPath = path;
+      mKind = kind;
+      mSource = source;
+    }
+  }
+
+  public static class Summary {
+    public int entries;
+    public int resFiles;
+    public int duplicatedFiles;
+    public int arscSize;
+    public long apkSize;
+
+    @Override
+    public String toString() {
+      return String.format("%d entries, %d res files (%d duplicated), resources.arsc %d bytes, apk %d bytes",
+          entries,
+          resFiles,
+          duplicatedFiles,
+          arscSize,
+          apkSize
+      );
+    }
+  }
+
+  public static class Builder {
+    private int packageCount;
+    private int typeCount;
+    private int entriesPerType;
+    private int configsPerEntry;
+    private boolean utf8;
+    private double duplicateRatio;
+    private int resFileSize;
+    private int assetCount;
+    private int assetSize;
+    private long seed;
+
+    public Builder() {
+      packageCount = 1;
+      typeCount = 10;
+      entriesPerType = 1000;
+      configsPerEntry = 3;
+      utf8 = true;
+      duplicateRatio = 0.1;
+      resFileSize = 512;
+      assetCount = 10;
+      assetSize = 64 * 1024;
+      seed = 1;
+    }
+
+    public Builder setPackageCount(int packageCount) {
+      this.packageCount = packageCount;
+      return this;
+    }
+
+    public Builder setTypeCount(int typeCount) {
+      this.typeCount = typeCount;
+      return this;
+    }
+
+    public Builder setEntriesPerType(int entriesPerType) {
+      this.entriesPerType = entriesPerType;
+      return this;
+    }
+
+    public Builder setConfigsPerEntry(int configsPerEntry) {
+      this.configsPerEntry = configsPerEntry;
+      return this;
+    }
+
+    /**
+     * @param encoding utf8 或者 utf16，所有字符串池都用同一种编码
+     */
+    public Builder setEncoding(String encoding) {
+      if ("utf8".equalsIgnoreCase(encoding) || "utf-8".equalsIgnoreCase(encoding)) {
+        utf8 = true;
+      } else if ("utf16".equalsIgnoreCase(encoding) || "utf-16".equalsIgnoreCase(encoding)) {
+        utf8 = false;
+      } else {
+        throw new IllegalArgumentException(String.format("unknown encoding %s, must be utf8 or utf16", encoding));
+      }
+      return this;
+    }
+
+    public Builder setDuplicateRatio(double duplicateRatio) {
+      this.duplicateRatio = duplicateRatio;
+      return this;
+    }
+
+    public Builder setResFileSize(int resFileSize) {
+      this.resFileSize = resFileSize;
+      return this;
+    }
+
+    public Builder setAssetCount(int assetCount) {
+      this.assetCount = assetCount;
+      return this;
+    }
+
+    public Builder setAssetSize(int assetSize) {
+      this.assetSize = assetSize;
+      return this;
+    }
+
+    public Builder setSeed(long seed) {
+      this.seed = seed;
+      return this;
+    }
+
+    public SyntheticApkGenerator create() {
+      checkRange("package count", packageCount, 1, 0x7f);
+      checkRange("type count", typeCount, 1, TYPES.length);
+      checkRange("entries per type", entriesPerType, 1, 0xffff);
+      checkRange("configs per entry", configsPerEntry, 1, QUALIFIERS.length);
+      checkRange("res file size", resFileSize, 16, Integer.MAX_VALUE / 2);
+      checkRange("asset count", assetCount, 0, Integer.MAX_VALUE);
+      checkRange("asset size", assetSize, 0, Integer.MAX_VALUE);
+      if (duplicateRatio < 0 || duplicateRatio > 1) {
+        throw new IllegalArgumentException(String.format("duplicate ratio must be in [0, 1], yours %s", duplicateRatio));
+      }
+      //不生成 zip64，文件数和真实的 apk 一样不能超过 65535
+      int fileTypes = 0;
+      for (int i = 0; i < typeCount; i++) {
+        if (TYPES[i].mKind.mExtension != null) {
+          fileTypes++;
+        }
+      }
+      long zipEntries = (long) fileTypes * entriesPerType * configsPerEntry + assetCount + 3;
+      if (zipEntries > MAX_ZIP_ENTRIES) {
+        throw new IllegalArgumentException(String.format(
+            "%d file types * %d entries * %d configs need %d zip entries, more than %d, use fewer entries or configs",
+            fileTypes,
+            entriesPerType,
+            configsPerEntry,
+            zipEntries,
+            MAX_ZIP_ENTRIES
+        ));
+      }
+      return new SyntheticApkGenerator(this);
+    }
+
+    private static void checkRange(String name, long value, long min, long max) {
+      if (value < min || value > max) {
+        throw new IllegalArgumentException(String.format("%s must be in [%d, %d], yours %d", name, min, max, value));
+      }
+    }
+  }
+}
@@ -0,0 +1,423 @@
+package com.tencent.mm.benchmark;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 按 aapt 的格式写 resources.arsc：table 头、全局字符串池，然后每个 package 依次是
+ * 类型字符串池、资源名字符串池、每个类型的 typeSpec 和每个 config 的 type 块儿
+ * <p>
+ * type 块儿中的 entry 都是紧密排列的，不会出现 -1 的偏移，这样 arscparse 顺序解析也没有问题
+ */
+class SyntheticArscWriter {
+  static final short TYPE_TABLE = 0x0002;
+  static final short TYPE_STRING_POOL = 0x0001;
+  static final short TYPE_PACKAGE = 0x0200;
+  static final short TYPE_TYPE = 0x0201;
+  static final short TYPE_SPEC_TYPE = 0x0202;
+
+  static final byte VALUE_STRING = 0x03;
+  static final byte VALUE_DIMENSION = 0x05;
+  static final byte VALUE_FRACTION = 0x06;
+  static final byte VALUE_INT_DEC = 0x10;
+  static final byte VALUE_INT_BOOLEAN = 0x12;
+  static final byte VALUE_INT_COLOR_ARGB8 = 0x1c;
+
+  private static final int UTF8_FLAG = 0x00000100;
+  private static final int STRING_POOL_HEADER_SIZE = 28;
+  // 带 typeIdOffset 的 package 头
+  private static final int PACKAGE_HEADER_SIZE = 288;
+  private static final int CONFIG_SIZE = 64;
+  private static final int TYPE_HEADER_SIZE = 20 + CONFIG_SIZE;
+  private static final short ENTRY_FLAG_COMPLEX = 0x0001;
+
+  private final boolean mUtf8;
+  private final Pool mGlobalStrings = new Pool();
+  private final List<PackageDef> mPackages = new ArrayList<>();
+
+  SyntheticArscWriter(boolean utf8) {
+    mUtf8 = utf8;
+  }
+
+  /**
+   * @return 字符串在全局字符串池中的下标，相同的字符串只保存一次
+   */
+  int globalString(String value) {
+    return mGlobalStrings.indexOf(value);
+  }
+
+  PackageDef addPackage(int id, String name) {
+    PackageDef pkg = new PackageDef(id, name);
+    mPackages.add(pkg);
+    return pkg;
+  }
+
+  byte[] write() {
+    Buffer out = new Buffer(1 << 16);
+    int tableStart = out.position();
+    out.putShort(TYPE_TABLE);
+    out.putShort((short) 12);
+    out.putInt(0);
+    out.putInt(mPackages.size());
+    writePool(out, mGlobalStrings.mValues);
+    for (PackageDef pkg : mPackages) {
+      writePackage(out, pkg);
+    }
+    out.putInt(tableStart + 4, out.position() - tableStart);
+    return out.toByteArray();
+  }
+
+  private void writePackage(Buffer out, PackageDef pkg) {
+    int start = out.position();
+    out.putShort(TYPE_PACKAGE);
+    out.putShort((short) PACKAGE_HEADER_SIZE);
+    out.putInt(0);
+    out.putInt(pkg.mId);
+    byte[] name = pkg.mName.getBytes(StandardCharsets.UTF_16LE);
+    if (name.length >= 256) {
+      throw new IllegalArgumentException(String.format("package name %s is too long", pkg.mName));
+    }
+    out.putBytes(name);
+    out.putBytes(new byte[256 - name.length]);
+    // typeStrings，lastPublicType，keyStrings，lastPublicKey，typeIdOffset
+    int offsetsPosition = out.position();
+    out.putInt(0);
+    out.putInt(pkg.mTypes.size());
+    out.putInt(0);
+    out.putInt(pkg.mKeys.mValues.size());
+    out.putInt(0);
+
+    out.putInt(offsetsPosition, out.position() - start);
+    List<String> typeNames = new ArrayList<>();
+    for (TypeDef type : pkg.mTypes) {
+      typeNames.add(type.mName);
+    }
+    writePool(out, typeNames);
+    out.putInt(offsetsPosition + 8, out.position() - start);
+    writePool(out, pkg.mKeys.mValues);
+
+    for (int i = 0; i < pkg.mTypes.size(); i++) {
+      writeType(out, i + 1, pkg.mTypes.get(i));
+    }
+    out.putInt(start + 4, out.position() - start);
+  }
+
+  private void writeType(Buffer out, int id, TypeDef type) {
+    int entryCount = type.mKeys.length;
+    int specFlags = 0;
+    for (ConfigDef config : type.mConfigs) {
+      specFlags |= config.mSpecFlags;
+    }
+    out.putShort(TYPE_SPEC_TYPE);
+    out.putShort((short) 16);
+    out.putInt(16 + 4 * entryCount);
+    out.putByte((byte) id);
+    out.putByte((byte) 0);
+    out.putShort((short) 0);
+    out.putInt(entryCount);
+    for (int i = 0; i < entryCount; i++) {
+      out.putInt(specFlags);
+    }
+
+    for (int c = 0; c < type.mConfigs.size(); c++) {
+      ConfigDef config = type.mConfigs.get(c);
+      Value[] values = type.mValues.get(c);
+      int start = out.position();
+      int entriesStart = TYPE_HEADER_SIZE + 4 * entryCount;
+      out.putShort(TYPE_TYPE);
+      out.putShort((short) TYPE_HEADER_SIZE);
+      out.putInt(0);
+      out.putByte((byte) id);
+      out.putByte((byte) 0);
+      out.putShort((short) 0);
+      out.putInt(entryCount);
+      out.putInt(entriesStart);
+      writeConfig(out, config);
+
+      int offsetsPosition = out.position();
+      out.skip(4 * entryCount);
+      int entriesPosition = out.position();
+      for (int i = 0; i < entryCount; i++) {
+        out.putInt(offsetsPosition + 4 * i, out.position() - entriesPosition);
+        Value value = values[i];
+        if (value.mComplexNames == null) {
+          out.putShort((short) 8);
+          out.putShort((short) 0);
+          out.putInt(type.mKeys[i]);
+          writeValue(out, value.mType, value.mData);
+        } else {
+          out.putShort((short) 16);
+          out.putShort(ENTRY_FLAG_COMPLEX);
+          out.putInt(type.mKeys[i]);
+          // parent
+          out.putInt(0);
+          out.putInt(value.mComplexNames.length);
+          for (int name : value.mComplexNames) {
+            out.putInt(name);
+            writeValue(out, value.mType, value.mData);
+          }
+        }
+      }
+      out.putInt(start + 4, out.position() - start);
+    }
+  }
+
+  private static void writeValue(Buffer out, byte type, int data) {
+    out.putShort((short) 8);
+    out.putByte((byte) 0);
+    out.putByte(type);
+    out.putInt(data);
+  }
+
+  /**
+   * ResTable_config，只用到了 locale、orientation、density、sdkVersion、uiMode 和 smallestScreenWidthDp
+   */
+  private static void writeConfig(Buffer out, ConfigDef config) {
+    int start = out.position();
+    out.putInt(CONFIG_SIZE);
+    // mcc, mnc
+    out.putInt(0);
+    out.putBytes(localeBytes(config.mLanguage));
+    out.putBytes(localeBytes(config.mCountry));
+    out.putByte((byte) config.mOrientation);
+    // touchscreen
+    out.putByte((byte) 0);
+    out.putShort((short) config.mDensity);
+    // keyboard, navigation, inputFlags, pad, screenWidth, screenHeight
+    out.putInt(0);
+    out.putInt(0);
+    out.putShort((short) config.mSdkVersion);
+    // minorVersion
+    out.putShort((short) 0);
+    // screenLayout
+    out.putByte((byte) 0);
+    out.putByte((byte) config.mUiMode);
+    out.putShort((short) config.mSmallestScreenWidthDp);
+    out.putBytes(new byte[CONFIG_SIZE - (out.position() - start)]);
+  }
+
+  private static byte[] localeBytes(String value) {
+    return value == null ? new byte[2] : value.getBytes(StandardCharsets.US_ASCII);
+  }
+
+  private void writePool(Buffer out, List<String> strings) {
+    int start = out.position();
+    int stringsStart = STRING_POOL_HEADER_SIZE + 4 * strings.size();
+    out.putShort(TYPE_STRING_POOL);
+    out.putShort((short) STRING_POOL_HEADER_SIZE);
+    out.putInt(0);
+    out.putInt(strings.size());
+    // styleCount
+    out.putInt(0);
+    out.putInt(mUtf8 ? UTF8_FLAG : 0);
+    out.putInt(stringsStart);
+    // stylesStart
+    out.putInt(0);
+
+    int offsetsPosition = out.position();
+    out.skip(4 * strings.size());
+    int dataPosition = out.position();
+    for (int i = 0; i < strings.size(); i++) {
+      out.putInt(offsetsPosition + 4 * i, out.position() - dataPosition);
+      String value = strings.get(i);
+      if (mUtf8) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        putUtf8Length(out, value.length());
+        putUtf8Length(out, bytes.length);
+        out.putBytes(bytes);
+        out.putByte((byte) 0);
+      } else {
+        putUtf16Length(out, value.length());
+        out.putBytes(value.getBytes(StandardCharsets.UTF_16LE));
+        out.putShort((short) 0);
+      }
+    }
+    while ((out.position() - start) % 4 != 0) {
+      out.putByte((byte) 0);
+    }
+    out.putInt(start + 4, out.position() - start);
+  }
+
+  private static void putUtf8Length(Buffer out, int length) {
+    if (length > 0x7f) {
+      out.putByte((byte) (0x80 | (length >> 8)));
+    }
+    out.putByte((byte) length);
+  }
+
+  private static void putUtf16Length(Buffer out, int length) {
+    if (length > 0x7fff) {
+      out.putShort((short) (0x8000 | (length >> 16)));
+    }
+    out.putShort((short) length);
+  }
+
+  static class PackageDef {
+    private final int mId;
+    private final String mName;
+    private final Pool mKeys = new Pool();
+    private final List<TypeDef> mTypes = new ArrayList<>();
+
+    PackageDef(int id, String name) {
+      mId = id;
+      mName = name;
+    }
+
+    /**
+     * @param keys 资源名，同一个 package 中不同类型的同名资源共用资源名字符串池中的一项
+     */
+    TypeDef addType(String name, String[] keys) {
+      int[] indexes = new int[keys.length];
+      for (int i = 0; i < keys.length; i++) {
+        indexes[i] = mKeys.indexOf(keys[i]);
+      }
+      TypeDef type = new TypeDef(name, indexes);
+      mTypes.add(type);
+      return type;
+    }
+  }
+
+  static class TypeDef {
+    private final String mName;
+    private final int[] mKeys;
+    private final List<ConfigDef> mConfigs = new ArrayList<>();
+    private final List<Value[]> mValues = new ArrayList<>();
+
+    TypeDef(String name, int[] keys) {
+      mName = name;
+      mKeys = keys;
+    }
+
+    /**
+     * @param values 和资源名一一对应，每个 config 中所有资源都有值
+     */
+    void addConfig(ConfigDef config, Value[] values) {
+      if (values.length != mKeys.length) {
+        throw new IllegalArgumentException(String.format("type %s expects %d values, got %d",
+            mName,
+            mKeys.length,
+            values.length
+        ));
+      }
+      mConfigs.add(config);
+      mValues.add(values);
+    }
+  }
+
+  static class ConfigDef {
+    private final String mLanguage;
+    private final String mCountry;
+    private final int mOrientation;
+    private final int mDensity;
+    private final int mSdkVersion;
+    private final int mUiMode;
+    private final int mSmallestScreenWidthDp;
+    private final int mSpecFlags;
+
+    ConfigDef(
+        String language, String country, int orientation, int density, int sdkVersion, int uiMode,
+        int smallestScreenWidthDp, int specFlags) {
+      mLanguage = language;
+      mCountry = country;
+      mOrientation = orientation;
+      mDensity = density;
+      mSdkVersion = sdkVersion;
+      mUiMode = uiMode;
+      mSmallestScreenWidthDp = smallestScreenWidthDp;
+      mSpecFlags = specFlags;
+    }
+  }
+
+  static class Value {
+    private final byte mType;
+    private final int mData;
+    // 不为 null 时写成 complex entry，每一项的 value 都是 type/data
+    private final int[] mComplexNames;
+
+    Value(byte type, int data) {
+      this(type, data, null);
+    }
+
+    Value(byte type, int data, int[] complexNames) {
+      mType = type;
+      mData = data;
+      mComplexNames = complexNames;
+    }
+  }
+
+  private static class Pool {
+    private final List<String> mValues = new ArrayList<>();
+    private final Map<String, Integer> mIndexes = new LinkedHashMap<>();
+
+    int indexOf(String value) {
+      Integer index = mIndexes.get(value);
+      if (index == null) {
+        index = mValues.size();
+        mValues.add(value);
+        mIndexes.put(value, index);
+      }
+      return index;
+    }
+  }
+
+  /**
+   * 可以回填的小端 buffer
+   */
+  private static class Buffer {
+    private ByteBuffer mBuffer;
+
+    Buffer(int capacity) {
+      mBuffer = ByteBuffer.allocate(capacity).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    int position() {
+      return mBuffer.position();
+    }
+
+    void putByte(byte value) {
+      ensure(1).put(value);
+    }
+
+    void putShort(short value) {
+      ensure(2).putShort(value);
+    }
+
+    void putInt(int value) {
+      ensure(4).putInt(value);
+    }
+
+    void putInt(int position, int value) {
+      mBuffer.putInt(position, value);
+    }
+
+    void putBytes(byte[] value) {
+      ensure(value.length).put(value);
+    }
+
+    void skip(int length) {
+      ensure(length).position(mBuffer.position() + length);
+    }
+
+    byte[] toByteArray() {
+      byte[] data = new byte[mBuffer.position()];
+      System.arraycopy(mBuffer.array(), 0, data, 0, data.length);
+      return data;
+    }
+
+    private ByteBuffer ensure(int length) {
+      if (mBuffer.remaining() < length) {
+        int capacity = Math.max(mBuffer.capacity() * 2, mBuffer.position() + length);
+        ByteBuffer buffer = ByteBuffer.allocate(capacity).order(ByteOrder.LITTLE_ENDIAN);
+        mBuffer.flip();
+        buffer.put(mBuffer);
+        mBuffer = buffer;
+      }
+      return mBuffer;
+    }
+  }
+}
@@ -4,6 +4,7 @@ import com.tencent.mm.androlib.ResourceRepackage;
 import com.tencent.mm.resourceproguard.Configuration;
 import com.tencent.mm.resourceproguard.InputParam;
 import com.tencent.mm.resourceproguard.Main;
+import com.tencent.mm.util.MappingFile;
 import com.tencent.mm.util.TypedValue;
 import java.io.File;
 import java.io.IOException;
@@ -27,12 +28,12 @@ public class CliMain extends Main {
   private static final String ARG_SIGNATURE = "-signature";
   private static final String ARG_KEEPMAPPING = "-mapping";
   private static final String ARG_REPACKAGE = "-repackage";
+  private static final String ARG_CONVERT_MAPPING = "-convertMapping";
   private static final String ARG_SIGNATURE_TYPE = "-signatureType";
   private static final String VALUE_SIGNATURE_TYPE_V1 = "v1";
   private static final String VALUE_SIGNATURE_TYPE_V2 = "v2";
 
   public static void main(String[] args) {
-    mBeginTime = System.currentTimeMillis();
     CliMain m = new CliMain();
     setRunningLocation(m);
     m.run(args);
@@ -112,6 +113,8 @@ public class CliMain extends Main {
                 + " /home/shwenzhang/tools/7za "
                 + ARG_ZIPALIGN
                 + "/home/shwenzhang/sdk/tools/zipalign");
+    out.println("if you want to convert a mapping file between the text and the binary format:");
+    out.printf("Such as: java -jar %s %s resource_mapping.txt resource_mapping.bin\n", command, ARG_CONVERT_MAPPING);
     out.println("if you want to special the final apk path, you can input:");
     out.printf("Such as: java -jar %s input.apk %s final_apk_path\n", command, ARG_FINAL_APK_PATH);
     out.println();
@@ -129,7 +132,8 @@ public class CliMain extends Main {
         "set the 7zip path, such as /home/shwenzhang/tools/7za, window will be end of 7za.exe", ARG_ZIPALIGN,
         "set the zipalign, such as /home/shwenzhang/sdk/tools/zipalign, window will be end of zipalign.exe",
         ARG_REPACKAGE, "usually, when we build the channeles apk, it may destroy the 7zip.", "  ",
-        "so you may need to use 7zip to repackage the apk",
+        "so you may need to use 7zip to repackage the apk", ARG_CONVERT_MAPPING,
+        "convert the mapping file to the binary format, or the binary one back to text, following by: in_file out_file",
     });
     out.println();
     out.println("if you donot know how to write the config file, look at the comment in the default config.xml");
@@ -205,45 +209,63 @@ public class CliMain extends Main {
   }
 
   private void run(String[] args) {
-    synchronized (CliMain.class) {
-      if (args.length < 1) {
-        goToError();
-      }
-      final ReadArgs readArgs = new ReadArgs(args).invoke();
-      final File configFile = readArgs.getConfigFile();
-      final File signatureFile = readArgs.getSignatureFile();
-      final File mappingFile = readArgs.getMappingFile();
-      final String keypass = readArgs.getKeypass();
-      final String storealias = readArgs.getStorealias();
-      final String storepass = readArgs.getStorepass();
-      final String signedFile = readArgs.getSignedFile();
-      final File outputFile = readArgs.getOutputFile();
-      final File finalApkFile = readArgs.getFinalApkFile();
-      final String apkFileName = readArgs.getApkFileName();
-      final InputParam.SignatureType signatureType = readArgs.getSignatureType();
-      loadConfigFromXml(configFile, signatureFile, mappingFile, keypass, storealias, storepass);
-
-      //对于repackage模式，不管之前的东东，直接return
-      if (signedFile != null) {
-        ResourceRepackage repackage = new ResourceRepackage(config.mZipalignPath,
-            config.m7zipPath,
-            new File(signedFile)
-        );
-        try {
-          if (outputFile != null) {
-            repackage.setOutDir(outputFile);
-          }
-          repackage.repackageApk();
-        } catch (IOException | InterruptedException e) {
-          e.printStackTrace();
+    if (args.length < 1) {
+      goToError();
+    }
+    final ReadArgs readArgs = new ReadArgs(args).invoke();
+    //转换 mapping 格式不需要配置文件
+    if (readArgs.getConvertMapping() != null) {
+      convertMapping(readArgs.getConvertMapping()[0], readArgs.getConvertMapping()[1]);
+      return;
+    }
+    final File configFile = readArgs.getConfigFile();
+    final File signatureFile = readArgs.getSignatureFile();
+    final File mappingFile = readArgs.getMappingFile();
+    final String keypass = readArgs.getKeypass();
+    final String storealias = readArgs.getStorealias();
+    final String storepass = readArgs.getStorepass();
+    final String signedFile = readArgs.getSignedFile();
+    final File outputFile = readArgs.getOutputFile();
+    final File finalApkFile = readArgs.getFinalApkFile();
+    final String apkFileName = readArgs.getApkFileName();
+    final InputParam.SignatureType signatureType = readArgs.getSignatureType();
+    loadConfigFromXml(configFile, signatureFile, mappingFile, keypass, storealias, storepass);
+
+    //对于repackage模式，不管之前的东东，直接return
+    if (signedFile != null) {
+      ResourceRepackage repackage = new ResourceRepackage(config.mZipalignPath,
+          config.m7zipPath,
+          config.mCompressEffort,
+          new File(signedFile)
+      );
+      try {
+        if (outputFile != null) {
+          repackage.setOutDir(outputFile);
         }
-        return;
+        repackage.repackageApk();
+      } catch (IOException | InterruptedException e) {
+        e.printStackTrace();
       }
-      System.out.printf("[AndResGuard] begin: %s, %s, %s\n", outputFile, finalApkFile, apkFileName);
-      resourceProguard(outputFile, finalApkFile, apkFileName, signatureType);
-      System.out.printf("[AndResGuard] done, total time cost: %fs\n", diffTimeFromBegin());
-      System.out.printf("[AndResGuard] done, you can go to file to find the output %s\n", mOutDir.getAbsolutePath());
-      clean();
+      return;
+    }
+    System.out.printf("[AndResGuard] begin: %s, %s, %s\n", outputFile, finalApkFile, apkFileName);
+    resourceProguard(outputFile, finalApkFile, apkFileName, signatureType);
+    System.out.printf("[AndResGuard] done, total time cost: %fs\n", diffTimeFromBegin());
+    System.out.printf("[AndResGuard] done, you can go to file to find the output %s\n", mOutDir.getAbsolutePath());
+    clean();
+  }
+
+  private void convertMapping(File in, File out) {
+    try {
+      boolean binary = MappingFile.convert(in, out);
+      System.out.printf("[AndResGuard] convert %s to %s mapping %s\n",
+          in.getAbsolutePath(),
+          binary ? "binary" : "text",
+          out.getAbsolutePath()
+      );
+    } catch (IOException e) {
+      e.printStackTrace();
+      System.exit(ERRNO_ERRORS);
     }
   }
 
@@ -282,7 +304,7 @@ public class CliMain extends Main {
 
   public double diffTimeFromBegin() {
     long end = System.currentTimeMillis();
-    return (end - mBeginTime) / 1000.0;
+    return (end - mContext.getBeginTime()) / 1000.0;
   }
 
   protected void goToError() {
@@ -303,6 +325,7 @@ public class CliMain extends Main {
     private String storepass;
     private InputParam.SignatureType signatureType = InputParam.SignatureType.SchemaV1;
     private String signedFile;
+    private File[] convertMapping;
 
     public ReadArgs(String[] args) {
       this.args = args;
@@ -352,6 +375,10 @@ public class CliMain extends Main {
       return signedFile;
     }
 
+    public File[] getConvertMapping() {
+      return convertMapping;
+    }
+
     public ReadArgs invoke() {
       for (int index = 0; index < args.length; index++) {
         String arg = args[index];
@@ -467,6 +494,16 @@ public class CliMain extends Main {
             goToError();
           }
           signedFile = args[++index];
+        } else if (arg.equals(ARG_CONVERT_MAPPING)) {
+          if (index >= args.length - 2) {
+            System.err.println("Missing mapping file argument, should be " + ARG_CONVERT_MAPPING + " in_file out_file");
+            goToError();
+          }
+          convertMapping = new File[] { new File(args[++index]), new File(args[++index]) };
+          if (!convertMapping[0].exists()) {
+            System.err.println(convertMapping[0].getAbsolutePath() + " does not exist");
+            goToError();
+          }
         } else {
           apkFileName = arg;
         }
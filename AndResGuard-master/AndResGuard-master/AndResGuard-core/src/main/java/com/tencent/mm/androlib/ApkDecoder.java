@@ -2,45 +2,73 @@ package com.tencent.mm.androlib;
 
 import com.tencent.mm.androlib.res.data.ResPackage;
 import com.tencent.mm.androlib.res.decoder.ARSCDecoder;
-import com.tencent.mm.androlib.res.decoder.RawARSCDecoder;
+import com.tencent.mm.androlib.res.decoder.ARSCTable;
 import com.tencent.mm.androlib.res.util.ExtFile;
 import com.tencent.mm.directory.DirectoryException;
 import com.tencent.mm.resourceproguard.Configuration;
+import com.tencent.mm.resourceproguard.ResguardContext;
 import com.tencent.mm.util.FileOperation;
+import com.tencent.mm.util.ParallelFileCopier;
+import com.tencent.mm.util.PhaseMetrics;
 import com.tencent.mm.util.TypedValue;
 import com.tencent.mm.util.Utils;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Enumeration;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 
 /**
  * @author shwenzhang
  */
 public class ApkDecoder {
 
-    final HashSet<Path> mRawResourceFiles = new HashSet<>();
+    //res下的文件（linux分隔符的相对路径，如 res/anim/a.xml），拷贝后会被移除
+    final LinkedHashSet<String> mRawResourceFiles = new LinkedHashSet<>();
+    //res下的第一级目录名（如 anim，drawable-hdpi）
+    private final LinkedHashSet<String> mRawResDirNames = new LinkedHashSet<>();
+    //保存 原资源路径 和 混淆后资源路径 的对应关系（都是linux分隔符的相对路径）
+    private final LinkedHashMap<String, String> mResRenames = new LinkedHashMap<>();
+    private final HashSet<String> mResDestNames = new HashSet<>();
     private final Configuration config;
     private final ExtFile apkFile;
     private File mOutDir;
-    private File mOutTempARSCFile;
     private File mOutARSCFile;
     private File mOutResFile;
     private File mRawResFile;
     private File mOutTempDir;
     private File mResMappingFile;
+    private File mResBinaryMappingFile;
     private File mMergeDuplicatedResMappingFile;
+    private File mManifestFile;
     //保存 文件完整路径（包含混淆路径和非混淆路径）和 压缩方式的 对应关系
     private HashMap<String, Integer> mCompressData;
+    //streamZip 模式下直接从apk中读取资源，不再解压到temp
+    private ZipFile mZipFile;
+    //非 streamZip 模式下在后台拷贝资源文件
+    private ParallelFileCopier mCopier;
+    //这次混淆的状态，不设置的时候单独创建一个
+    private ResguardContext mContext = new ResguardContext();
+    //拷贝和解析是同时进行的，这个阶段从开始解析一直到所有文件拷贝完成
+    private PhaseMetrics.Phase mCopyPhase;
 
     public ApkDecoder(Configuration config, File apkFile) {
         this.config = config;
@@ -57,22 +85,110 @@ public class ApkDecoder {
             return;
         }
 
-        //获取 原资源文件对象（temp下的res） 的Path
-        Path resPath = mRawResFile.toPath();
-        //获取混淆后的res/r文件Path
-        Path destPath = mOutResFile.toPath();
+        for (String raw : mRawResourceFiles) {
+            //去掉 "res/"，得到相对 res 的路径
+            String relativePath = raw.substring(raw.indexOf("/") + 1);
+            String result = mOutResFile.getName() + "/" + relativePath;
 
-        for (Path path : mRawResourceFiles) {
-            Path relativePath = resPath.relativize(path);
-            Path dest = destPath.resolve(relativePath);
+            System.out.printf("copy res file not in resources.arsc file:%s\n", relativePath);
+            copyResFile(raw, result);
+        }
+    }
+
+    /**
+     * @return 还没有拷贝的 res 文件，拷贝之后会被移除
+     */
+    public Set<String> getRawResourceFiles() {
+        return Collections.unmodifiableSet(mRawResourceFiles);
+    }
+
+    public File getApkFile() {
+        return apkFile;
+    }
+
+    public ResguardContext getContext() {
+        return mContext;
+    }
+
+    public void setContext(ResguardContext context) {
+        mContext = context;
+    }
+
+    public PhaseMetrics getMetrics() {
+        return mContext.getMetrics();
+    }
+
+    public void removeCopiedResFile(String raw) {
+        mRawResourceFiles.remove(raw);
+    }
+
+    /**
+     * @param raw 原资源路径，如 res/anim/a.xml
+     * @return 原资源是否存在
+     */
+    public boolean hasRawResFile(String raw) {
+        if (config.mStreamZip) {
+            return mZipFile.getEntry(raw) != null;
+        }
+        return getRawResFile(raw).exists();
+    }
+
+    public long getRawResFileLength(String raw) {
+        if (config.mStreamZip) {
+            return mZipFile.getEntry(raw).getSize();
+        }
+        return getRawResFile(raw).length();
+    }
+
+    public InputStream openRawResFile(String raw) throws IOException {
+        if (config.mStreamZip) {
+            return mZipFile.getInputStream(mZipFile.getEntry(raw));
+        }
+        return new FileInputStream(getRawResFile(raw));
+    }
+
+    /**
+     * @param result 混淆后资源路径，如 r/a/a.xml
+     * @return 混淆后资源是否已经被输出过
+     */
+    public boolean hasResDestFile(String result) {
+        //输出目录一开始已经清空，拷贝是异步的，不能再用文件是否存在来判断
+        return mResDestNames.contains(result);
+    }
 
-            System.out.printf("copy res file not in resources.arsc file:%s\n", relativePath.toString());
-            FileOperation.copyFileUsingStream(path.toFile(), dest.toFile());
+    /**
+     * 输出混淆后的资源，streamZip 模式下只记录对应关系，在生成apk时直接从原apk中读取
+     */
+    public void copyResFile(String raw, String result) throws IOException {
+        mResRenames.put(raw, result);
+        mResDestNames.add(result);
+        if (!config.mStreamZip) {
+            File rawFile = getRawResFile(raw);
+            mCopyPhase.addEntries(1).addBytesWritten(rawFile.length());
+            mCopier.copy(rawFile, getResDestFile(result));
         }
     }
 
-    public void removeCopiedResFile(Path key) {
-        mRawResourceFiles.remove(key);
+    private File getRawResFile(String raw) {
+        return new File(mOutTempDir, raw.replace("/", File.separator));
+    }
+
+    private File getResDestFile(String result) {
+        return new File(mOutDir, result.replace("/", File.separator));
+    }
+
+    /**
+     * @return res下的第一级目录名
+     */
+    public Set<String> getRawResDirNames() {
+        return mRawResDirNames;
+    }
+
+    /**
+     * @return 原资源路径 和 混淆后资源路径 的对应关系
+     */
+    public Map<String, String> getResRenames() {
+        return mResRenames;
     }
 
     public Configuration getConfig() {
@@ -87,16 +203,10 @@ public class ApkDecoder {
         }
     }
 
-    private void ensureFilePath() throws IOException {
-        //清空输出目录
-        Utils.cleanDir(mOutDir);//mOutDir = "E:/111work/code/code_me/demo/app/build/outputs/apk/release/AndResGuard_app-release"
-
-        String unZipDest = new File(mOutDir, TypedValue.UNZIP_FILE_PATH).getAbsolutePath();//mOutDir = "E:/111work/code/code_me/demo/app/build/outputs/apk/release/AndResGuard_app-release/temp"
-        System.out.printf("unziping apk to %s\n", unZipDest);
-        //解压apk到temp文件夹 并将apk中的所有文件明和压缩方式map到mCompressData
-        mCompressData = FileOperation.unZipAPk(apkFile.getAbsoluteFile().getAbsolutePath(), unZipDest);
-        //根据config来修改文件压缩配置
-        dealWithCompressConfig();
+    /**
+     * 创建后续需要使用的文件对象，不会改动输出目录
+     */
+    private void initOutputFiles() {
         //将res混淆成r(创建存储资源文件的文件夹r或者res)
         //如果mKeepRoot为true，会keep住所有资源的原始路径，只混淆资源的名字（如：res/anim/a.xml）和 arsc name列
         if (!config.mKeepRoot) {
@@ -114,17 +224,6 @@ public class ApkDecoder {
         //创建temp文件对象（temp）
         mOutTempDir = new File(mOutDir.getAbsoluteFile().getAbsolutePath() + File.separator + TypedValue.UNZIP_FILE_PATH);
 
-        //这里纪录原始res目录的文件
-        //遍历 mRawResFile 将 子文件放入 mRawResourceFiles 中
-        Files.walkFileTree(mRawResFile.toPath(), new ResourceFilesVisitor());
-
-        if (!mRawResFile.exists() || !mRawResFile.isDirectory()) {
-            throw new IOException("can not found res dir in the apk or it is not a dir");
-        }
-
-        //创建 resources_temp 文件对象（outDir 下）
-        mOutTempARSCFile = new File(mOutDir.getAbsoluteFile().getAbsolutePath() + File.separator + "resources_temp.arsc");
-
         //创建 resources 文件对象（outDir 下）
         mOutARSCFile = new File(mOutDir.getAbsoluteFile().getAbsolutePath() + File.separator + "resources.arsc");
 
@@ -138,12 +237,90 @@ public class ApkDecoder {
                 + basename
                 + TypedValue.TXT_FILE);
 
+        //创建resource_mapping_ 的二进制格式文件对象（outDir 下）
+        mResBinaryMappingFile = new File(mOutDir.getAbsoluteFile().getAbsolutePath()
+                + File.separator
+                + TypedValue.RES_MAPPING_FILE
+                + basename
+                + TypedValue.BIN_FILE);
+
         //创建 merge_duplicated_res_mapping_文件对象（outDir 下）（合并重复文件的mapping）
         mMergeDuplicatedResMappingFile = new File(mOutDir.getAbsoluteFile().getAbsolutePath()
                 + File.separator
                 + TypedValue.MERGE_DUPLICATED_RES_MAPPING_FILE
                 + basename
                 + TypedValue.TXT_FILE);
+
+        //创建 resguard_manifest_文件对象（outDir 下）（增量混淆时比较资源是否有变化）
+        mManifestFile = new File(mOutDir.getAbsoluteFile().getAbsolutePath()
+                + File.separator
+                + TypedValue.RESGUARD_MANIFEST_FILE
+                + basename
+                + TypedValue.TXT_FILE);
+    }
+
+    private void ensureFilePath() throws IOException {
+        //清空输出目录
+        Utils.cleanDir(mOutDir);//mOutDir = "E:/111work/code/code_me/demo/app/build/outputs/apk/release/AndResGuard_app-release"
+
+        try (PhaseMetrics.Phase phase = getMetrics().start(PhaseMetrics.UNZIP)) {
+            if (config.mStreamZip) {
+                //不解压的话输出目录不会被顺带创建出来
+                mOutDir.mkdirs();
+                //直接读取apk中的文件名和压缩方式，不解压
+                mZipFile = new ZipFile(apkFile.getAbsoluteFile());
+                mCompressData = readZipEntries();
+            } else {
+                String unZipDest = new File(mOutDir, TypedValue.UNZIP_FILE_PATH).getAbsolutePath();//mOutDir = "E:/111work/code/code_me/demo/app/build/outputs/apk/release/AndResGuard_app-release/temp"
+                System.out.printf("unziping apk to %s\n", unZipDest);
+                //解压apk到temp文件夹 并将apk中的所有文件明和压缩方式map到mCompressData
+                mCompressData = FileOperation.unZipAPk(apkFile.getAbsoluteFile().getAbsolutePath(), unZipDest);
+            }
+            phase.addBytesRead(apkFile.length()).addEntries(mCompressData.size());
+        }
+        //根据config来修改文件压缩配置
+        dealWithCompressConfig();
+        if (!config.mStreamZip) {
+            //这里纪录原始res目录的文件
+            //遍历 mRawResFile 将 子文件放入 mRawResourceFiles 中
+            Files.walkFileTree(mRawResFile.toPath(), new ResourceFilesVisitor());
+
+            if (!mRawResFile.exists() || !mRawResFile.isDirectory()) {
+                throw new IOException("can not found res dir in the apk or it is not a dir");
+            }
+            String[] resDirNames = mRawResFile.list();
+            if (resDirNames != null) {
+                for (String name : resDirNames) {
+                    mRawResDirNames.add(name);
+                }
+            }
+        } else if (mRawResDirNames.isEmpty()) {
+            throw new IOException("can not found res dir in the apk or it is not a dir");
+        }
+    }
+
+    /**
+     * 读取apk中所有文件的压缩方式，并纪录原始res目录的文件
+     */
+    private HashMap<String, Integer> readZipEntries() {
+        HashMap<String, Integer> compress = new HashMap<>();
+        Enumeration<? extends ZipEntry> entries = mZipFile.entries();
+        while (entries.hasMoreElements()) {
+            ZipEntry entry = entries.nextElement();
+            //要用linux的斜杠
+            String name = entry.getName().replace("\\", "/");
+            if (name.startsWith("res/") && name.length() > 4) {
+                int slash = name.indexOf("/", 4);
+                mRawResDirNames.add(slash == -1 ? name.substring(4) : name.substring(4, slash));
+                if (!entry.isDirectory()) {
+                    mRawResourceFiles.add(name);
+                }
+            }
+            if (!entry.isDirectory()) {
+                compress.put(name, entry.getMethod());
+            }
+        }
+        return compress;
     }
 
     /**
@@ -187,10 +364,6 @@ public class ApkDecoder {
         return mRawResFile;
     }
 
-    public File getOutTempARSCFile() {
-        return mOutTempARSCFile;
-    }
-
     public File getOutARSCFile() {
         return mOutARSCFile;
     }
@@ -203,38 +376,159 @@ public class ApkDecoder {
         return mResMappingFile;
     }
 
+    public File getResBinaryMappingFile() {
+        return mResBinaryMappingFile;
+    }
+
     public File getMergeDuplicatedResMappingFile() {
         return mMergeDuplicatedResMappingFile;
     }
 
+    public File getManifestFile() {
+        return mManifestFile;
+    }
+
     public void decode() throws AndrolibException, IOException, DirectoryException {
+        try (PhaseMetrics.Phase phase = getMetrics().start(PhaseMetrics.DECODE_APK)) {
+            decodeResources();
+            phase.addBytesRead(apkFile.length()).addEntries(mResRenames.size());
+        }
+    }
+
+    private void decodeResources() throws AndrolibException, IOException, DirectoryException {
 
         //apk中是否包含resources.arsc 文件
         if (hasResources()) {
+            initOutputFiles();
+
+            //增量混淆：资源部分和上一次一样的话直接复用上一次的输出
+            ResguardManifest manifest = null;
+            if (config.mIncremental) {
+                manifest = ResguardManifest.fromApk(apkFile, ResguardManifest.configHash(config));
+                if (reusePreviousResources(manifest)) {
+                    return;
+                }
+            }
 
             //创建后续需要使用的文件及文件夹，以及修改压缩配置
             ensureFilePath();
 
             System.out.printf("decoding resources.arsc\n");
 
-            //解析arsc文件 将 typeID 和 具体内容 存放在  mExistTypeNames 这个map中
-            RawARSCDecoder.decode(apkFile.getDirectory().getFileInput("resources.arsc"));
+            //只读取、解析一次arsc文件，同时将 typeID 和 具体内容 存放在 mExistTypeNames 这个map中
+            //已经解压出来的话直接映射temp下的文件，streamZip 模式下从apk中读取
+            File rawARSCFile = new File(mOutTempDir, "resources.arsc");
+            ARSCTable table;
+            try (PhaseMetrics.Phase phase = getMetrics().start(PhaseMetrics.RAW_DECODE)) {
+                table = rawARSCFile.isFile()
+                        ? ARSCTable.read(rawARSCFile)
+                        : ARSCTable.read(apkFile.getDirectory().getFileInput("resources.arsc"));
+                phase.addBytesRead(table.size()).addEntries(table.getPackageCount());
+            }
+
+            if (!config.mStreamZip) {
+                mCopier = new ParallelFileCopier(config.mCopyMode, ParallelFileCopier.defaultThreadCount());
+                mCopyPhase = getMetrics().start(PhaseMetrics.COPY);
+            }
+            try {
+                //混淆 并输出 ResPackage 将混淆后的名字和压缩方式 放入mCompressData中。并且将 字符串偏移量和 混淆后的完整路径 保存到 mContext 的 tableStringsResguard 中
+                //解析的同时资源文件在后台拷贝
+                ResPackage[] pkgs;
+                try (PhaseMetrics.Phase phase = getMetrics().start(PhaseMetrics.DECODE)) {
+                    pkgs = ARSCDecoder.decode(table, this);
+                    phase.addEntries(mContext.getTableStringsResguard().size());
+                }
+                awaitResFileCopies();
+
+                //把没有纪录在resources.arsc的资源文件也拷进dest目录
+                copyOtherResFiles();
+                awaitResFileCopies();
+                if (mCopyPhase != null) {
+                    mCopyPhase.close();
+                }
 
-            //解析arsc文件 并输出 ResPackage 将混淆后的名字和压缩方式 放入mCompressData中。并且将 字符串偏移量和 混淆后的完整路径 保存到 ARSCDecoder.mTableStringsResguard 中
-            ResPackage[] pkgs = ARSCDecoder.decode(apkFile.getDirectory().getFileInput("resources.arsc"), this);
+                //将混淆写入 到 resources.arsc （outDir 下） 中
+                try (PhaseMetrics.Phase phase = getMetrics().start(PhaseMetrics.WRITE_ARSC)) {
+                    ARSCDecoder.write(table, this, pkgs);
+                    phase.addBytesWritten(mOutARSCFile.length());
+                }
 
-            //把没有纪录在resources.arsc的资源文件也拷进dest目录
-            copyOtherResFiles();
+                //输出全部完成之后再写快照，中途失败的话下次会重新完整混淆
+                if (manifest != null) {
+                    manifest.setOutput(mOutARSCFile, mResRenames, mCompressData, mContext.getMergeDuplicatedResCount());
+                    manifest.write(mManifestFile);
+                }
+            } finally {
+                if (mCopier != null) {
+                    mCopier.close();
+                    mCopier = null;
+                    mCopyPhase = null;
+                }
+                if (mZipFile != null) {
+                    mZipFile.close();
+                    mZipFile = null;
+                }
+            }
+        }
+    }
+
+    /**
+     * 和上一次混淆的快照比较，resources.arsc 和 res 下的文件都没有变化的时候，不再解析、混淆和拷贝资源，
+     * 直接复用输出目录下的 resources.arsc、r 目录和 mapping，生成 apk 时其他文件从新的 apk 中拷贝
+     *
+     * @param current 这次输入的 apk 的快照
+     * @return 是否复用了上一次的输出
+     */
+    private boolean reusePreviousResources(ResguardManifest current) throws IOException {
+        ResguardManifest previous = ResguardManifest.read(mManifestFile);
+        if (previous == null || !previous.hasSameResources(current)) {
+            return false;
+        }
+        if (!previous.isOutputIntact(mOutARSCFile) || !mResMappingFile.isFile() || !mResBinaryMappingFile.isFile()) {
+            System.out.printf("previous resguard output is missing or modified, decode resources again\n");
+            return false;
+        }
+        System.out.printf("resources are not changed, reuse %s\n", mOutARSCFile.getAbsolutePath());
+
+        try (PhaseMetrics.Phase phase = getMetrics().start(PhaseMetrics.UNZIP)) {
+            mZipFile = new ZipFile(apkFile.getAbsoluteFile());
+            try {
+                mCompressData = readZipEntries();
+            } finally {
+                mZipFile.close();
+                mZipFile = null;
+            }
+            phase.addEntries(mCompressData.size());
+        }
+        dealWithCompressConfig();
+        //和完整混淆时 ARSCDecoder 一样，混淆后的资源沿用原资源的压缩方式
+        for (Entry<String, String> entry : previous.getResRenames().entrySet()) {
+            String raw = entry.getKey();
+            String result = entry.getValue();
+            if (previous.isZipResult(result) && mCompressData.containsKey(raw)) {
+                mCompressData.put(result, mCompressData.get(raw));
+            }
+            mResRenames.put(raw, result);
+            mResDestNames.add(result);
+        }
+        //res 下的文件上一次都已经处理过了
+        mRawResourceFiles.clear();
+        mContext.setMergeDuplicatedResCount(previous.getMergeDuplicatedResCount());
+        mContext.setResourcesReused(true);
+        return true;
+    }
 
-            //将混淆写入 到 resources_temp （outDir 下） 中
-            ARSCDecoder.write(apkFile.getDirectory().getFileInput("resources.arsc"), this, pkgs);
+    private void awaitResFileCopies() throws IOException {
+        if (mCopier != null) {
+            mCopier.await();
         }
     }
 
     class ResourceFilesVisitor extends SimpleFileVisitor<Path> {
         @Override
         public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
-            mRawResourceFiles.add(file);
+            Path relativePath = mOutTempDir.toPath().relativize(file);
+            mRawResourceFiles.add(relativePath.toString().replace(File.separator, "/"));
             return FileVisitResult.CONTINUE;
         }
     }
@@ -0,0 +1,267 @@
+package com.tencent.mm.androlib;
+
+import com.tencent.mm.resourceproguard.Configuration;
+import com.tencent.mm.util.Md5Util;
+import com.tencent.mm.util.RawZipFile;
+import com.tencent.mm.util.WhiteListMatcher;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/**
+ * 上一次混淆的资源部分的快照，保存在输出目录下，用于增量混淆
+ * <p>
+ * 纪录输入 apk 中 resources.arsc 和 res 下每个文件的 crc（直接从 central directory 读取，不需要解压），
+ * 影响资源混淆结果的配置的 hash，以及混淆的输出（resources.arsc 的 crc、资源路径的对应关系、合并掉的重复资源个数）。
+ * 如果这次的输入和快照一致，说明只改了代码，可以直接复用上一次输出的 resources.arsc、r 目录和 mapping
+ */
+class ResguardManifest {
+  //混淆逻辑或者文件格式变了需要加一，旧的快照会直接失效
+  private static final int VERSION = 1;
+  private static final String SEPARATOR = "\t";
+  private static final String KEY_VERSION = "version";
+  private static final String KEY_CONFIG = "config";
+  private static final String KEY_ARSC = "arsc";
+  private static final String KEY_OUT_ARSC = "outArsc";
+  private static final String KEY_MERGED = "merged";
+  private static final String KEY_RES = "res";
+
+  private String mConfigHash;
+  private long mArscCrc = -1;
+  private long mArscSize = -1;
+  private long mOutArscCrc = -1;
+  private long mOutArscSize = -1;
+  private int mMergeDuplicatedResCount;
+  //res 下的文件 -> {crc, size}
+  private final Map<String, long[]> mResEntries = new TreeMap<>();
+  //原资源路径 -> 混淆后资源路径，被合并掉的重复资源没有
+  private final Map<String, String> mResRenames = new LinkedHashMap<>();
+  //纪录了压缩方式的混淆后资源路径，没有纪录的不会写进 apk
+  private final Set<String> mZipResults = new HashSet<>();
+
+  private ResguardManifest() {
+  }
+
+  /**
+   * 读取 apk 的 central directory，只纪录输入部分
+   */
+  static ResguardManifest fromApk(File apkFile, String configHash) throws IOException {
+    ResguardManifest manifest = new ResguardManifest();
+    manifest.mConfigHash = configHash;
+    RawZipFile rawZipFile = new RawZipFile(apkFile);
+    try {
+      for (RawZipFile.Entry entry : rawZipFile.entries()) {
+        if (entry.isDirectory()) {
+          continue;
+        }
+        String name = entry.getName();
+        if (name.equals("resources.arsc")) {
+          manifest.mArscCrc = entry.getCrc();
+          manifest.mArscSize = entry.getSize();
+        } else if (name.startsWith("res/")) {
+          manifest.mResEntries.put(name, new long[] { entry.getCrc(), entry.getSize() });
+        }
+      }
+    } finally {
+      rawZipFile.close();
+    }
+    return manifest;
+  }
+
+  /**
+   * @return 文件不存在、版本不一致或者格式不对时返回 null
+   */
+  static ResguardManifest read(File file) {
+    if (!file.isFile()) {
+      return null;
+    }
+    ResguardManifest manifest = new ResguardManifest();
+    try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file),
+        StandardCharsets.UTF_8
+    ))) {
+      String line = reader.readLine();
+      if (line == null || !line.equals(KEY_VERSION + SEPARATOR + VERSION)) {
+        return null;
+      }
+      while ((line = reader.readLine()) != null) {
+        String[] columns = line.split(SEPARATOR, -1);
+        switch (columns[0]) {
+          case KEY_CONFIG:
+            manifest.mConfigHash = columns[1];
+            break;
+          case KEY_ARSC:
+            manifest.mArscCrc = Long.parseLong(columns[1]);
+            manifest.mArscSize = Long.parseLong(columns[2]);
+            break;
+          case KEY_OUT_ARSC:
+            manifest.mOutArscCrc = Long.parseLong(columns[1]);
+            manifest.mOutArscSize = Long.parseLong(columns[2]);
+            break;
+          case KEY_MERGED:
+            manifest.mMergeDuplicatedResCount = Integer.parseInt(columns[1]);
+            break;
+          case KEY_RES:
+            manifest.mResEntries.put(columns[3], new long[] { Long.parseLong(columns[1]), Long.parseLong(columns[2]) });
+            if (!columns[4].isEmpty()) {
+              manifest.mResRenames.put(columns[3], columns[4]);
+              if (columns[5].equals("1")) {
+                manifest.mZipResults.add(columns[4]);
+              }
+            }
+            break;
+          default:
+            return null;
+        }
+      }
+    } catch (IOException | RuntimeException e) {
+      System.out.printf("ignore broken resguard manifest %s: %s\n", file.getAbsolutePath(), e);
+      return null;
+    }
+    return manifest;
+  }
+
+  /**
+   * 纪录这次混淆的输出，写完 resources.arsc 之后调用
+   */
+  void setOutput(
+      File outARSCFile, Map<String, String> resRenames, Map<String, Integer> compressData, int mergeDuplicatedResCount)
+      throws IOException {
+    mOutArscCrc = crc(outARSCFile);
+    mOutArscSize = outARSCFile.length();
+    mResRenames.clear();
+    mResRenames.putAll(resRenames);
+    mZipResults.clear();
+    for (String result : resRenames.values()) {
+      if (compressData.containsKey(result)) {
+        mZipResults.add(result);
+      }
+    }
+    mMergeDuplicatedResCount = mergeDuplicatedResCount;
+  }
+
+  void write(File file) throws IOException {
+    try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file),
+        StandardCharsets.UTF_8
+    ))) {
+      writer.write(KEY_VERSION + SEPARATOR + VERSION + "\n");
+      writer.write(KEY_CONFIG + SEPARATOR + mConfigHash + "\n");
+      writer.write(KEY_ARSC + SEPARATOR + mArscCrc + SEPARATOR + mArscSize + "\n");
+      writer.write(KEY_OUT_ARSC + SEPARATOR + mOutArscCrc + SEPARATOR + mOutArscSize + "\n");
+      writer.write(KEY_MERGED + SEPARATOR + mMergeDuplicatedResCount + "\n");
+      for (Map.Entry<String, long[]> entry : mResEntries.entrySet()) {
+        String raw = entry.getKey();
+        String result = mResRenames.get(raw);
+        writer.write(KEY_RES + SEPARATOR + entry.getValue()[0] + SEPARATOR + entry.getValue()[1] + SEPARATOR + raw
+                     + SEPARATOR + (result == null ? "" : result) + SEPARATOR + (mZipResults.contains(result) ? 1 : 0)
+                     + "\n");
+      }
+    }
+  }
+
+  /**
+   * @param current 这次输入的 apk 生成的快照
+   * @return 资源部分（resources.arsc、res 下的文件和配置）是否没有变化
+   */
+  boolean hasSameResources(ResguardManifest current) {
+    if (mConfigHash == null || !mConfigHash.equals(current.mConfigHash)) {
+      return false;
+    }
+    if (mArscCrc != current.mArscCrc || mArscSize != current.mArscSize) {
+      return false;
+    }
+    if (mResEntries.size() != current.mResEntries.size()) {
+      return false;
+    }
+    for (Map.Entry<String, long[]> entry : current.mResEntries.entrySet()) {
+      long[] previous = mResEntries.get(entry.getKey());
+      if (previous == null || previous[0] != entry.getValue()[0] || previous[1] != entry.getValue()[1]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @return 上一次输出的 resources.arsc 是否还在并且没有被改动过
+   */
+  boolean isOutputIntact(File outARSCFile) throws IOException {
+    return outARSCFile.isFile() && outARSCFile.length() == mOutArscSize && crc(outARSCFile) == mOutArscCrc;
+  }
+
+  Map<String, String> getResRenames() {
+    return Collections.unmodifiableMap(mResRenames);
+  }
+
+  /**
+   * @return 混淆后的资源路径是否纪录了压缩方式，和完整混淆时保持一致
+   */
+  boolean isZipResult(String result) {
+    return mZipResults.contains(result);
+  }
+
+  int getMergeDuplicatedResCount() {
+    return mMergeDuplicatedResCount;
+  }
+
+  /**
+   * 只包含会影响资源混淆结果的配置，压缩、签名、7zip 这些只在生成 apk 时使用，每次都会重新执行，不需要算在内
+   */
+  static String configHash(Configuration config) {
+    StringBuilder builder = new StringBuilder();
+    builder.append("keepRoot=").append(config.mKeepRoot).append('\n');
+    builder.append("mergeDuplicatedRes=").append(config.mMergeDuplicatedRes).append('\n');
+    builder.append("fixedResName=").append(config.mFixedResName).append('\n');
+    builder.append("useWhiteList=").append(config.mUseWhiteList).append('\n');
+    if (config.mUseWhiteList) {
+      //HashMap、HashSet 的遍历顺序不固定，排序之后再参与计算
+      List<String> whiteList = new ArrayList<>();
+      for (Map.Entry<String, HashMap<String, WhiteListMatcher>> packageEntry : config.mWhiteList.entrySet()) {
+        for (Map.Entry<String, WhiteListMatcher> typeEntry : packageEntry.getValue().entrySet()) {
+          for (String pattern : typeEntry.getValue().getPatterns()) {
+            whiteList.add(packageEntry.getKey() + "." + typeEntry.getKey() + "." + pattern);
+          }
+        }
+      }
+      Collections.sort(whiteList);
+      for (String item : whiteList) {
+        builder.append("whiteList=").append(item).append('\n');
+      }
+    }
+    builder.append("useKeepMapping=").append(config.mUseKeepMapping).append('\n');
+    if (config.mUseKeepMapping && config.mOldMappingFile != null) {
+      builder.append("mapping=").append(Md5Util.getMD5Str(config.mOldMappingFile)).append('\n');
+    }
+    return Md5Util.getMD5Str(builder.toString());
+  }
+
+  private static long crc(File file) throws IOException {
+    CRC32 crc = new CRC32();
+    byte[] buffer = new byte[64 * 1024];
+    try (InputStream in = new FileInputStream(file)) {
+      int length;
+      while ((length = in.read(buffer)) != -1) {
+        crc.update(buffer, 0, length);
+      }
+    }
+    return crc.getValue();
+  }
+}
@@ -1,8 +1,13 @@
 package com.tencent.mm.androlib;
 
-import com.tencent.mm.androlib.res.decoder.ARSCDecoder;
 import com.tencent.mm.resourceproguard.Configuration;
+import com.tencent.mm.resourceproguard.ResguardContext;
+import com.tencent.mm.util.FileCopyStrategy;
 import com.tencent.mm.util.FileOperation;
+import com.tencent.mm.util.LruCache;
+import com.tencent.mm.util.Md5Util;
+import com.tencent.mm.util.PhaseMetrics;
+import com.tencent.mm.util.RawZipFile;
 import com.tencent.mm.util.TypedValue;
 import com.tencent.mm.util.Utils;
 
@@ -13,7 +18,9 @@ import java.security.Key;
 import java.security.KeyStore;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import apksigner.ApkSignerTool;
 
@@ -26,6 +33,8 @@ import apksigner.ApkSignerTool;
  *     现有逻辑：1 zipalign 2.sign 。具体请参考buildApkV2sign
  */
 public class ResourceApkBuilder {
+  //签名私钥的算法，key 是 keystore 内容和别名、密码的 md5，不需要每次混淆都重新加载 keystore
+  private static final LruCache<String, String> KEY_ALGORITHM_CACHE = new LruCache<>(16);
 
   private final Configuration config;
   private File mOutDir;
@@ -43,16 +52,36 @@ public class ResourceApkBuilder {
   private String mApkName;
   private File finalApkFile;
 
+  private File mRawApkFile;
+  private Map<String, String> mResRenames;
+  //和 ApkDecoder 是同一个，里面有解码时合并掉的重复资源个数
+  private ResguardContext mContext = new ResguardContext();
+
   public ResourceApkBuilder(Configuration config) {
     this.config = config;
   }
 
+  public void setContext(ResguardContext context) {
+    mContext = context;
+  }
+
   public void setOutDir(File outDir, String apkName, File finalApkFile) throws AndrolibException {
     this.mOutDir = outDir;
     this.mApkName = apkName;
     this.finalApkFile = finalApkFile;
   }
 
+  /**
+   * streamZip 模式下 unsigned apk 直接由原apk生成
+   *
+   * @param rawApkFile 原apk
+   * @param resRenames 原资源路径 和 混淆后资源路径 的对应关系
+   */
+  public void setRawApk(File rawApkFile, Map<String, String> resRenames) {
+    this.mRawApkFile = rawApkFile;
+    this.mResRenames = resRenames;
+  }
+
   public void buildApkWithV1sign(HashMap<String, Integer> compressData) throws IOException, InterruptedException {
     insureFileNameV1();
     generalUnsignApk(compressData);
@@ -134,6 +163,24 @@ public class ResourceApkBuilder {
           originalAPK.getAbsolutePath()
       ));
     }
+    try (PhaseMetrics.Phase phase = mContext.getMetrics().start(PhaseMetrics.SEVEN_ZIP)) {
+      if (config.mCompressEffort > 0) {
+        //进程内并行压缩，不需要再解压和调用7z
+        Utils.logBuildApk("use in-process deflate(effort %d) to repackage: %s, will cost much more time",
+            config.mCompressEffort,
+            outputAPK.getName()
+        );
+        FileOperation.recompressApk(originalAPK, outputAPK, config.mCompressEffort);
+      } else {
+        sevenZipApk(compressData, originalAPK, outputAPK);
+      }
+      phase.addBytesRead(originalAPK.length()).addBytesWritten(outputAPK.length());
+    }
+    return true;
+  }
+
+  private void sevenZipApk(HashMap<String, Integer> compressData, File originalAPK, File outputAPK)
+      throws IOException, InterruptedException {
     Utils.logBuildApk("use 7zip to repackage: %s, will cost much more time", outputAPK.getName());
     //将签名的apk解压到 out_7zip文件夹中
     FileOperation.unZipAPk(originalAPK.getAbsolutePath(), m7zipOutPutDir.getAbsolutePath());
@@ -160,19 +207,17 @@ public class ResourceApkBuilder {
           mSignedWith7ZipApk.getAbsolutePath()
       ));
     }
-    return true;
   }
 
   private String getSignatureAlgorithm(String hash) throws Exception {
     String signatureAlgorithm;
-    KeyStore keyStore = KeyStore.getInstance(KeyStore.getDefaultType());
-    FileInputStream fileIn = new FileInputStream(config.mSignatureFile);
-    keyStore.load(fileIn, config.mStorePass.toCharArray());
-    Key key = keyStore.getKey(config.mStoreAlias, config.mKeyPass.toCharArray());
-    if (key == null) {
-      throw new RuntimeException("Can't get private key, please check if storepass storealias and keypass are correct");
-    }
-    String keyAlgorithm = key.getAlgorithm();
+    String keyStoreMd5 = Md5Util.getMD5Str(config.mSignatureFile);
+    String keyAlgorithm = keyStoreMd5.isEmpty()
+        ? loadKeyAlgorithm()
+        : KEY_ALGORITHM_CACHE.get(
+            keyStoreMd5 + "/" + Md5Util.getMD5Str(config.mStoreAlias + "\n" + config.mStorePass + "\n" + config.mKeyPass),
+            this::loadKeyAlgorithm
+        );
     hash = formatHashAlgorithName(hash);
     if (keyAlgorithm.equalsIgnoreCase("DSA")) {
       keyAlgorithm = "DSA";
@@ -187,6 +232,18 @@ public class ResourceApkBuilder {
     return signatureAlgorithm;
   }
 
+  private String loadKeyAlgorithm() throws Exception {
+    KeyStore keyStore = KeyStore.getInstance(KeyStore.getDefaultType());
+    try (FileInputStream fileIn = new FileInputStream(config.mSignatureFile)) {
+      keyStore.load(fileIn, config.mStorePass.toCharArray());
+    }
+    Key key = keyStore.getKey(config.mStoreAlias, config.mKeyPass.toCharArray());
+    if (key == null) {
+      throw new RuntimeException("Can't get private key, please check if storepass storealias and keypass are correct");
+    }
+    return key.getAlgorithm();
+  }
+
   private String formatHashAlgorithName(String hash) {
     return hash.replace("-", "");
   }
@@ -197,7 +254,10 @@ public class ResourceApkBuilder {
       if (signedApk.exists()) {
         signedApk.delete();
       }
-      signWithV1sign(unSignedApk, signedApk);
+      try (PhaseMetrics.Phase phase = mContext.getMetrics().start(PhaseMetrics.SIGN)) {
+        signWithV1sign(unSignedApk, signedApk);
+        phase.addBytesRead(unSignedApk.length()).addBytesWritten(signedApk.length());
+      }
       if (!signedApk.exists()) {
         throw new IOException("Can't Generate signed APK. Plz check your v1sign info is correct.");
       }
@@ -207,7 +267,10 @@ public class ResourceApkBuilder {
   private void signApkV2(File unSignedApk, File signedApk, int minSDKVersion) throws Exception {
     if (config.mUseSignAPK) {
       Utils.logBuildApk("signing apk: %s", signedApk.getName());
-      signWithV2sign(unSignedApk, signedApk, minSDKVersion);
+      try (PhaseMetrics.Phase phase = mContext.getMetrics().start(PhaseMetrics.SIGN)) {
+        signWithV2sign(unSignedApk, signedApk, minSDKVersion);
+        phase.addBytesRead(unSignedApk.length()).addBytesWritten(signedApk.length());
+      }
       if (!signedApk.exists()) {
         throw new IOException("Can't Generate signed APK v2. Plz check your v2sign info is correct.");
       }
@@ -258,7 +321,7 @@ public class ResourceApkBuilder {
         unSignedApk.getAbsolutePath(),
         config.mStoreAlias
     };
-    Utils.runExec(argv);
+    Utils.runExec(mContext.getMetrics().getApkName(), argv);
   }
 
   private void alignApks() throws IOException, InterruptedException {
@@ -285,7 +348,10 @@ public class ResourceApkBuilder {
       ));
     }
     String cmd = Utils.isPresent(config.mZipalignPath) ? config.mZipalignPath : TypedValue.COMMAND_ZIPALIGIN;
-    Utils.runCmd(cmd, "4", before.getAbsolutePath(), after.getAbsolutePath());
+    try (PhaseMetrics.Phase phase = mContext.getMetrics().start(PhaseMetrics.ZIPALIGN)) {
+      Utils.runCmd(mContext.getMetrics().getApkName(), cmd, "4", before.getAbsolutePath(), after.getAbsolutePath());
+      phase.addBytesRead(before.length()).addBytesWritten(after.length());
+    }
     if (!after.exists()) {
       throw new IOException(String.format("can not found the aligned apk file, the ZipAlign path is correct? path=%s",
           mAlignedApk.getAbsolutePath()
@@ -295,6 +361,20 @@ public class ResourceApkBuilder {
 
   private void generalUnsignApk(HashMap<String, Integer> compressData) throws IOException, InterruptedException {
     Utils.logBuildApk("General unsigned apk: %s", mUnSignedApk.getName());
+    try (PhaseMetrics.Phase phase = mContext.getMetrics().start(PhaseMetrics.ZIP)) {
+      //复用上一次输出的时候 temp 目录没有更新，只能从新的 apk 中读取
+      int entryCount;
+      if (config.mStreamZip || mContext.isResourcesReused()) {
+        entryCount = generalUnsignApkFromRawApk(compressData);
+      } else {
+        entryCount = generalUnsignApkFromTemp(compressData);
+      }
+      //compressData 中混淆前后的路径都有，要以实际写入的 entry 个数为准
+      phase.addBytesWritten(mUnSignedApk.length()).addEntries(entryCount);
+    }
+  }
+
+  private int generalUnsignApkFromTemp(HashMap<String, Integer> compressData) throws IOException, InterruptedException {
     File tempOutDir = new File(mOutDir.getAbsolutePath(), TypedValue.UNZIP_FILE_PATH);
     if (!tempOutDir.exists()) {
       System.err.printf("Missing apk unzip files, path=%s\n", tempOutDir.getAbsolutePath());
@@ -329,7 +409,11 @@ public class ResourceApkBuilder {
         FileOperation.getlist(destResDir),
         FileOperation.getlist(rawResDir)
     );
-    if (FileOperation.getlist(destResDir) != (FileOperation.getlist(rawResDir) - ARSCDecoder.mMergeDuplicatedResCount)) {
+    //move 模式下 temp/res 里面只剩下被合并掉的重复文件
+    boolean countMismatch = config.mCopyMode == FileCopyStrategy.MOVE
+        ? FileOperation.getlist(rawResDir) != mContext.getMergeDuplicatedResCount()
+        : FileOperation.getlist(destResDir) != (FileOperation.getlist(rawResDir) - mContext.getMergeDuplicatedResCount());
+    if (countMismatch) {
       throw new IOException(String.format(
           "the file count of %s, and the file count of %s is not equal, there must be some problem\n",
           rawResDir.getAbsolutePath(),
@@ -348,11 +432,107 @@ public class ResourceApkBuilder {
       System.exit(-1);
     }
     collectFiles.add(rawARSCFile);
-    FileOperation.zipFiles(collectFiles, tempOutDir, mUnSignedApk, compressData);
+    int entryCount;
+    if (mRawApkFile != null && mRawApkFile.exists() && mResRenames != null) {
+      //没有改动过的文件直接从原apk中拷贝压缩后的数据，resources.arsc是重新生成的，需要排除
+      Map<String, String> entryNames = new LinkedHashMap<>();
+      collectRawEntryNames(entryNames);
+      entryNames.remove("resources.arsc");
+      Map<String, String> rawEntryNames = new HashMap<>();
+      for (Map.Entry<String, String> entry : entryNames.entrySet()) {
+        rawEntryNames.put(entry.getValue(), entry.getKey());
+      }
+      entryCount = FileOperation.zipFiles(collectFiles, tempOutDir, mUnSignedApk, compressData, mRawApkFile, rawEntryNames);
+    } else {
+      entryCount = FileOperation.zipFiles(collectFiles, tempOutDir, mUnSignedApk, compressData);
+    }
+
+    if (!mUnSignedApk.exists()) {
+      throw new IOException(String.format("can not found the unsign apk file path=%s", mUnSignedApk.getAbsolutePath()));
+    }
+    return entryCount;
+  }
+
+  /**
+   * 不经过temp和r目录，直接从原apk中读取文件，并以混淆后的名字写入 unsigned apk
+   */
+  private int generalUnsignApkFromRawApk(HashMap<String, Integer> compressData) throws IOException {
+    if (mRawApkFile == null || !mRawApkFile.exists()) {
+      System.err.printf("Missing raw apk file, path=%s\n", mRawApkFile);
+      System.exit(-1);
+    }
+    File rawARSCFile = new File(mOutDir.getAbsolutePath() + File.separator + "resources.arsc");
+    if (!rawARSCFile.exists()) {
+      System.err.printf("Missing resources.arsc files, path=%s\n", rawARSCFile.getAbsolutePath());
+      System.exit(-1);
+    }
+
+    Map<String, String> entryNames = new LinkedHashMap<>();
+    int rawResCount = collectRawEntryNames(entryNames);
+
+    /*
+     * NOTE:文件数量应该是一样的，如果不一样肯定有问题
+     */
+    Utils.logBuildApk("DestRes %d rawRes %d", mResRenames.size(), rawResCount);
+    if (mResRenames.size() != (rawResCount - mContext.getMergeDuplicatedResCount())) {
+      throw new IOException(String.format(
+          "the res file count of %s is %d, but the resguard file count is %d, there must be some problem\n",
+          mRawApkFile.getAbsolutePath(),
+          rawResCount,
+          mResRenames.size()
+      ));
+    }
+
+    Map<String, File> replaceFiles = new HashMap<>();
+    replaceFiles.put("resources.arsc", rawARSCFile);
+    int entryCount = FileOperation.zipFilesFromApk(mRawApkFile, entryNames, replaceFiles, mUnSignedApk, compressData);
 
     if (!mUnSignedApk.exists()) {
       throw new IOException(String.format("can not found the unsign apk file path=%s", mUnSignedApk.getAbsolutePath()));
     }
+    return entryCount;
+  }
+
+  /**
+   * 遍历原apk，纪录需要写入 unsigned apk 的 原entry名 和 新entry名 的对应关系
+   *
+   * @param entryNames 原entry名 -> 新entry名
+   * @return 原apk中res下的文件数量
+   */
+  private int collectRawEntryNames(Map<String, String> entryNames) throws IOException {
+    int rawResCount = 0;
+    RawZipFile rawZipFile = new RawZipFile(mRawApkFile);
+    try {
+      for (RawZipFile.Entry entry : rawZipFile.entries()) {
+        if (entry.isDirectory()) {
+          continue;
+        }
+        String name = entry.getName();
+        if (name.startsWith("res/")) {
+          rawResCount++;
+          //没有纪录的就是被合并掉的重复资源
+          if (mResRenames.containsKey(name)) {
+            entryNames.put(name, mResRenames.get(name));
+          }
+        } else if (!isSignatureFile(name)) {
+          entryNames.put(name, name);
+        }
+      }
+    } finally {
+      rawZipFile.close();
+    }
+    return rawResCount;
+  }
+
+  /**
+   * 和 addNonSignatureFiles 一致，只忽略 meta 目录下第一层的签名文件
+   */
+  private boolean isSignatureFile(String name) {
+    String metaPrefix = config.mMetaName + "/";
+    if (!name.startsWith(metaPrefix) || name.indexOf("/", metaPrefix.length()) != -1) {
+      return false;
+    }
+    return name.endsWith(".MF") || name.endsWith(".RSA") || name.endsWith(".SF");
   }
 
   private void addNonSignatureFiles(List<File> collectFiles, File metaFolder) {
@@ -391,7 +571,8 @@ public class ResourceApkBuilder {
     storedParentName = storedParentName + File.separator + "*";
     String cmd = Utils.isPresent(config.m7zipPath) ? config.m7zipPath : TypedValue.COMMAND_7ZIP;
     //将_signed_7zip.apk中不需要压缩的文件（storefiles 文件夹中记录的）还原为不压缩
-    Utils.runCmd(cmd, "a", "-tzip", outSevenZipAPK.getAbsolutePath(), storedParentName, "-mx0");
+    Utils.runCmd(mContext.getMetrics().getApkName(),
+        cmd, "a", "-tzip", outSevenZipAPK.getAbsolutePath(), storedParentName, "-mx0");
   }
 
   private void generalRaw7zip(File outSevenZipApk) throws IOException, InterruptedException {
@@ -399,6 +580,7 @@ public class ResourceApkBuilder {
     String path = outPath + File.separator + "*";
     String cmd = Utils.isPresent(config.m7zipPath) ? config.m7zipPath : TypedValue.COMMAND_7ZIP;
     //7zip压缩 out_7zip 下所有的文件 并生成 .._signed_7zip.apk
-    Utils.runCmd(cmd, "a", "-tzip", outSevenZipApk.getAbsolutePath(), path, "-mx9");
+    Utils.runCmd(mContext.getMetrics().getApkName(),
+        cmd, "a", "-tzip", outSevenZipApk.getAbsolutePath(), path, "-mx9");
   }
 }
@@ -14,6 +14,7 @@ public class ResourceRepackage {
 
   private final String zipalignPath;
   private final String sevenZipPath;
+  private final int compressEffort;
   private File mSignedApk;
   private File mSignedWith7ZipApk;
   private File mAlignedWith7ZipApk;
@@ -23,8 +24,16 @@ public class ResourceRepackage {
   private File mOutDir;
 
   public ResourceRepackage(String zipalignPath, String zipPath, File signedFile) {
+    this(zipalignPath, zipPath, 0, signedFile);
+  }
+
+  /**
+   * @param compressEffort 大于0时在进程内用高压缩率的deflate重新打包，不再调用7z
+   */
+  public ResourceRepackage(String zipalignPath, String zipPath, int compressEffort, File signedFile) {
     this.zipalignPath = zipalignPath;
     this.sevenZipPath = zipPath;
+    this.compressEffort = compressEffort;
     mSignedApk = signedFile;
   }
 
@@ -81,6 +90,14 @@ public class ResourceRepackage {
   }
 
   private void repackageWith7z() throws IOException, InterruptedException {
+    if (compressEffort > 0) {
+      System.out.printf("use in-process deflate(effort %d) to repackage: %s, will cost much more time\n",
+          compressEffort,
+          mSignedWith7ZipApk.getName()
+      );
+      FileOperation.recompressApk(mSignedApk, mSignedWith7ZipApk, compressEffort);
+      return;
+    }
     System.out.printf("use 7zip to repackage: %s, will cost much more time\n", mSignedWith7ZipApk.getName());
     HashMap<String, Integer> compressData = FileOperation.unZipAPk(mSignedApk.getAbsolutePath(),
         m7zipOutPutDir.getAbsolutePath()
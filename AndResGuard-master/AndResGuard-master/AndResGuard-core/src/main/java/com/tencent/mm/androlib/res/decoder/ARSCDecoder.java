@@ -17,106 +17,117 @@
 
 package com.tencent.mm.androlib.res.decoder;
 
-import com.mindprod.ledatastream.LEDataInputStream;
-import com.mindprod.ledatastream.LEDataOutputStream;
 import com.tencent.mm.androlib.AndrolibException;
 import com.tencent.mm.androlib.ApkDecoder;
 import com.tencent.mm.androlib.res.data.ResPackage;
 import com.tencent.mm.androlib.res.data.ResType;
 import com.tencent.mm.androlib.res.util.StringUtil;
 import com.tencent.mm.resourceproguard.Configuration;
-import com.tencent.mm.util.ExtDataInput;
+import com.tencent.mm.util.ByteBufferInput;
+import com.tencent.mm.util.ByteBufferOutput;
 import com.tencent.mm.util.ExtDataOutput;
 import com.tencent.mm.util.FileOperation;
-import com.tencent.mm.util.Md5Util;
+import com.tencent.mm.util.Log;
+import com.tencent.mm.util.LruCache;
+import com.tencent.mm.util.MappingFile;
+import com.tencent.mm.util.PhaseMetrics;
 import com.tencent.mm.util.TypedValue;
 import com.tencent.mm.util.Utils;
+import com.tencent.mm.util.WhiteListMatcher;
 
 import java.io.BufferedWriter;
-import java.io.EOFException;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.Writer;
-import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.text.DecimalFormat;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.logging.Logger;
-import java.util.regex.Pattern;
 
 public class ARSCDecoder {
 
-    private final static boolean DEBUG = true;
 
     private final static short ENTRY_FLAG_COMPLEX = 0x0001;
-    private static final Logger LOGGER = Logger.getLogger(ARSCDecoder.class.getName());
-    private static final int KNOWN_CONFIG_BYTES = 56;
-    //存放 pecNamesId(资源项目名称index （下标）通过这个再加上 资源项目池 就可以拿到对应 String)   和混淆后字符串
-    public static Map<Integer, String> mTableStringsResguard = new LinkedHashMap<>();
-    public static int mMergeDuplicatedResCount = 0;
+    private final static String TAG = "ARSC";
+    //存放 pecNamesId(资源项目名称index （下标）通过这个再加上 资源项目池 就可以拿到对应 String)   和混淆后字符串，属于这次混淆的 ResguardContext
+    private final Map<Integer, String> mTableStringsResguard;
     //保存的是 res下文件全路径 和 混淆后名称的关系
     private final Map<String, String> mOldFileName;
     private final Map<String, Integer> mCurSpecNameToPos;
     private final HashSet<String> mShouldResguardTypeSet;//应该要混淆的 类别 包含 color ，drawable等
     private final ApkDecoder mApkDecoder;
-    private ExtDataInput mIn;
+    private final ARSCTable mTable;
     private ExtDataOutput mOut;
-    private Header mHeader;
+    private ByteBufferOutput mBuffer;
+    private ByteBuffer mData;
     private StringBlock mTableStrings;
     private StringBlock mTypeNames;
     private StringBlock mSpecNames;
     private ResPackage mPkg;
     private ResType mType;
     private ResPackage[] mPkgs;
-    private int[] mPkgsLenghtChange;
-    private int mTableLenghtChange = 0;
     private int mResId;
     private int mCurrTypeID = -1;
     private int mCurEntryID = -1;
     private int mCurPackageID = -1;
+    private int mMergeDuplicatedResCount = 0;
     private long mMergeDuplicatedResTotalSize = 0L;
     private ResguardStringBuilder mResguardBuilder;
+    //当前 type 的白名单，没有配置时为 null
+    private WhiteListMatcher mWhiteListMatcher;
     private boolean mShouldResguardForType = false;
     private Writer mMappingWriter;
+    //和 resource_mapping_ 内容一样的二进制格式，keepmapping 时加载更快
+    private MappingFile.BinaryWriter mBinaryMappingWriter;
     private Writer mMergeDuplicatedResMappingWriter;
-    private Map<Long, List<MergeDuplicatedResInfo>> mMergeDuplicatedResInfoData = new HashMap<>();
+    //内容 key -> 第一个拷贝出去的文件
+    private Map<String, MergeDuplicatedResInfo> mMergeDuplicatedResInfoData = new HashMap<>();
+    private DuplicatedResIndex mDuplicatedResIndex;
 
-    private ARSCDecoder(InputStream arscStream, ApkDecoder decoder) throws AndrolibException, IOException {
+    private ARSCDecoder(ARSCTable table, ApkDecoder decoder) throws AndrolibException, IOException {
         mOldFileName = new LinkedHashMap<>();
         mCurSpecNameToPos = new LinkedHashMap<>();
         mShouldResguardTypeSet = new HashSet<>();
-        mIn = new ExtDataInput(new LEDataInputStream(arscStream));
+        mTable = table;
         mApkDecoder = decoder;
+        mTableStringsResguard = decoder.getContext().getTableStringsResguard();
+        if (decoder.getConfig().mMergeDuplicatedRes) {
+            //在拷贝任何文件之前把所有 res 文件的内容 key 算好
+            try (PhaseMetrics.Phase phase = decoder.getMetrics().start(PhaseMetrics.MERGE_DUPLICATED)) {
+                mDuplicatedResIndex = DuplicatedResIndex.build(decoder, phase);
+            }
+        }
         proguardFileName();
     }
 
-    private ARSCDecoder(InputStream arscStream, ApkDecoder decoder, ResPackage[] pkgs) throws FileNotFoundException {
+    private ARSCDecoder(ARSCTable table, ApkDecoder decoder, ResPackage[] pkgs) {
         mOldFileName = new LinkedHashMap<>();
         mCurSpecNameToPos = new LinkedHashMap<>();
         mShouldResguardTypeSet = new HashSet<>();
+        mTable = table;
         mApkDecoder = decoder;
-        mIn = new ExtDataInput(new LEDataInputStream(arscStream));
-        mOut = new ExtDataOutput(new LEDataOutputStream(new FileOutputStream(mApkDecoder.getOutTempARSCFile(), false)));
+        mTableStringsResguard = decoder.getContext().getTableStringsResguard();
+        mData = table.getData();
+        // 混淆后的 resources.arsc 只会变小或者基本不变，按原大小分配一般不需要扩容
+        mBuffer = new ByteBufferOutput(mData.capacity());
+        mOut = new ExtDataOutput(mBuffer);
         mPkgs = pkgs;
-        mPkgsLenghtChange = new int[pkgs.length];
     }
 
-    public static ResPackage[] decode(InputStream arscStream, ApkDecoder apkDecoder) throws AndrolibException {
+    public static ResPackage[] decode(ARSCTable table, ApkDecoder apkDecoder) throws AndrolibException {
         try {
             //创建ARSCDecoder对象的时候会做一下初始化操作
-            ARSCDecoder decoder = new ARSCDecoder(arscStream, apkDecoder);
+            ARSCDecoder decoder = new ARSCDecoder(table, apkDecoder);
             ResPackage[] pkgs = decoder.readTable();
             return pkgs;
         } catch (IOException ex) {
@@ -124,10 +135,13 @@ public class ARSCDecoder {
         }
     }
 
-    public static void write(InputStream arscStream, ApkDecoder decoder, ResPackage[] pkgs) throws AndrolibException {
+    public static void write(ARSCTable table, ApkDecoder decoder, ResPackage[] pkgs) throws AndrolibException {
         try {
-            ARSCDecoder writer = new ARSCDecoder(arscStream, decoder, pkgs);
+            ARSCDecoder writer = new ARSCDecoder(table, decoder, pkgs);
             writer.writeTable();
+            try (OutputStream out = new FileOutputStream(decoder.getOutARSCFile(), false)) {
+                writer.mBuffer.writeTo(out);
+            }
         } catch (IOException ex) {
             throw new AndrolibException("Could not decode arsc file", ex);
         }
@@ -142,6 +156,7 @@ public class ARSCDecoder {
     private void proguardFileName() throws IOException, AndrolibException {
         //创建resource_mapping_ 文件的BufferedWriter
         mMappingWriter = new BufferedWriter(new FileWriter(mApkDecoder.getResMappingFile(), false));
+        mBinaryMappingWriter = new MappingFile.BinaryWriter();
         //创建 merge_duplicated_res_mapping_（合并重复文件的mapping） 文件的BufferedWriter
         mMergeDuplicatedResMappingWriter = new BufferedWriter(new FileWriter(mApkDecoder.getMergeDuplicatedResMappingFile(), false));
         mMergeDuplicatedResMappingWriter.write("res filter path mapping:\n");
@@ -154,15 +169,12 @@ public class ARSCDecoder {
         //获取config
         final Configuration config = mApkDecoder.getConfig();
 
-        //获取原资源文件对象（temp下的res）
-        File rawResFile = mApkDecoder.getRawResFile();
-
-        //获取 rawResFile 下的所有子文件（不包含子子文件）
-        File[] resFiles = rawResFile.listFiles();
+        //获取 res 下的所有子文件（不包含子子文件）
+        Set<String> resFiles = mApkDecoder.getRawResDirNames();
 
         // 需要看看哪些类型是要混淆文件路径的（获取到所有的类型（layout，drawable等）并存放在 mShouldResguardTypeSet）
-        for (File resFile : resFiles) {
-            String raw = resFile.getName();
+        for (String resFile : resFiles) {
+            String raw = resFile;
             if (raw.contains("-")) {
                 raw = raw.substring(0, raw.indexOf("-"));//color-v21 会截成color
             }
@@ -193,8 +205,8 @@ public class ARSCDecoder {
                 mResguardBuilder.removeStrings(keepFileNames);
 
                 //遍历文件 如果文件包含在 fileMapping 中，那么直接使用fileMapping中的配置，如果不包含则直接 获取一个混淆名称 保存到 mOldFileName中
-                for (File resFile : resFiles) {
-                    String raw = "res" + "/" + resFile.getName();
+                for (String resFile : resFiles) {
+                    String raw = "res" + "/" + resFile;
                     if (fileMapping.containsKey(raw)) {
                         mOldFileName.put(raw, fileMapping.get(raw));
                     } else {
@@ -202,9 +214,9 @@ public class ARSCDecoder {
                     }
                 }
             } else {
-                for (int i = 0; i < resFiles.length; i++) {
+                for (String resFile : resFiles) {
                     // 这里也要用linux的分隔符,如果普通的话，就是r。这里替换的是 res 下文件夹的 名称
-                    mOldFileName.put("res" + "/" + resFiles[i].getName(), TypedValue.RES_FILE_PATH + "/" + mResguardBuilder.getReplaceString());
+                    mOldFileName.put("res" + "/" + resFile, TypedValue.RES_FILE_PATH + "/" + mResguardBuilder.getReplaceString());
 
 //                    Utils.logARSC("[debug] mOldFileName put key= %s , value= %s",
 //                            resFiles[i].getName(),
@@ -220,18 +232,19 @@ public class ARSCDecoder {
     }
 
     private ResPackage[] readTable() throws IOException, AndrolibException {
-        nextChunkCheckType(Header.TYPE_TABLE);
-        int packageCount = mIn.readInt();
-        //解析出全局字符串池
-        mTableStrings = StringBlock.read(mIn);
-        ResPackage[] packages = new ResPackage[packageCount];
-        nextChunk();
-        for (int i = 0; i < packageCount; i++) {
-            packages[i] = readPackage();
+        //全局字符串池已经在 ARSCTable 中解析好了
+        mTableStrings = mTable.getTableStrings();
+        List<ARSCTable.PackageChunk> packageChunks = mTable.getPackages();
+        ResPackage[] packages = new ResPackage[packageChunks.size()];
+        for (int i = 0; i < packages.length; i++) {
+            packages[i] = readPackage(packageChunks.get(i));
         }
         mMappingWriter.close();
+        mBinaryMappingWriter.write(mApkDecoder.getResBinaryMappingFile());
+        mBinaryMappingWriter = null;
         Utils.logARSC("resources mapping file %s done", mApkDecoder.getResMappingFile().getAbsolutePath());
         generalFilterEnd(mMergeDuplicatedResCount, mMergeDuplicatedResTotalSize);
+        mApkDecoder.getContext().setMergeDuplicatedResCount(mMergeDuplicatedResCount);
         mMergeDuplicatedResMappingWriter.close();
         Utils.logARSC("resources filter mapping file %s done", mApkDecoder.getMergeDuplicatedResMappingFile().getAbsolutePath());
         return packages;
@@ -239,25 +252,48 @@ public class ARSCDecoder {
 
     private void writeTable() throws IOException, AndrolibException {
         Utils.logARSC("writing new resources.arsc ");
-        mTableLenghtChange = 0;
-        writeNextChunkCheck(Header.TYPE_TABLE, 0);
-        int packageCount = mIn.readInt();
-        mOut.writeInt(packageCount);
-
-        mTableLenghtChange += StringBlock.writeTableNameStringBlock(mIn, mOut, mTableStringsResguard);
-        writeNextChunk(0);
-        if (packageCount != mPkgs.length) {
+        List<ARSCTable.PackageChunk> packageChunks = mTable.getPackages();
+        if (packageChunks.size() != mPkgs.length) {
             throw new AndrolibException(String.format("writeTable package count is different before %d, now %d",
                     mPkgs.length,
-                    packageCount
+                    packageChunks.size()
             ));
         }
-        for (int i = 0; i < packageCount; i++) {
+
+        //表头和 packageCount 不会变化，直接拷贝，chunkSize 等整个表写完再回填
+        int tableStart = mBuffer.position();
+        writeData(mTable.getTableHeader().startPosition, mTable.getTableStringsStart());
+        StringBlock.writeTableNameStringBlock(
+                mTable.getData(mTable.getTableStringsStart(), mTable.getTableStringsEnd()),
+                mOut,
+                mTableStringsResguard
+        );
+        for (int i = 0; i < mPkgs.length; i++) {
             mCurPackageID = i;
-            writePackage();
+            writePackage(packageChunks.get(i));
         }
-        // 最后需要把整个的size重写回去
-        reWriteTable();
+        patchChunkSize(tableStart);
+    }
+
+    /**
+     * 将原始 resources.arsc 中 [start, end) 这一段原样拷贝
+     */
+    private void writeData(int start, int end) {
+        mData.limit(end);
+        mData.position(start);
+        mBuffer.write(mData);
+        mData.limit(mData.capacity());
+    }
+
+    /**
+     * chunk 写完之后回填 chunk 头中的 chunkSize
+     */
+    private void patchChunkSize(int chunkStart) throws AndrolibException {
+        int size = mBuffer.position() - chunkStart;
+        if (size <= 0) {
+            throw new AndrolibException(String.format("patchChunkSize size < 0: size=%d", size));
+        }
+        mBuffer.putInt(chunkStart + 4, size);
     }
 
     /**
@@ -270,6 +306,7 @@ public class ARSCDecoder {
         for (String raw : mOldFileName.keySet()) {
             mMappingWriter.write("    " + raw + " -> " + mOldFileName.get(raw));
             mMappingWriter.write("\n");
+            mBinaryMappingWriter.visitFile(raw, mOldFileName.get(raw));
         }
         mMappingWriter.write("\n\n");
         mMappingWriter.write("res id mapping:\n");
@@ -291,7 +328,7 @@ public class ARSCDecoder {
                 + "."
                 + replace);
         mMappingWriter.write("\n");
-        mMappingWriter.flush();
+        mBinaryMappingWriter.visitRes(packageName, typename, specName, replace);
     }
 
     private void generalFilterResIDMapping(
@@ -308,7 +345,6 @@ public class ARSCDecoder {
                 + getNetFileSizeDescription(fileLen)
                 + ")");
         mMergeDuplicatedResMappingWriter.write("\n");
-        mMergeDuplicatedResMappingWriter.flush();
     }
 
     private void generalFilterEnd(int count, long totalSize) throws IOException {
@@ -340,40 +376,14 @@ public class ARSCDecoder {
         return bytes.toString();
     }
 
-    private void reWriteTable() throws AndrolibException, IOException {
-
-        mIn = new ExtDataInput(new LEDataInputStream(new FileInputStream(mApkDecoder.getOutTempARSCFile())));
-        mOut = new ExtDataOutput(new LEDataOutputStream(new FileOutputStream(mApkDecoder.getOutARSCFile(), false)));
-        writeNextChunkCheck(Header.TYPE_TABLE, mTableLenghtChange);
-        int packageCount = mIn.readInt();
-        mOut.writeInt(packageCount);
-        StringBlock.writeAll(mIn, mOut);
-
-        for (int i = 0; i < packageCount; i++) {
-            mCurPackageID = i;
-            writeNextChunk(mPkgsLenghtChange[mCurPackageID]);
-            mOut.writeBytes(mIn, mHeader.chunkSize - 8);
-        }
-        mApkDecoder.getOutTempARSCFile().delete();
-    }
-
-    private ResPackage readPackage() throws IOException, AndrolibException {
-        checkChunkType(Header.TYPE_PACKAGE);
-        int id = (byte) mIn.readInt();
-        String name = mIn.readNullEndedString(128, true);
+    private ResPackage readPackage(ARSCTable.PackageChunk packageChunk) throws IOException, AndrolibException {
+        int id = packageChunk.id;
+        String name = packageChunk.name;
         Utils.logARSC("reading packagename %s", name);
 
-        /* typeNameStrings */
-        mIn.skipInt();
-        /* typeNameCount */
-        mIn.skipInt();
-        /* specNameStrings */
-        mIn.skipInt();
-        /* specNameCount */
-        mIn.skipInt();
         mCurrTypeID = -1;
-        mTypeNames = StringBlock.read(mIn);
-        mSpecNames = StringBlock.read(mIn);
+        mTypeNames = packageChunk.typeNames;
+        mSpecNames = packageChunk.specNames;
         mResId = id << 24;
 
         mPkg = new ResPackage(id, name);
@@ -383,54 +393,46 @@ public class ARSCDecoder {
         } else {
             mPkg.setCanResguard(true);
         }
-        nextChunk();
-        while (mHeader.type == Header.TYPE_LIBRARY) {
-            readLibraryType();
-        }
-        while (mHeader.type == Header.TYPE_SPEC_TYPE) {
-            readTableTypeSpec();
+        for (ARSCTable.Chunk chunk : packageChunk.chunks) {
+            if (chunk instanceof ARSCTable.TypeSpecChunk) {
+                readTableTypeSpec((ARSCTable.TypeSpecChunk) chunk);
+            } else if (chunk instanceof ARSCTable.TypeChunk) {
+                readConfig((ARSCTable.TypeChunk) chunk);
+            }
         }
         return mPkg;
     }
 
-    private void writePackage() throws IOException, AndrolibException {
-        checkChunkType(Header.TYPE_PACKAGE);
-        int id = (byte) mIn.readInt();
-        //写入packageId
-        mOut.writeInt(id);
-        mResId = id << 24;
-        //char_16的，一共256byte -> 写入 包名
-        mOut.writeBytes(mIn, 256);
-        /* typeNameStrings -> 写入 资源类型 string pool偏移 */
-        mOut.writeInt(mIn.readInt());
-        /* typeNameCount -> 写入 类型字符串资源池元素个数 */
-        mOut.writeInt(mIn.readInt());
-        /* specNameStrings -> 写入 资源关键字 string pool 偏移 */
-        mOut.writeInt(mIn.readInt());
-        /* specNameCount -> 写入 资源项名称字符串资源池的元素的个数*/
-        mOut.writeInt(mIn.readInt());
-        //写入 资源类型字符串池
-        StringBlock.writeAll(mIn, mOut);
-
-        if (mPkgs[mCurPackageID].isCanResguard()) {
+    private void writePackage(ARSCTable.PackageChunk packageChunk) throws IOException, AndrolibException {
+        Header header = packageChunk.header;
+        int packageStart = mBuffer.position();
+        //package 头和资源类型字符串池不会变化，直接拷贝
+        writeData(header.startPosition, packageChunk.specNamesStart);
+        //写入 资源项名称字符串池
+        ResPackage pkg = mPkgs[mCurPackageID];
+        if (pkg.isCanResguard()) {
             //混淆SpecName
-            int specSizeChange = StringBlock.writeSpecNameStringBlock(mIn,
+            StringBlock.writeSpecNameStringBlock(
+                    mTable.getData(packageChunk.specNamesStart, packageChunk.specNamesEnd),
                     mOut,
-                    mPkgs[mCurPackageID].getSpecNamesBlock(),
+                    pkg.getSpecNamesBlock(),
                     mCurSpecNameToPos
             );
-            mPkgsLenghtChange[mCurPackageID] += specSizeChange;
-            mTableLenghtChange += specSizeChange;
         } else {
-            StringBlock.writeAll(mIn, mOut);
+            writeData(packageChunk.specNamesStart, packageChunk.specNamesEnd);
         }
-        writeNextChunk(0);
-        while (mHeader.type == Header.TYPE_LIBRARY) {
-            writeLibraryType();
-        }
-        while (mHeader.type == Header.TYPE_SPEC_TYPE) {
-            writeTableTypeSpec();
+        mResId = packageChunk.id << 24;
+        for (ARSCTable.Chunk chunk : packageChunk.chunks) {
+            if (chunk instanceof ARSCTable.TypeChunk) {
+                writeConfig((ARSCTable.TypeChunk) chunk);
+            } else {
+                if (chunk instanceof ARSCTable.TypeSpecChunk) {
+                    mResId = (0xff000000 & mResId) | ((ARSCTable.TypeSpecChunk) chunk).id << 16;
+                }
+                writeData(chunk.header.startPosition, chunk.header.endPosition);
+            }
         }
+        patchChunkSize(packageStart);
     }
 
     /**
@@ -456,46 +458,23 @@ public class ARSCDecoder {
         }
     }
 
-    private HashSet<Pattern> getWhiteList(String resType) {
+    private WhiteListMatcher getWhiteList(String resType) {
         final String packName = mPkg.getName();
         if (mApkDecoder.getConfig().mWhiteList.containsKey(packName)) {
             if (mApkDecoder.getConfig().mUseWhiteList) {
-                HashMap<String, HashSet<Pattern>> typeMaps = mApkDecoder.getConfig().mWhiteList.get(packName);
+                HashMap<String, WhiteListMatcher> typeMaps = mApkDecoder.getConfig().mWhiteList.get(packName);
                 return typeMaps.get(resType);
             }
         }
         return null;
     }
 
-    private void readLibraryType() throws AndrolibException, IOException {
-        checkChunkType(Header.TYPE_LIBRARY);
-        int libraryCount = mIn.readInt();
-
-        int packageId;
-        String packageName;
-
-        for (int i = 0; i < libraryCount; i++) {
-            packageId = mIn.readInt();
-            packageName = mIn.readNullEndedString(128, true);
-            Utils.logARSC("Decoding Shared Library (%s), pkgId: %d", packageName, packageId);
-        }
-
-        //如果library的下一个块儿是 TYPE_TYPE 则进行解析
-        //感觉这里有问题啊 因为readTableTypeSpec（）中的 checkChunkType(Header.TYPE_SPEC_TYPE); 过不去啊
-        while (nextChunk().type == Header.TYPE_TYPE) {
-            readTableTypeSpec();
-        }
-    }
-
-    private void readTableTypeSpec() throws AndrolibException, IOException {
-        checkChunkType(Header.TYPE_SPEC_TYPE);
-        byte id = mIn.readByte();
-        mIn.skipBytes(3);
-        int entryCount = mIn.readInt();
+    private void readTableTypeSpec(ARSCTable.TypeSpecChunk spec) throws AndrolibException, IOException {
+        byte id = spec.id;
         //确定type类型和包名
         mType = new ResType(mTypeNames.getString(id - 1), mPkg);
-        if (DEBUG) {
-            Utils.logARSC("[ReadTableType] type (%s) id: (%d) curr (%d)", mType, id, mCurrTypeID);
+        if (Log.isVerbose()) {
+            Log.v(TAG, "[ReadTableType] type (%s) id: (%d) curr (%d)", mType, id, mCurrTypeID);
         }
         // first meet a type of resource
         if (mCurrTypeID != id) {
@@ -505,14 +484,8 @@ public class ARSCDecoder {
         // 是否需要混淆混淆
         mShouldResguardForType = isToResguardFile(mTypeNames.getString(id - 1));
 
-        // 对，这里是用来描述差异性的！！！（跳过 资源 spce 数组）
-        mIn.skipBytes(entryCount * 4);
         // 获取到资源id
         mResId = (0xff000000 & mResId) | id << 16;
-
-        while (nextChunk().type == Header.TYPE_TYPE) {
-            readConfig();
-        }
     }
 
     /**
@@ -522,92 +495,48 @@ public class ARSCDecoder {
      */
     private void initResGuardBuild(int resTypeId) {
         // we need remove string from resguard candidate list if it exists in white list
-        HashSet<Pattern> whiteListPatterns = getWhiteList(mType.getName());
+        mWhiteListMatcher = getWhiteList(mType.getName());
         // init resguard builder （防止 mResguardBuilder 中包含白名单内容）
-        mResguardBuilder.reset(whiteListPatterns);
+        mResguardBuilder.reset(mWhiteListMatcher);
         //避免 混淆后有重复的 String，所以要剔除 重复的名字
-        mResguardBuilder.removeStrings(RawARSCDecoder.getExistTypeSpecNameStrings(resTypeId));
+        mResguardBuilder.removeStrings(mTable.getExistTypeSpecNameStrings(resTypeId));
         // 如果是保持mapping的话，需要去掉某部分已经用过的mapping
         reduceFromOldMappingFile();
     }
 
-    private void writeLibraryType() throws AndrolibException, IOException {
-        checkChunkType(Header.TYPE_LIBRARY);
-        int libraryCount = mIn.readInt();
-        mOut.writeInt(libraryCount);
-        for (int i = 0; i < libraryCount; i++) {
-            mOut.writeInt(mIn.readInt());/*packageId*/
-            mOut.writeBytes(mIn, 256); /*packageName*/
-        }
-        writeNextChunk(0);
-        while (mHeader.type == Header.TYPE_TYPE) {
-            writeTableTypeSpec();
-        }
-    }
-
-    private void writeTableTypeSpec() throws AndrolibException, IOException {
-        checkChunkType(Header.TYPE_SPEC_TYPE);
-        byte id = mIn.readByte();
-        mOut.writeByte(id);
-        mResId = (0xff000000 & mResId) | id << 16;
-        mOut.writeBytes(mIn, 3);
-        int entryCount = mIn.readInt();
-        mOut.writeInt(entryCount);
-        // 对，这里是用来描述差异性的！！！
-        ///* flags */mIn.skipBytes(entryCount * 4);
-        int[] entryOffsets = mIn.readIntArray(entryCount);
-        mOut.writeIntArray(entryOffsets);
-
-        while (writeNextChunk(0).type == Header.TYPE_TYPE) {
-            writeConfig();
-        }
-    }
-
-    private void readConfig() throws IOException, AndrolibException {
-        checkChunkType(Header.TYPE_TYPE);
-        /* 跳过 typeId 和保留字段 */
-        mIn.skipInt();
-        int entryCount = mIn.readInt();
-        int entriesStart = mIn.readInt();
-        //解析config 但是没有用
-        readConfigFlags();
-        //获取 ResTable_entry 偏移数组
-        int[] entryOffsets = mIn.readIntArray(entryCount);
+    private void readConfig(ARSCTable.TypeChunk type) throws IOException, AndrolibException {
+        //config 和 ResTable_entry 已经在 ARSCTable 中解析好了
+        int[] entryOffsets = type.entryOffsets;
         for (int i = 0; i < entryOffsets.length; i++) {
             mCurEntryID = i;
             if (entryOffsets[i] != -1) {
                 mResId = (mResId & 0xffff0000) | i;
-                readEntry();
+                readEntry(type, i);
             }
         }
     }
 
-    private void writeConfig() throws IOException, AndrolibException {
-        checkChunkType(Header.TYPE_TYPE);
-        /* typeId */
-        mOut.writeInt(mIn.readInt());
-        /* entryCount */
-        int entryCount = mIn.readInt();
-        mOut.writeInt(entryCount);
-        /* entriesStart */
-        mOut.writeInt(mIn.readInt());
-
-        writeConfigFlags();
-        int[] entryOffsets = mIn.readIntArray(entryCount);
-        mOut.writeIntArray(entryOffsets);
+    private void writeConfig(ARSCTable.TypeChunk type) throws AndrolibException {
+        Header header = type.header;
+        //整个 TYPE_TYPE 块儿只有 entry 的 specNamesId 会变化，先整块拷贝再原地修改
+        int chunkStart = mBuffer.position();
+        writeData(header.startPosition, header.endPosition);
 
+        if (!mPkgs[mCurPackageID].isCanResguard()) {
+            return;
+        }
+        int[] entryOffsets = type.entryOffsets;
         for (int i = 0; i < entryOffsets.length; i++) {
             if (entryOffsets[i] != -1) {
                 mResId = (mResId & 0xffff0000) | i;
-                writeEntry();
+                writeEntry(chunkStart + type.entryPositions[i] - header.startPosition);
             }
         }
     }
 
-    private void readEntry() throws IOException, AndrolibException {
-        mIn.skipBytes(2);
-        short flags = mIn.readShort();
-        int specNamesId = mIn.readInt();
+    private void readEntry(ARSCTable.TypeChunk type, int index) throws IOException, AndrolibException {
+        short flags = type.entryFlags[index];
+        int specNamesId = type.entryKeys[index];
 
         if (mPkg.isCanResguard()) {
             // 混淆过或者已经添加到白名单的都不需要再处理了
@@ -624,11 +553,9 @@ public class ARSCDecoder {
             }
         }
 
-        //如果 Flags 不是 ENTRY_FLAG_COMPLEX
+        //如果 Flags 不是 ENTRY_FLAG_COMPLEX，complex entry 的 value 不需要处理
         if ((flags & ENTRY_FLAG_COMPLEX) == 0) {
-            readValue(true, specNamesId);
-        } else {
-            readComplexEntry(false, specNamesId);
+            readValue(type.valueTypes[index], type.valueData[index]);
         }
     }
 
@@ -640,28 +567,20 @@ public class ARSCDecoder {
      * @return isWhiteList whether this resource is processed by whitelist
      */
     private boolean dealWithWhiteList(int specNamesId, Configuration config) throws AndrolibException {
-        String packName = mPkg.getName();
-        if (config.mWhiteList.containsKey(packName)) {
-            HashMap<String, HashSet<Pattern>> typeMaps = config.mWhiteList.get(packName);
-            String typeName = mType.getName();
-            if (typeMaps.containsKey(typeName)) {
-                String specName = mSpecNames.get(specNamesId).toString();
-                HashSet<Pattern> patterns = typeMaps.get(typeName);
-                for (Iterator<Pattern> it = patterns.iterator(); it.hasNext(); ) {
-                    Pattern p = it.next();
-                    if (p.matcher(specName).matches()) {
-                        if (DEBUG) {
-                            Utils.logARSC("[match] matcher %s ,typeName %s, specName :%s", p.pattern(), typeName, specName);
-                        }
-                        mPkg.putSpecNamesReplace(mResId, specName);
-                        mPkg.putSpecNamesblock(specName, specName);
-                        mResguardBuilder.setInWhiteList(mCurEntryID);
-
-                        //用来确定没有 重复的资源名 如果有就报错
-                        mType.putSpecResguardName(specName);
-                        return true;
-                    }
+        //当前 type 的白名单在 initResGuardBuild 中已经取好了
+        if (mWhiteListMatcher != null) {
+            String specName = mSpecNames.get(specNamesId).toString();
+            if (mWhiteListMatcher.matches(specName)) {
+                if (Log.isVerbose()) {
+                    Log.v(TAG, "[match] typeName %s, specName :%s", mType.getName(), specName);
                 }
+                mPkg.putSpecNamesReplace(mResId, specName);
+                mPkg.putSpecNamesblock(specName, specName);
+                mResguardBuilder.setInWhiteList(mCurEntryID);
+
+                //用来确定没有 重复的资源名 如果有就报错
+                mType.putSpecResguardName(specName);
+                return true;
             }
         }
         return false;
@@ -706,7 +625,9 @@ public class ARSCDecoder {
         //将 资源id 和 混淆后的文件名称进行保存
         mPkg.putSpecNamesReplace(mResId, replaceString);
 
-        Utils.logARSC("putSpecNamesReplace key(ResId)= %s,replaceString= %s",mResId,replaceString);
+        if (Log.isVerbose()) {
+            Log.v(TAG, "putSpecNamesReplace key(ResId)= %s,replaceString= %s", mResId, replaceString);
+        }
 
         // arsc name列混淆成固定名字, 减少string pool大小
         boolean useFixedName = config.mFixedResName != null && config.mFixedResName.length() > 0;
@@ -716,67 +637,27 @@ public class ARSCDecoder {
         mType.putSpecResguardName(replaceString);
     }
 
-    private void writeEntry() throws IOException, AndrolibException {
-        /* size */
-        mOut.writeBytes(mIn, 2);
-        short flags = mIn.readShort();
-        mOut.writeShort(flags);
-        int specNamesId = mIn.readInt();
-        ResPackage pkg = mPkgs[mCurPackageID];
-        if (pkg.isCanResguard()) {
-            specNamesId = mCurSpecNameToPos.get(pkg.getSpecRepplace(mResId));
-            if (specNamesId < 0) {
-                throw new AndrolibException(String.format("writeEntry new specNamesId < 0 %d", specNamesId));
-            }
-        }
-        mOut.writeInt(specNamesId);
-
-        if ((flags & ENTRY_FLAG_COMPLEX) == 0) {
-            writeValue();
-        } else {
-            writeComplexEntry();
-        }
-    }
-
     /**
-     * @param flags whether read direct
+     * @param position entry 在新 resources.arsc 中的位置
      */
-    private void readComplexEntry(boolean flags, int specNamesId) throws IOException, AndrolibException {
-        int parent = mIn.readInt();
-        int count = mIn.readInt();
-        for (int i = 0; i < count; i++) {
-            mIn.readInt();
-            readValue(flags, specNamesId);
-        }
-    }
-
-    private void writeComplexEntry() throws IOException, AndrolibException {
-        mOut.writeInt(mIn.readInt());
-        int count = mIn.readInt();
-        mOut.writeInt(count);
-        for (int i = 0; i < count; i++) {
-            mOut.writeInt(mIn.readInt());
-            writeValue();
+    private void writeEntry(int position) throws AndrolibException {
+        ResPackage pkg = mPkgs[mCurPackageID];
+        /* size, flags 之后就是 specNamesId */
+        int specNamesId = mCurSpecNameToPos.get(pkg.getSpecRepplace(mResId));
+        if (specNamesId < 0) {
+            throw new AndrolibException(String.format("writeEntry new specNamesId < 0 %d", specNamesId));
         }
+        mBuffer.putInt(position + 4, specNamesId);
     }
 
     /**
-     * 继续解析 ResTable_entry类型数据
-     * @param flags whether read direct
+     * 继续处理 ResTable_entry 的 value
+     * @param type value 的数据类型
+     * @param data specNamesId(资源项目名称index （下标）) 通过这个再加上 资源项目池 就可以拿到对应 String
      */
-    private void readValue(boolean flags, int specNamesId) throws IOException, AndrolibException {
-        /* size */
-        mIn.skipCheckShort((short) 8);
-        /* zero */
-        mIn.skipCheckByte((byte) 0);
-        //数据类型
-        byte type = mIn.readByte();
-        //specNamesId(资源项目名称index （下标）) 通过这个再加上 资源项目池 就可以拿到对应 String
-        int data = mIn.readInt();
-
+    private void readValue(byte type, int data) throws IOException, AndrolibException {
         //这里面有几个限制，一对于string ,id, array我们是知道肯定不用改的，第二看要那个type是否对应有文件路径
         if (mPkg.isCanResguard()//可以混淆
-                && flags
                 && type == TypedValue.TYPE_STRING //是String池
                 && mShouldResguardForType //非 string ,id, array
                 && mShouldResguardTypeSet.contains(mType.getName()))//应该要混淆的 类别 包含 color ，drawable等
@@ -809,23 +690,17 @@ public class ARSCDecoder {
                     result += raw.substring(firstDot);
                 }
                 String compatibaleraw = new String(raw);
-                String compatibaleresult = new String(result);
 
                 //为了适配window要做一次转换
                 if (!File.separator.contains("/")) {
-                    compatibaleresult = compatibaleresult.replace("/", File.separator);
                     compatibaleraw = compatibaleraw.replace("/", File.separator);
                 }
 
-                File resRawFile = new File(mApkDecoder.getOutTempDir().getAbsolutePath() + File.separator + compatibaleraw);
-                File resDestFile = new File(mApkDecoder.getOutDir().getAbsolutePath() + File.separator + compatibaleresult);
-
                 MergeDuplicatedResInfo filterInfo = null;
                 boolean mergeDuplicatedRes = mApkDecoder.getConfig().mMergeDuplicatedRes;
-                if (mergeDuplicatedRes) {
-                    filterInfo = mergeDuplicated(resRawFile, resDestFile, compatibaleraw, result);
+                if (mergeDuplicatedRes && mApkDecoder.hasRawResFile(raw)) {
+                    filterInfo = mergeDuplicated(raw, compatibaleraw, result);
                     if (filterInfo != null) {
-                        resDestFile = new File(filterInfo.filePath);
                         result = filterInfo.fileName;
                     }
                 }
@@ -835,29 +710,35 @@ public class ARSCDecoder {
                 if (compressData.containsKey(raw)) {
                     //就是在这里替换了 混淆后的文件名！！！！
                     compressData.put(result, compressData.get(raw));
-                    Utils.logARSC("compressData put result= %s, raw= %s, value= %s", result, raw, compressData.get(raw));
+                    if (Log.isVerbose()) {
+                        Log.v(TAG, "compressData put result= %s, raw= %s, value= %s", result, raw, compressData.get(raw));
+                    }
                 } else {
                     Utils.logARSC("can not find the compress dataresFile=%s", raw);
                 }
 
-                if (!resRawFile.exists()) {
-                    Utils.logARSC("can not find res file, you delete it? path: resFile=%s", resRawFile.getAbsolutePath());
+                if (!mApkDecoder.hasRawResFile(raw)) {
+                    Utils.logARSC("can not find res file, you delete it? path: resFile=%s", raw);
                 } else {
-                    if (!mergeDuplicatedRes && resDestFile.exists()) {
+                    if (!mergeDuplicatedRes && mApkDecoder.hasResDestFile(result)) {
                         throw new AndrolibException(String.format("res dest file is already  found: destFile=%s",
-                                resDestFile.getAbsolutePath()
+                                result
                         ));
                     }
                     if (filterInfo == null) {
                         //将没有混淆的文件内容 copy 到混淆的文件中
-                        FileOperation.copyFileUsingStream(resRawFile, resDestFile);
-                        Utils.logARSC("resRawFile= %s \n resDestFile= %s",resRawFile,resDestFile);
+                        mApkDecoder.copyResFile(raw, result);
+                        if (Log.isVerbose()) {
+                            Log.v(TAG, "resRawFile= %s \n resDestFile= %s", raw, result);
+                        }
                     }
                     //already copied
-                    mApkDecoder.removeCopiedResFile(resRawFile.toPath());
+                    mApkDecoder.removeCopiedResFile(raw);
                     //放入 mTableStringsResguard 中
                     mTableStringsResguard.put(data, result);
-                    Utils.logARSC("mTableStringsResguard put key= %s,value= %s ", data, result);
+                    if (Log.isVerbose()) {
+                        Log.v(TAG, "mTableStringsResguard put key= %s,value= %s ", data, result);
+                    }
                 }
             }
         }
@@ -866,207 +747,30 @@ public class ARSCDecoder {
     /**
      * resource filtering, filtering duplicate resources, reducing the volume of apk
      */
-    private MergeDuplicatedResInfo mergeDuplicated(File resRawFile, File resDestFile, String compatibaleraw, String result) throws IOException {
-        MergeDuplicatedResInfo filterInfo = null;
-        List<MergeDuplicatedResInfo> mergeDuplicatedResInfoList = mMergeDuplicatedResInfoData.get(resRawFile.length());
-        if (mergeDuplicatedResInfoList != null) {
-            for (MergeDuplicatedResInfo mergeDuplicatedResInfo : mergeDuplicatedResInfoList) {
-                if (mergeDuplicatedResInfo.md5 == null) {
-                    mergeDuplicatedResInfo.md5 = Md5Util.getMD5Str(new File(mergeDuplicatedResInfo.filePath));
-                }
-                String resRawFileMd5 = Md5Util.getMD5Str(resRawFile);
-                if (!resRawFileMd5.isEmpty() && resRawFileMd5.equals(mergeDuplicatedResInfo.md5)) {
-                    filterInfo = mergeDuplicatedResInfo;
-                    filterInfo.md5 = resRawFileMd5;
-                    break;
-                }
-            }
-        }
+    private MergeDuplicatedResInfo mergeDuplicated(String raw, String compatibaleraw, String result) throws IOException {
+        long length = mApkDecoder.getRawResFileLength(raw);
+        String contentKey = mDuplicatedResIndex.getContentKey(raw);
+        //读取失败的文件不参与合并
+        if (contentKey == null) {
+            return null;
+        }
+        MergeDuplicatedResInfo filterInfo = mMergeDuplicatedResInfoData.get(contentKey);
         if (filterInfo != null) {
-            generalFilterResIDMapping(compatibaleraw, result, filterInfo.originalName, filterInfo.fileName, resRawFile.length());
+            generalFilterResIDMapping(compatibaleraw, result, filterInfo.originalName, filterInfo.fileName, length);
             mMergeDuplicatedResCount++;
-            mMergeDuplicatedResTotalSize += resRawFile.length();
+            mMergeDuplicatedResTotalSize += length;
         } else {
+            // filePath 记录的是原资源路径，被拷贝的文件和原资源内容一致
             MergeDuplicatedResInfo info = new MergeDuplicatedResInfo.Builder()
                     .setFileName(result)
-                    .setFilePath(resDestFile.getAbsolutePath())
+                    .setFilePath(raw)
                     .setOriginalName(compatibaleraw)
                     .create();
-            info.fileName = result;
-            info.filePath = resDestFile.getAbsolutePath();
-            info.originalName = compatibaleraw;
-
-            if (mergeDuplicatedResInfoList == null) {
-                mergeDuplicatedResInfoList = new ArrayList<>();
-                mMergeDuplicatedResInfoData.put(resRawFile.length(), mergeDuplicatedResInfoList);
-            }
-            mergeDuplicatedResInfoList.add(info);
+            mMergeDuplicatedResInfoData.put(contentKey, info);
         }
         return filterInfo;
     }
 
-    private void writeValue() throws IOException, AndrolibException {
-        /* size */
-        mOut.writeCheckShort(mIn.readShort(), (short) 8);
-        /* zero */
-        mOut.writeCheckByte(mIn.readByte(), (byte) 0);
-        byte type = mIn.readByte();
-        mOut.writeByte(type);
-        int data = mIn.readInt();
-        mOut.writeInt(data);
-    }
-
-    private void readConfigFlags() throws IOException, AndrolibException {
-        //获取config 的大小
-        int size = mIn.readInt();
-        int read = 28;
-        if (size < 28) {
-            throw new AndrolibException("Config size < 28");
-        }
-
-        boolean isInvalid = false;
-
-        short mcc = mIn.readShort();
-        short mnc = mIn.readShort();
-
-        char[] language = new char[]{(char) mIn.readByte(), (char) mIn.readByte()};
-        char[] country = new char[]{(char) mIn.readByte(), (char) mIn.readByte()};
-
-        byte orientation = mIn.readByte();
-        byte touchscreen = mIn.readByte();
-
-        int density = mIn.readUnsignedShort();
-
-        byte keyboard = mIn.readByte();
-        byte navigation = mIn.readByte();
-        byte inputFlags = mIn.readByte();
-        /* inputPad0 */
-        mIn.skipBytes(1);
-
-        short screenWidth = mIn.readShort();
-        short screenHeight = mIn.readShort();
-
-        short sdkVersion = mIn.readShort();
-        /* minorVersion, now must always be 0 */
-        mIn.skipBytes(2);
-
-        byte screenLayout = 0;
-        byte uiMode = 0;
-        short smallestScreenWidthDp = 0;
-
-        if (size >= 32) {
-            screenLayout = mIn.readByte();
-            uiMode = mIn.readByte();
-            smallestScreenWidthDp = mIn.readShort();
-            read = 32;
-        }
-
-        short screenWidthDp = 0;
-        short screenHeightDp = 0;
-        if (size >= 36) {
-            screenWidthDp = mIn.readShort();
-            screenHeightDp = mIn.readShort();
-            read = 36;
-        }
-
-        char[] localeScript = null;
-        char[] localeVariant = null;
-        if (size >= 48) {
-            localeScript = readScriptOrVariantChar(4).toCharArray();
-            localeVariant = readScriptOrVariantChar(8).toCharArray();
-            read = 48;
-        }
-
-        byte screenLayout2 = 0;
-        if (size >= 52) {
-            screenLayout2 = mIn.readByte();
-            mIn.skipBytes(3); // reserved padding
-            read = 52;
-        }
-
-        if (size >= 56) {
-            mIn.skipBytes(4);
-            read = 56;
-        }
-
-        int exceedingSize = size - KNOWN_CONFIG_BYTES;
-        if (exceedingSize > 0) {
-            byte[] buf = new byte[exceedingSize];
-            read += exceedingSize;
-            mIn.readFully(buf);
-            BigInteger exceedingBI = new BigInteger(1, buf);
-
-            if (exceedingBI.equals(BigInteger.ZERO)) {
-                LOGGER.fine(String.format("Config flags size > %d, but exceeding bytes are all zero, so it should be ok.",
-                        KNOWN_CONFIG_BYTES
-                ));
-            } else {
-                LOGGER.warning(String.format("Config flags size > %d. Exceeding bytes: 0x%X.",
-                        KNOWN_CONFIG_BYTES,
-                        exceedingBI
-                ));
-                isInvalid = true;
-            }
-        }
-    }
-
-    private String readScriptOrVariantChar(int length) throws AndrolibException, IOException {
-        StringBuilder string = new StringBuilder(16);
-
-        while (length-- != 0) {
-            short ch = mIn.readByte();
-            if (ch == 0) {
-                break;
-            }
-            string.append((char) ch);
-        }
-        mIn.skipBytes(length);
-
-        return string.toString();
-    }
-
-    private void writeConfigFlags() throws IOException, AndrolibException {
-        //总的有多大
-        int size = mIn.readInt();
-        if (size < 28) {
-            throw new AndrolibException("Config size < 28");
-        }
-        mOut.writeInt(size);
-
-        mOut.writeBytes(mIn, size - 4);
-    }
-
-    private Header nextChunk() throws IOException {
-        return mHeader = Header.read(mIn);
-    }
-
-    private void checkChunkType(int expectedType) throws AndrolibException {
-        if (mHeader.type != expectedType) {
-            throw new AndrolibException(String.format("Invalid chunk type: expected=0x%08x, got=0x%08x",
-                    expectedType,
-                    mHeader.type
-            ));
-        }
-    }
-
-    private void nextChunkCheckType(int expectedType) throws IOException, AndrolibException {
-        nextChunk();
-        checkChunkType(expectedType);
-    }
-
-    private Header writeNextChunk(int diffSize) throws IOException, AndrolibException {
-        mHeader = Header.readAndWriteHeader(mIn, mOut, diffSize);
-        return mHeader;
-    }
-
-    private Header writeNextChunkCheck(int expectedType, int diffSize) throws IOException, AndrolibException {
-        mHeader = Header.readAndWriteHeader(mIn, mOut, diffSize);
-        if (mHeader.type != expectedType) {
-            throw new AndrolibException(String.format("Invalid chunk type: expected=%d, got=%d", expectedType, mHeader.type));
-        }
-        return mHeader;
-    }
-
     /**
      * 为了加速，不需要处理string,id,array，这几个是肯定不是的
      */
@@ -1079,44 +783,26 @@ public class ARSCDecoder {
                 TYPE_SPEC_TYPE = 0x0202, TYPE_LIBRARY = 0x0203;
 
         public final short type;
+        public final int headerSize;
         public final int chunkSize;
+        public final int startPosition;
+        public final int endPosition;
 
-        public Header(short type, int size) {
+        public Header(short type, int headerSize, int chunkSize, int headerStart) {
             this.type = type;
-            this.chunkSize = size;
+            this.headerSize = headerSize;
+            this.chunkSize = chunkSize;
+            this.startPosition = headerStart;
+            this.endPosition = headerStart + chunkSize;
         }
 
-        public static Header read(ExtDataInput in) throws IOException {
-            short type;
-            try {
-                type = in.readShort();
-                short count = in.readShort();
-                int size = in.readInt();
-                return new Header(type, size);
-            } catch (EOFException ex) {
-                return new Header(TYPE_NONE, 0);
+        public static Header read(ByteBufferInput in) throws IOException {
+            //chunk 头的起始位置
+            int start = in.position();
+            if (in.remaining() < 8) {
+                return new Header(TYPE_NONE, 0, 0, start);
             }
-        }
-
-        public static Header readAndWriteHeader(ExtDataInput in, ExtDataOutput out, int diffSize)
-                throws IOException, AndrolibException {
-            short type;
-            int size;
-            try {
-                type = in.readShort();
-                out.writeShort(type);
-                short count = in.readShort();
-                out.writeShort(count);
-                size = in.readInt();
-                size -= diffSize;
-                if (size <= 0) {
-                    throw new AndrolibException(String.format("readAndWriteHeader size < 0: size=%d", size));
-                }
-                out.writeInt(size);
-            } catch (EOFException ex) {
-                return new Header(TYPE_NONE, 0);
-            }
-            return new Header(type, size);
+            return new Header(in.readShort(), in.readUnsignedShort(), in.readInt(), start);
         }
     }
 
@@ -1134,20 +820,17 @@ public class ARSCDecoder {
         private String fileName;
         private String filePath;
         private String originalName;
-        private String md5;
 
-        private MergeDuplicatedResInfo(String fileName, String filePath, String originalName, String md5) {
+        private MergeDuplicatedResInfo(String fileName, String filePath, String originalName) {
             this.fileName = fileName;
             this.filePath = filePath;
             this.originalName = originalName;
-            this.md5 = md5;
         }
 
         static class Builder {
             private String fileName;
             private String filePath;
             private String originalName;
-            private String md5;
 
             Builder setFileName(String fileName) {
                 this.fileName = fileName;
@@ -1159,97 +842,56 @@ public class ARSCDecoder {
                 return this;
             }
 
-            public Builder setMd5(String md5) {
-                this.md5 = md5;
-                return this;
-            }
-
             Builder setOriginalName(String originalName) {
                 this.originalName = originalName;
                 return this;
             }
 
             MergeDuplicatedResInfo create() {
-                return new MergeDuplicatedResInfo(fileName, filePath, originalName, md5);
+                return new MergeDuplicatedResInfo(fileName, filePath, originalName);
             }
         }
     }
 
     /**
      * 混淆名称生成的地方
+     * <p>
+     * 名称都来自共用的 {@link ResguardNameTable}，每个类型只维护自己的游标和需要剔除的名称下标。
+     * 白名单 pattern 对名称的匹配结果按 pattern 集合缓存，相同的白名单配置在不同类型、不同 package 之间复用
      */
-    private class ResguardStringBuilder {
-        private final List<String> mReplaceStringBuffer;
+    static class ResguardStringBuilder {
+        //每组白名单 pattern 对名称的匹配结果，和名称表一样在同一个 jvm 的多次混淆之间共享
+        private static final LruCache<Set<String>, PatternFilter> PATTERN_FILTERS = new LruCache<>(256);
         private final Set<Integer> mIsReplaced;
         private final Set<Integer> mIsWhiteList;
-        private String[] mAToZ = {
-                "a", "b", "c", "d", "e", "f", "g", "h", "i", "j", "k", "l", "m", "n", "o", "p", "q", "r", "s", "t", "u", "v",
-                "w", "x", "y", "z"
-        };
-        private String[] mAToAll = {
-                "0", "1", "2", "3", "4", "5", "6", "7", "8", "9", "_", "a", "b", "c", "d", "e", "f", "g", "h", "i", "j", "k",
-                "l", "m", "n", "o", "p", "q", "r", "s", "t", "u", "v", "w", "x", "y", "z"
-        };
-        /**
-         * 在window上面有些关键字是不能作为文件名的
-         * CON, PRN, AUX, CLOCK$, NUL
-         * COM1, COM2, COM3, COM4, COM5, COM6, COM7, COM8, COM9
-         * LPT1, LPT2, LPT3, LPT4, LPT5, LPT6, LPT7, LPT8, and LPT9.
-         */
-        private HashSet<String> mFileNameBlackList;
+        //已经不能再用的名称的下标
+        private final BitSet mExcluded;
+        private PatternFilter mPatternFilter;
+        private int mCursor;
 
         public ResguardStringBuilder() {
-            mFileNameBlackList = new HashSet<>();
-            mFileNameBlackList.add("con");
-            mFileNameBlackList.add("prn");
-            mFileNameBlackList.add("aux");
-            mFileNameBlackList.add("nul");
-            mReplaceStringBuffer = new ArrayList<>();
             mIsReplaced = new HashSet<>();
             mIsWhiteList = new HashSet<>();
+            mExcluded = new BitSet();
         }
 
-        public void reset(HashSet<Pattern> blacklistPatterns) {
-            mReplaceStringBuffer.clear();
+        public void reset(WhiteListMatcher whiteListMatcher) {
             mIsReplaced.clear();
             mIsWhiteList.clear();
-
-            for (int i = 0; i < mAToZ.length; i++) {
-                String str = mAToZ[i];
-                if (!Utils.match(str, blacklistPatterns)) {
-                    mReplaceStringBuffer.add(str);
-                }
-            }
-
-            for (int i = 0; i < mAToZ.length; i++) {
-                String first = mAToZ[i];
-                for (int j = 0; j < mAToAll.length; j++) {
-                    String str = first + mAToAll[j];
-                    if (!Utils.match(str, blacklistPatterns)) {
-                        mReplaceStringBuffer.add(str);
-                    }
-                }
-            }
-
-            for (int i = 0; i < mAToZ.length; i++) {
-                String first = mAToZ[i];
-                for (int j = 0; j < mAToAll.length; j++) {
-                    String second = mAToAll[j];
-                    for (int k = 0; k < mAToAll.length; k++) {
-                        String third = mAToAll[k];
-                        String str = first + second + third;
-                        if (!mFileNameBlackList.contains(str) && !Utils.match(str, blacklistPatterns)) {
-                            mReplaceStringBuffer.add(str);
-                        }
-                    }
-                }
-            }
+            mExcluded.clear();
+            mPatternFilter = getPatternFilter(whiteListMatcher);
+            mCursor = 0;
         }
 
         // 对于某种类型用过的mapping，全部不能再用了
         public void removeStrings(Collection<String> collection) {
             if (collection == null) return;
-            mReplaceStringBuffer.removeAll(collection);
+            for (String str : collection) {
+                int index = ResguardNameTable.indexOf(str);
+                if (index >= 0) {
+                    mExcluded.set(index);
+                }
+            }
         }
 
         public boolean isReplaced(int id) {
@@ -1269,10 +911,49 @@ public class ARSCDecoder {
         }
 
         public String getReplaceString() throws AndrolibException {
-            if (mReplaceStringBuffer.isEmpty()) {
-                throw new AndrolibException(String.format("now can only proguard less than 35594 in a single type\n"));
+            int size = ResguardNameTable.size();
+            while (mCursor < size) {
+                int index = mCursor++;
+                if (mExcluded.get(index) || ResguardNameTable.isReserved(index)) {
+                    continue;
+                }
+                if (mPatternFilter == null || !mPatternFilter.matches(index)) {
+                    return ResguardNameTable.nameAt(index);
+                }
+            }
+            throw new AndrolibException(String.format("now can only proguard less than %d in a single type\n", size));
+        }
+
+        private PatternFilter getPatternFilter(final WhiteListMatcher matcher) {
+            if (matcher == null || matcher.isEmpty()) {
+                return null;
+            }
+            // 不同配置中同样的白名单是不同的 WhiteListMatcher 对象，用转换后的正则作为 key
+            Set<String> key = new HashSet<>(matcher.getPatterns());
+            return PATTERN_FILTERS.get(key, () -> new PatternFilter(matcher));
+        }
+    }
+
+    /**
+     * 记录名称是否匹配某一组白名单 pattern，每个名称最多只匹配一次，可能同时被多次混淆使用
+     */
+    private static class PatternFilter {
+        private final WhiteListMatcher mMatcher;
+        private final BitSet mChecked = new BitSet();
+        private final BitSet mMatched = new BitSet();
+
+        PatternFilter(WhiteListMatcher matcher) {
+            mMatcher = matcher;
+        }
+
+        synchronized boolean matches(int index) {
+            if (!mChecked.get(index)) {
+                mChecked.set(index);
+                if (mMatcher.matches(ResguardNameTable.nameAt(index))) {
+                    mMatched.set(index);
+                }
             }
-            return mReplaceStringBuffer.remove(0);
+            return mMatched.get(index);
         }
     }
-}
\ No newline at end of file
+}
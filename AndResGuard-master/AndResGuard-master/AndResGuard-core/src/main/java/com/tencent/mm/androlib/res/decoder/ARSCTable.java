@@ -0,0 +1,400 @@
+/**
+ * Copyright 2014 Ryszard Wiśniewski <brut.alll@gmail.com>
+ * Copyright 2016 sim sun <sunsj1231@gmail.com>
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tencent.mm.androlib.res.decoder;
+
+import com.tencent.mm.androlib.AndrolibException;
+import com.tencent.mm.androlib.res.decoder.ARSCDecoder.Header;
+import com.tencent.mm.util.ByteBufferInput;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+
+import org.apache.commons.io.IOUtils;
+
+/**
+ * resources.arsc 的内存模型。
+ * <p>
+ * 整个文件只读取、解析一次，之后收集已有名称、混淆以及回写新的 resources.arsc 都基于这份模型，
+ * 不再需要像以前那样由 RawARSCDecoder 和 ARSCDecoder 分别重复解析三遍。
+ *
+ * @author shwenzhang
+ */
+public class ARSCTable {
+    private final static short ENTRY_FLAG_COMPLEX = 0x0001;
+
+    private static final Logger LOGGER = Logger.getLogger(ARSCTable.class.getName());
+    private static final int KNOWN_CONFIG_BYTES = 64;
+
+    //原始 resources.arsc 的全部内容，回写时未改变的部分直接从这里拷贝
+    private final ByteBufferInput mIn;
+    private final List<PackageChunk> mPackages = new ArrayList<>();
+    // 用于存放 typeID 和 具体内容 的map  例：{1, [abc_fade_in] } , 1=anim
+    private final Map<Integer, Set<String>> mExistTypeNames = new HashMap<>();
+
+    private Header mTableHeader;
+    private StringBlock mTableStrings;
+    private int mTableStringsStart;
+    private int mTableStringsEnd;
+
+    private Header mHeader;
+
+    private ARSCTable(ByteBufferInput in) {
+        mIn = in;
+    }
+
+    public static ARSCTable read(InputStream arscStream) throws AndrolibException {
+        try (InputStream in = arscStream) {
+            return read(ByteBufferInput.wrap(IOUtils.toByteArray(in)));
+        } catch (IOException ex) {
+            throw new AndrolibException("Could not decode arsc file", ex);
+        }
+    }
+
+    /**
+     * 解压出来的 resources.arsc 直接映射到内存读取。
+     * windows 上被映射的文件在 buffer 回收之前删不掉，下次运行清空输出目录会失败，所以 windows 上还是整个读进来
+     */
+    public static ARSCTable read(File arscFile) throws AndrolibException {
+        try {
+            if (File.separator.contains("/")) {
+                return read(ByteBufferInput.map(arscFile));
+            }
+            return read(ByteBufferInput.wrap(Files.readAllBytes(arscFile.toPath())));
+        } catch (IOException ex) {
+            throw new AndrolibException("Could not decode arsc file", ex);
+        }
+    }
+
+    private static ARSCTable read(ByteBufferInput in) throws IOException, AndrolibException {
+        ARSCTable table = new ARSCTable(in);
+        table.readTable();
+        return table;
+    }
+
+    /**
+     * @return 原始 resources.arsc 的只读 buffer，position 为 0
+     */
+    ByteBuffer getData() {
+        return mIn.buffer();
+    }
+
+    /**
+     * @return 原始 resources.arsc 的字节数
+     */
+    public int size() {
+        return mIn.size();
+    }
+
+    public int getPackageCount() {
+        return mPackages.size();
+    }
+
+    /**
+     * @return 原始 resources.arsc 中 [start, end) 这一段
+     */
+    ByteBufferInput getData(int start, int end) {
+        return mIn.slice(start, end);
+    }
+
+    Header getTableHeader() {
+        return mTableHeader;
+    }
+
+    StringBlock getTableStrings() {
+        return mTableStrings;
+    }
+
+    int getTableStringsStart() {
+        return mTableStringsStart;
+    }
+
+    int getTableStringsEnd() {
+        return mTableStringsEnd;
+    }
+
+    List<PackageChunk> getPackages() {
+        return mPackages;
+    }
+
+    /**
+     * 所有 package 中该 type 已经存在的资源名，混淆时需要剔除，避免出现重名
+     */
+    Set<String> getExistTypeSpecNameStrings(int type) {
+        return mExistTypeNames.get(type);
+    }
+
+    private void readTable() throws IOException, AndrolibException {
+        nextChunkCheckType(Header.TYPE_TABLE);
+        mTableHeader = mHeader;
+        int packageCount = mIn.readInt();
+        //解析全局字符串池
+        mTableStringsStart = mIn.position();
+        mTableStrings = StringBlock.read(mIn);
+        mTableStringsEnd = mIn.position();
+        nextChunk();
+        for (int i = 0; i < packageCount; i++) {
+            mPackages.add(readPackage());
+        }
+    }
+
+    private PackageChunk readPackage() throws IOException, AndrolibException {
+        checkChunkType(Header.TYPE_PACKAGE);
+        PackageChunk pkg = new PackageChunk(mHeader);
+        //ARSCDecoder 一直按 byte 截取 package id，这里保持一致
+        pkg.id = (byte) mIn.readInt();
+        pkg.name = mIn.readNullEndedString(128, true);
+
+        /* typeNameStrings */
+        mIn.skipInt();
+        /* typeNameCount */
+        mIn.skipInt();
+        /* specNameStrings */
+        mIn.skipInt();
+        /* specNameCount */
+        mIn.skipInt();
+
+        //TypeIdOffset 只在 split 包中出现，读完才是类型字符串池
+        int splitHeaderSize = (2 + 2 + 4 + 4 + (2 * 128) + (4 * 5));
+        if (mHeader.headerSize == splitHeaderSize) {
+            pkg.typeIdOffset = mIn.readInt();
+        }
+
+        //解析 资源类型字符串池
+        pkg.typeNames = StringBlock.read(mIn);
+        //解析 资源项名称字符串池
+        pkg.specNamesStart = mIn.position();
+        pkg.specNames = StringBlock.read(mIn);
+        pkg.specNamesEnd = mIn.position();
+
+        int curTypeId = -1;
+        nextChunk();
+        while (mHeader.type != Header.TYPE_NONE && mHeader.startPosition < pkg.header.endPosition) {
+            Chunk chunk;
+            if (mHeader.type == Header.TYPE_SPEC_TYPE) {
+                TypeSpecChunk spec = readTableTypeSpec();
+                curTypeId = spec.id;
+                chunk = spec;
+            } else if (mHeader.type == Header.TYPE_TYPE) {
+                chunk = readConfig(pkg, curTypeId);
+            } else {
+                //TYPE_LIBRARY 等其他块儿不会被修改，回写时原样拷贝
+                chunk = new Chunk(mHeader);
+            }
+            pkg.chunks.add(chunk);
+            mIn.position(mHeader.endPosition);
+            nextChunk();
+        }
+        return pkg;
+    }
+
+    private TypeSpecChunk readTableTypeSpec() throws IOException {
+        TypeSpecChunk spec = new TypeSpecChunk(mHeader);
+        spec.id = mIn.readByte();
+        return spec;
+    }
+
+    private TypeChunk readConfig(PackageChunk pkg, int curTypeId) throws IOException, AndrolibException {
+        if (curTypeId == -1) {
+            throw new AndrolibException(String.format("type chunk without type spec in package %s", pkg.name));
+        }
+        TypeChunk type = new TypeChunk(mHeader);
+        /* 跳过 typeId 和保留字段 */
+        mIn.skipInt();
+        int entryCount = mIn.readInt();
+        type.entriesStart = mIn.readInt();
+        //解析config 但是没有用
+        readConfigFlags();
+        //获取 ResTable_entry 偏移数组，它紧跟在 chunk 头后面
+        mIn.position(type.header.startPosition + type.header.headerSize);
+        type.entryOffsets = mIn.readIntArray(entryCount);
+        type.entryPositions = new int[entryCount];
+        type.entryFlags = new short[entryCount];
+        type.entryKeys = new int[entryCount];
+        type.valueTypes = new byte[entryCount];
+        type.valueData = new int[entryCount];
+
+        //按绝对偏移读取每个 entry，不要求 entry 按顺序紧密排列
+        int entriesStart = type.header.startPosition + type.entriesStart;
+        for (int i = 0; i < entryCount; i++) {
+            if (type.entryOffsets[i] != -1) {
+                mIn.position(entriesStart + type.entryOffsets[i]);
+                readEntry(pkg, curTypeId, type, i);
+            }
+        }
+        return type;
+    }
+
+    private void readEntry(PackageChunk pkg, int curTypeId, TypeChunk type, int index)
+            throws IOException, AndrolibException {
+        type.entryPositions[index] = mIn.position();
+        /* size */
+        mIn.skipBytes(2);
+        short flags = mIn.readShort();
+        //specNamesId(资源项目名称index （下标）) 通过这个再加上 资源项目池 就可以拿到对应 文件名如：abc_slide_in_bottom
+        int specNamesId = mIn.readInt();
+        type.entryFlags[index] = flags;
+        type.entryKeys[index] = specNamesId;
+        putTypeSpecNameStrings(curTypeId, pkg.specNames.getString(specNamesId));
+
+        if ((flags & ENTRY_FLAG_COMPLEX) == 0) {
+            readValue(type, index);
+        } else {
+            /* parent */
+            mIn.skipInt();
+            int count = mIn.readInt();
+            for (int i = 0; i < count; i++) {
+                /* name */
+                mIn.skipInt();
+                readValue(type, index);
+            }
+        }
+    }
+
+    /**
+     * complex entry 的 value 不参与混淆，只记录普通 entry 的 value
+     */
+    private void readValue(TypeChunk type, int index) throws IOException {
+        /* size */
+        mIn.skipCheckShort((short) 8);
+        /* zero */
+        mIn.skipCheckByte((byte) 0);
+        byte dataType = mIn.readByte();
+        int data = mIn.readInt();
+        if ((type.entryFlags[index] & ENTRY_FLAG_COMPLEX) == 0) {
+            type.valueTypes[index] = dataType;
+            type.valueData[index] = data;
+        }
+    }
+
+    private void readConfigFlags() throws IOException, AndrolibException {
+        int size = mIn.readInt();
+        if (size < 28) {
+            throw new AndrolibException("Config size < 28");
+        }
+
+        int exceedingSize = size - KNOWN_CONFIG_BYTES;
+        if (exceedingSize > 0) {
+            mIn.skipBytes(KNOWN_CONFIG_BYTES - 4);
+            byte[] buf = new byte[exceedingSize];
+            mIn.readFully(buf);
+            BigInteger exceedingBI = new BigInteger(1, buf);
+
+            if (exceedingBI.equals(BigInteger.ZERO)) {
+                LOGGER.fine(String.format("Config flags size > %d, but exceeding bytes are all zero, so it should be ok.",
+                        KNOWN_CONFIG_BYTES
+                ));
+            } else {
+                LOGGER.warning(String.format("Config flags size > %d. Exceeding bytes: 0x%X.",
+                        KNOWN_CONFIG_BYTES,
+                        exceedingBI
+                ));
+            }
+        } else {
+            mIn.skipBytes(size - 4);
+        }
+    }
+
+    private void putTypeSpecNameStrings(int type, String name) {
+        Set<String> names = mExistTypeNames.get(type);
+        if (names == null) {
+            names = new HashSet<>();
+            mExistTypeNames.put(type, names);
+        }
+        names.add(name);
+    }
+
+    private Header nextChunk() throws IOException {
+        return mHeader = Header.read(mIn);
+    }
+
+    private void checkChunkType(int expectedType) throws AndrolibException {
+        if (mHeader.type != expectedType) {
+            throw new AndrolibException(String.format("Invalid chunk type: expected=0x%08x, got=0x%08x",
+                    expectedType,
+                    mHeader.type
+            ));
+        }
+    }
+
+    private void nextChunkCheckType(int expectedType) throws IOException, AndrolibException {
+        nextChunk();
+        checkChunkType(expectedType);
+    }
+
+    /**
+     * package 下的一个子块儿，回写时整块拷贝，TYPE_TYPE 还要再修改 entry 的 specNamesId
+     */
+    static class Chunk {
+        final Header header;
+
+        Chunk(Header header) {
+            this.header = header;
+        }
+    }
+
+    static class PackageChunk extends Chunk {
+        final List<Chunk> chunks = new ArrayList<>();
+        int id;
+        String name;
+        int typeIdOffset;
+        StringBlock typeNames;
+        StringBlock specNames;
+        int specNamesStart;
+        int specNamesEnd;
+
+        PackageChunk(Header header) {
+            super(header);
+        }
+    }
+
+    static class TypeSpecChunk extends Chunk {
+        byte id;
+
+        TypeSpecChunk(Header header) {
+            super(header);
+        }
+    }
+
+    /**
+     * TYPE_TYPE 块儿，按 entry 下标记录每个 entry 的位置、名称 index 以及普通 entry 的 value
+     */
+    static class TypeChunk extends Chunk {
+        int entriesStart;
+        int[] entryOffsets;
+        int[] entryPositions;
+        short[] entryFlags;
+        int[] entryKeys;
+        byte[] valueTypes;
+        int[] valueData;
+
+        TypeChunk(Header header) {
+            super(header);
+        }
+    }
+}
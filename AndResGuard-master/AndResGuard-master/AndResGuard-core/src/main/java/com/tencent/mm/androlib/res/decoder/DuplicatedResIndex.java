@@ -0,0 +1,147 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tencent.mm.androlib.res.decoder;
+
+import com.tencent.mm.androlib.ApkDecoder;
+import com.tencent.mm.util.Md5Util;
+import com.tencent.mm.util.PhaseMetrics;
+import com.tencent.mm.util.Utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * 合并重复资源用的内容索引，每个文件最多只读一遍。
+ * <p>
+ * 先按文件大小和 apk 中记录的 crc32 分组，这两个值从 zip 的 central directory 就能拿到，不需要读文件；
+ * 只有大小和 crc32 都相同的文件才会再并行地算一次 md5 来确认内容一致
+ */
+class DuplicatedResIndex {
+    //读取失败的文件记为空字符串
+    private static final String UNREADABLE = "";
+
+    private final ApkDecoder mApkDecoder;
+    private final Map<String, String> mContentKeys;
+
+    private DuplicatedResIndex(ApkDecoder decoder, Map<String, String> contentKeys) {
+        mApkDecoder = decoder;
+        mContentKeys = contentKeys;
+    }
+
+    static DuplicatedResIndex build(ApkDecoder decoder, PhaseMetrics.Phase phase) throws IOException {
+        Map<String, Long> crcs = readCrcs(decoder);
+
+        //先按大小分组
+        Map<Long, List<String>> sizeGroups = new HashMap<>();
+        for (String raw : decoder.getRawResourceFiles()) {
+            long length = decoder.getRawResFileLength(raw);
+            List<String> group = sizeGroups.get(length);
+            if (group == null) {
+                group = new ArrayList<>();
+                sizeGroups.put(length, group);
+            }
+            group.add(raw);
+        }
+
+        Map<String, String> contentKeys = new ConcurrentHashMap<>();
+        List<String> toHash = new ArrayList<>();
+        for (Map.Entry<Long, List<String>> sizeGroup : sizeGroups.entrySet()) {
+            long length = sizeGroup.getKey();
+            List<String> group = sizeGroup.getValue();
+            if (group.size() == 1) {
+                contentKeys.put(group.get(0), String.valueOf(length));
+                continue;
+            }
+            //再按 crc32 分组，拿不到 crc32 的话这个大小的文件全部都要算 md5
+            Map<Long, List<String>> crcGroups = new HashMap<>();
+            boolean unknownCrc = false;
+            for (String raw : group) {
+                Long crc = crcs.get(raw);
+                if (crc == null) {
+                    unknownCrc = true;
+                    break;
+                }
+                List<String> crcGroup = crcGroups.get(crc);
+                if (crcGroup == null) {
+                    crcGroup = new ArrayList<>();
+                    crcGroups.put(crc, crcGroup);
+                }
+                crcGroup.add(raw);
+            }
+            if (unknownCrc) {
+                toHash.addAll(group);
+                continue;
+            }
+            for (Map.Entry<Long, List<String>> crcGroup : crcGroups.entrySet()) {
+                if (crcGroup.getValue().size() == 1) {
+                    contentKeys.put(crcGroup.getValue().get(0), length + "/" + Long.toHexString(crcGroup.getKey()));
+                } else {
+                    toHash.addAll(crcGroup.getValue());
+                }
+            }
+        }
+
+        toHash.parallelStream().forEach(raw -> {
+            contentKeys.put(raw, hashContentKey(decoder, raw));
+            phase.addBytesRead(decoder.getRawResFileLength(raw));
+        });
+        phase.addEntries(decoder.getRawResourceFiles().size());
+        Utils.logARSC("merge duplicated res index: %d files, %d hashed", decoder.getRawResourceFiles().size(), toHash.size());
+        return new DuplicatedResIndex(decoder, contentKeys);
+    }
+
+    /**
+     * @param raw 原资源路径，如 res/anim/a.xml
+     * @return 内容相同的文件返回相同的 key，读取失败返回 null
+     */
+    String getContentKey(String raw) {
+        String key = mContentKeys.get(raw);
+        if (key == null) {
+            //不在预先扫描的列表里，只能现算
+            key = hashContentKey(mApkDecoder, raw);
+            mContentKeys.put(raw, key);
+        }
+        return key.equals(UNREADABLE) ? null : key;
+    }
+
+    private static Map<String, Long> readCrcs(ApkDecoder decoder) throws IOException {
+        Map<String, Long> crcs = new HashMap<>();
+        try (ZipFile zipFile = new ZipFile(decoder.getApkFile())) {
+            for (String raw : decoder.getRawResourceFiles()) {
+                ZipEntry entry = zipFile.getEntry(raw);
+                if (entry != null && entry.getCrc() != -1) {
+                    crcs.put(raw, entry.getCrc());
+                }
+            }
+        }
+        return crcs;
+    }
+
+    private static String hashContentKey(ApkDecoder decoder, String raw) {
+        try (InputStream in = decoder.openRawResFile(raw)) {
+            String md5 = Md5Util.getMD5Str(in);
+            return md5.isEmpty() ? UNREADABLE : decoder.getRawResFileLength(raw) + "/" + md5;
+        } catch (IOException e) {
+            return UNREADABLE;
+        }
+    }
+}
@@ -0,0 +1,135 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tencent.mm.androlib.res.decoder;
+
+import java.util.BitSet;
+
+/**
+ * 所有类型、所有 package 共用的混淆名称序列：先是 a-z，之后首字母 a-z，其余每一位 0-9、_、a-z。
+ * <p>
+ * 最常用的 3 位以内的名称只生成一次并一直复用，更长的名称按下标直接算出来。
+ * 这张表是不可变的，每个类型只需要自己维护一个游标和需要剔除的下标
+ */
+final class ResguardNameTable {
+    private static final String FIRST_CHARS = "abcdefghijklmnopqrstuvwxyz";
+    private static final String OTHER_CHARS = "0123456789_abcdefghijklmnopqrstuvwxyz";
+    // 6 位以内一共约 18.5 亿个名称，下标还在 int 范围内
+    private static final int MAX_LENGTH = 6;
+    private static final int CACHED_LENGTH = 3;
+
+    //每种长度的名称在序列中的起始下标
+    private static final int[] LENGTH_START = new int[MAX_LENGTH + 2];
+
+    /**
+     * 在window上面有些关键字是不能作为文件名的
+     * CON, PRN, AUX, CLOCK$, NUL
+     * COM1, COM2, COM3, COM4, COM5, COM6, COM7, COM8, COM9
+     * LPT1, LPT2, LPT3, LPT4, LPT5, LPT6, LPT7, LPT8, and LPT9.
+     */
+    private static final BitSet FILE_NAME_BLACK_LIST = new BitSet();
+
+    static {
+        long count = FIRST_CHARS.length();
+        for (int length = 2; length <= MAX_LENGTH + 1; length++) {
+            LENGTH_START[length] = (int) Math.min(Integer.MAX_VALUE, LENGTH_START[length - 1] + count);
+            count *= OTHER_CHARS.length();
+        }
+        FILE_NAME_BLACK_LIST.set(indexOf("con"));
+        FILE_NAME_BLACK_LIST.set(indexOf("prn"));
+        FILE_NAME_BLACK_LIST.set(indexOf("aux"));
+        FILE_NAME_BLACK_LIST.set(indexOf("nul"));
+        for (int i = 1; i <= 9; i++) {
+            FILE_NAME_BLACK_LIST.set(indexOf("com" + i));
+            FILE_NAME_BLACK_LIST.set(indexOf("lpt" + i));
+        }
+    }
+
+    private ResguardNameTable() {
+    }
+
+    /**
+     * @return 序列中名称的总数
+     */
+    static int size() {
+        return LENGTH_START[MAX_LENGTH + 1];
+    }
+
+    /**
+     * 是否是 windows 上不能作为文件名的名称
+     */
+    static boolean isReserved(int index) {
+        return FILE_NAME_BLACK_LIST.get(index);
+    }
+
+    /**
+     * 序列中第 index 个名称
+     */
+    static String nameAt(int index) {
+        if (index < LENGTH_START[CACHED_LENGTH + 1]) {
+            return CachedNames.NAMES[index];
+        }
+        return computeName(index);
+    }
+
+    /**
+     * 名称在序列中的下标，不是这个序列能生成的名称返回 -1
+     */
+    static int indexOf(String str) {
+        int length = str.length();
+        if (length == 0 || length > MAX_LENGTH) {
+            return -1;
+        }
+        int value = FIRST_CHARS.indexOf(str.charAt(0));
+        if (value < 0) {
+            return -1;
+        }
+        for (int i = 1; i < length; i++) {
+            int digit = OTHER_CHARS.indexOf(str.charAt(i));
+            if (digit < 0) {
+                return -1;
+            }
+            value = value * OTHER_CHARS.length() + digit;
+        }
+        return LENGTH_START[length] + value;
+    }
+
+    private static String computeName(int index) {
+        int length = 1;
+        while (index >= LENGTH_START[length + 1]) {
+            length++;
+        }
+        int value = index - LENGTH_START[length];
+        char[] chars = new char[length];
+        for (int i = length - 1; i > 0; i--) {
+            chars[i] = OTHER_CHARS.charAt(value % OTHER_CHARS.length());
+            value /= OTHER_CHARS.length();
+        }
+        chars[0] = FIRST_CHARS.charAt(value);
+        return new String(chars);
+    }
+
+    /**
+     * 第一次用到的时候才生成
+     */
+    private static final class CachedNames {
+        static final String[] NAMES = new String[LENGTH_START[CACHED_LENGTH + 1]];
+
+        static {
+            for (int i = 0; i < NAMES.length; i++) {
+                NAMES[i] = computeName(i);
+            }
+        }
+    }
+}
@@ -18,8 +18,10 @@
 package com.tencent.mm.androlib.res.decoder;
 
 import com.tencent.mm.androlib.AndrolibException;
+import com.tencent.mm.util.ByteBufferInput;
 import com.tencent.mm.util.ExtDataInput;
 import com.tencent.mm.util.ExtDataOutput;
+import com.tencent.mm.util.Log;
 import com.tencent.mm.util.Utils;
 
 import java.io.IOException;
@@ -39,8 +41,8 @@ import java.util.logging.Logger;
  */
 public class StringBlock {
 
-    private static final CharsetDecoder UTF16LE_DECODER = Charset.forName("UTF-16LE").newDecoder();
-    private static final CharsetDecoder UTF8_DECODER = Charset.forName("UTF-8").newDecoder();
+    private static final Charset UTF16LE = Charset.forName("UTF-16LE");
+    private static final Charset UTF8 = Charset.forName("UTF-8");
     private static final Logger LOGGER = Logger.getLogger(StringBlock.class.getName());
 
     // ResChunk_header = header.type (0x0001) + header.headerSize (0x001C)
@@ -55,6 +57,8 @@ public class StringBlock {
     private int[] m_styles;
     private boolean m_isUTF8;
     private int[] m_stringOwns;
+    //CharsetDecoder 不是线程安全的，每个字符串池用自己的，同时混淆多个 apk 时不会互相影响
+    private CharsetDecoder m_decoder;
 
     private StringBlock() {
     }
@@ -67,7 +71,7 @@ public class StringBlock {
      * @return stringblock
      * @throws IOException ioexcetpion
      */
-    public static StringBlock read(ExtDataInput reader) throws IOException {
+    public static StringBlock read(ByteBufferInput reader) throws IOException {
         //跳过RES_STRING_POOL_TYPE 和 头大小 这俩加起来就是 CHUNK_STRINGPOOL_TYPE 的值
         reader.skipCheckChunkTypeInt(CHUNK_STRINGPOOL_TYPE, CHUNK_NULL_TYPE);
         //块大小
@@ -146,7 +150,7 @@ public class StringBlock {
      * @throws AndrolibException
      */
     public static int writeSpecNameStringBlock(
-            ExtDataInput reader, ExtDataOutput out, Map<String, Set<String>> specNames, Map<String, Integer> curSpecNameToPos)
+            ByteBufferInput reader, ExtDataOutput out, Map<String, Set<String>> specNames, Map<String, Integer> curSpecNameToPos)
             throws IOException, AndrolibException {
         //读 type+头大小
         int type = reader.readInt();
@@ -212,7 +216,9 @@ public class StringBlock {
                 // N res entry item point to one string constant
                 // 记录 specName 和 i的关系
                 curSpecNameToPos.put(specName, i);
-                Utils.logStringBlock("curSpecNameToPos put name= %s key= %s,value= %s",name,specName,i);
+                if (Log.isVerbose()) {
+                    Log.v("StringBlock", "curSpecNameToPos put name= %s key= %s,value= %s", name, specName, i);
+                }
             }
 
             //写入 混淆过的 资源项名称字符串池 信息
@@ -276,7 +282,7 @@ public class StringBlock {
     }
 
     public static int writeTableNameStringBlock(
-            ExtDataInput reader, ExtDataOutput out, Map<Integer, String> tableProguardMap)
+            ByteBufferInput reader, ExtDataOutput out, Map<Integer, String> tableProguardMap)
             throws IOException, AndrolibException {
         int type = reader.readInt();
         int chunkSize = reader.readInt();
@@ -570,7 +576,10 @@ public class StringBlock {
 
     private String decodeString(int offset, int length) {
         try {
-            return (m_isUTF8 ? UTF8_DECODER : UTF16LE_DECODER).decode(ByteBuffer.wrap(m_strings, offset, length)).toString();
+            if (m_decoder == null) {
+                m_decoder = (m_isUTF8 ? UTF8 : UTF16LE).newDecoder();
+            }
+            return m_decoder.decode(ByteBuffer.wrap(m_strings, offset, length)).toString();
         } catch (CharacterCodingException ex) {
             LOGGER.log(Level.WARNING, null, ex);
             return null;
@@ -1,17 +1,19 @@
 package com.tencent.mm.resourceproguard;
 
+import com.tencent.mm.util.FileCopyStrategy;
+import com.tencent.mm.util.Log;
+import com.tencent.mm.util.LruCache;
+import com.tencent.mm.util.MappingFile;
+import com.tencent.mm.util.Md5Util;
 import com.tencent.mm.util.Utils;
+import com.tencent.mm.util.WhiteListMatcher;
 
 import java.io.BufferedInputStream;
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.IOException;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import javax.xml.parsers.DocumentBuilder;
@@ -31,6 +33,7 @@ import org.xml.sax.SAXException;
 public class Configuration {
 
     public static final String DEFAULT_DIGEST_ALG = "SHA1";
+    public static final int DEFAULT_COMPRESS_EFFORT = 15;
     public static final String ASRC_FILE = "resource.asrc";
     private static final String TAG_ISSUE = "issue";
     private static final String ATTR_VALUE = "value";
@@ -45,19 +48,38 @@ public class Configuration {
     private static final String ATTR_KEEPROOT = "keeproot";
     private static final String ATTR_SIGNFILE = "metaname";
     private static final String MERGE_DUPLICATED_RES = "mergeDuplicatedRes";
+    private static final String ATTR_STREAM_ZIP = "streamZip";
+    private static final String ATTR_COPY_MODE = "copyMode";
+    private static final String ATTR_INCREMENTAL = "incremental";
+    private static final String ATTR_REPORT_METRICS = "reportMetrics";
+    private static final String ATTR_LOG_LEVEL = "logLevel";
+    private static final String ATTR_COMPRESS_EFFORT = "compressEffort";
     private static final String ATTR_SIGNFILE_PATH = "path";
     private static final String ATTR_SIGNFILE_KEYPASS = "keypass";
     private static final String ATTR_SIGNFILE_STOREPASS = "storepass";
     private static final String ATTR_SIGNFILE_ALIAS = "alias";
-    public final HashMap<String, HashMap<String, HashSet<Pattern>>> mWhiteList;
+    //同一个 jvm 中多次混淆时复用编译好的白名单、压缩规则和解析好的旧 mapping（key 是文件内容的 md5）
+    private static final LruCache<String, Pattern> PATTERN_CACHE = new LruCache<>(4096);
+    private static final LruCache<String, OldMapping> OLD_MAPPING_CACHE = new LruCache<>(8);
+    public final HashMap<String, HashMap<String, WhiteListMatcher>> mWhiteList;
     public final HashMap<String, HashMap<String, HashMap<String, String>>> mOldResMapping;
     public final HashMap<String, String> mOldFileMapping;
     public final HashSet<Pattern> mCompressPatterns;
     public final String digestAlg;
-    private final Pattern MAP_PATTERN = Pattern.compile("\\s+(.*)->(.*)");
     public boolean mUse7zip = true;
+    //use7zip时进程内高压缩率deflate的迭代次数，0表示还是使用外部的7z
+    public int mCompressEffort = DEFAULT_COMPRESS_EFFORT;
     public boolean mKeepRoot = false;
     public boolean mMergeDuplicatedRes = false;
+    public boolean mStreamZip = false;
+    //非 streamZip 模式下资源文件输出到 r/ 的方式
+    public FileCopyStrategy mCopyMode = FileCopyStrategy.TRANSFER;
+    //资源没有变化时复用上一次输出的 resources.arsc、r 目录和 mapping
+    public boolean mIncremental = false;
+    //是否输出每个阶段耗时的 json 报告
+    public boolean mReportMetrics = false;
+    //低于这个级别的日志不输出，verbose 会打印每一条资源
+    public Log.Level mLogLevel = Log.Level.INFO;
     public String mMetaName = "META-INF";
     public String mFixedResName = null;
     public boolean mUseSignAPK = false;
@@ -137,8 +159,18 @@ public class Configuration {
             addWhiteList(item);
         }
         mUse7zip = param.use7zip;
+        mCompressEffort = param.compressEffort;
         mKeepRoot = param.keepRoot;
         mMergeDuplicatedRes = param.mergeDuplicatedRes;
+        mStreamZip = param.streamZip;
+        if (param.copyMode != null) {
+            mCopyMode = FileCopyStrategy.fromName(param.copyMode);
+        }
+        mIncremental = param.incremental;
+        mReportMetrics = param.reportMetrics;
+        if (param.logLevel != null) {
+            mLogLevel = parseLogLevel(param.logLevel);
+        }
         mMetaName = param.metaName;
         mFixedResName = param.fixedResName;
         for (String item : param.compressFilePattern) {
@@ -281,25 +313,23 @@ public class Configuration {
         int nextDot = item.indexOf(".", packagePos + 3);
         String typeName = item.substring(packagePos + 3, nextDot);//获取type mipmiap or string or..
         String name = item.substring(nextDot + 1);//获取文件名字
-        HashMap<String, HashSet<Pattern>> typeMap;
+        HashMap<String, WhiteListMatcher> typeMap;
 
-        if (mWhiteList.containsKey(packageName)) {//将不同的type装入不同的map<String, HashSet<Pattern>>中
+        if (mWhiteList.containsKey(packageName)) {//将不同的type装入不同的map<String, WhiteListMatcher>中
             typeMap = mWhiteList.get(packageName);
         } else {
             typeMap = new HashMap<>();
         }
 
-        HashSet<Pattern> patterns;
+        WhiteListMatcher matcher;
         if (typeMap.containsKey(typeName)) {
-            patterns = typeMap.get(typeName);
+            matcher = typeMap.get(typeName);
         } else {
-            patterns = new HashSet<>();
+            matcher = new WhiteListMatcher();
         }
 
-        name = Utils.convertToPatternString(name);
-        Pattern pattern = Pattern.compile(name);
-        patterns.add(pattern);
-        typeMap.put(typeName, patterns);
+        name = matcher.add(name);
+        typeMap.put(typeName, matcher);
         System.out.println(String.format("convertToPatternString typeName %s format %s", typeName, name));
         mWhiteList.put(packageName, typeMap);
     }
@@ -372,10 +402,14 @@ public class Configuration {
             throw new IOException(String.format("Invalid config file: Missing required attribute %s\n", ATTR_VALUE));
         }
         value = Utils.convertToPatternString(value);
-        Pattern pattern = Pattern.compile(value);
+        Pattern pattern = compilePattern(value);
         mCompressPatterns.add(pattern);
     }
 
+    private static Pattern compilePattern(final String regex) {
+        return PATTERN_CACHE.get(regex, () -> Pattern.compile(regex));
+    }
+
     private void loadMappingFilesFromXml(Node node) throws IOException {
         if (mOldMappingFile != null) {
             System.err.println("Mapping file already load from command line, ignore this config");
@@ -422,6 +456,37 @@ public class Configuration {
                             mMergeDuplicatedRes = vaule.equals("true");
                             System.out.println("mMergeDuplicatedRes " + mMergeDuplicatedRes);
                             break;
+                        case ATTR_STREAM_ZIP:
+                            mStreamZip = vaule.equals("true");
+                            System.out.println("mStreamZip " + mStreamZip);
+                            break;
+                        case ATTR_COPY_MODE:
+                            mCopyMode = FileCopyStrategy.fromName(vaule);
+                            System.out.println("mCopyMode " + mCopyMode.getName());
+                            break;
+                        case ATTR_INCREMENTAL:
+                            mIncremental = vaule.equals("true");
+                            System.out.println("mIncremental " + mIncremental);
+                            break;
+                        case ATTR_LOG_LEVEL:
+                            mLogLevel = parseLogLevel(vaule);
+                            System.out.println("mLogLevel " + mLogLevel);
+                            break;
+                        case ATTR_REPORT_METRICS:
+                            mReportMetrics = vaule.equals("true");
+                            System.out.println("mReportMetrics " + mReportMetrics);
+                            break;
+                        case ATTR_COMPRESS_EFFORT:
+                            try {
+                                mCompressEffort = Integer.parseInt(vaule.trim());
+                            } catch (NumberFormatException e) {
+                                throw new IOException(String.format("Invalid config file: %s must be an integer, value=%s\n",
+                                        ATTR_COMPRESS_EFFORT,
+                                        vaule
+                                ));
+                            }
+                            System.out.println("mCompressEffort " + mCompressEffort);
+                            break;
                         case ATTR_SIGNFILE:
                             mMetaName = vaule.trim();
                             break;
@@ -434,6 +499,14 @@ public class Configuration {
         }
     }
 
+    private static Log.Level parseLogLevel(String value) throws IOException {
+        try {
+            return Log.Level.fromName(value);
+        } catch (IllegalArgumentException e) {
+            throw new IOException(String.format("Invalid config file: %s\n", e.getMessage()));
+        }
+    }
+
     private void readOldMapping(String filePath) throws IOException {
         mOldMappingFile = new File(filePath);
         if (!mOldMappingFile.exists()) {
@@ -451,78 +524,51 @@ public class Configuration {
         mOldResMapping.clear();
         mOldFileMapping.clear();
 
-        FileReader fr;
-        try {
-            fr = new FileReader(mOldMappingFile);
-        } catch (FileNotFoundException ex) {
-            throw new IOException(String.format("Could not find old mapping file %s", mOldMappingFile.getAbsolutePath()));
-        }
-        BufferedReader br = new BufferedReader(fr);
-        try {
-            String line = br.readLine();
-
-            while (line != null) {
-                if (line.length() > 0) {
-                    Matcher mat = MAP_PATTERN.matcher(line);
-
-                    if (mat.find()) {
-                        String nameAfter = mat.group(2);
-                        String nameBefore = mat.group(1);
-                        nameAfter = nameAfter.trim();
-                        nameBefore = nameBefore.trim();
-
-                        //如果有这个的话，那就是mOldFileMapping
-                        if (line.contains("/")) {
-                            mOldFileMapping.put(nameBefore, nameAfter);
-                        } else {
-                            //这里是resid的mapping
-                            int packagePos = nameBefore.indexOf(".R.");
-                            if (packagePos == -1) {
-                                throw new IOException(String.format("the old mapping file packagename is malformed, "
-                                                + "it should be like com.tencent.mm.R.attr.test, yours %s\n",
-                                        nameBefore
-                                ));
-                            }
-                            String packageName = nameBefore.substring(0, packagePos);
-                            int nextDot = nameBefore.indexOf(".", packagePos + 3);
-                            String typeName = nameBefore.substring(packagePos + 3, nextDot);
-
-                            String beforename = nameBefore.substring(nextDot + 1);
-                            String aftername = nameAfter.substring(nameAfter.indexOf(".", packagePos + 3) + 1);
-
-                            HashMap<String, HashMap<String, String>> typeMap;
-
-                            if (mOldResMapping.containsKey(packageName)) {
-                                typeMap = mOldResMapping.get(packageName);
-                            } else {
-                                typeMap = new HashMap<>();
-                            }
+        final File mappingFile = mOldMappingFile;
+        String md5 = Md5Util.getMD5Str(mappingFile);
+        OldMapping mapping = md5.isEmpty()
+                ? parseOldMappingFile(mappingFile)
+                : OLD_MAPPING_CACHE.get(md5, () -> parseOldMappingFile(mappingFile));
+        //缓存中的 map 只读，可以在多次混淆之间共享
+        mOldResMapping.putAll(mapping.mResMapping);
+        mOldFileMapping.putAll(mapping.mFileMapping);
+    }
 
-                            HashMap<String, String> namesMap;
-                            if (typeMap.containsKey(typeName)) {
-                                namesMap = typeMap.get(typeName);
-                            } else {
-                                namesMap = new HashMap<>();
-                            }
-                            namesMap.put(beforename, aftername);
+    /**
+     * 文本格式和二进制格式的 mapping 都可以，二进制格式不需要逐行匹配和截取字符串
+     */
+    private static OldMapping parseOldMappingFile(File mappingFile) throws IOException {
+        final OldMapping mapping = new OldMapping();
+        MappingFile.read(mappingFile, new MappingFile.Visitor() {
+            @Override
+            public void visitFile(String raw, String result) {
+                mapping.mFileMapping.put(raw, result);
+            }
 
-                            typeMap.put(typeName, namesMap);
-                            mOldResMapping.put(packageName, typeMap);
-                        }
-                    }
+            @Override
+            public void visitRes(String packageName, String typeName, String name, String replace) {
+                HashMap<String, HashMap<String, String>> typeMap = mapping.mResMapping.get(packageName);
+                if (typeMap == null) {
+                    typeMap = new HashMap<>();
+                    mapping.mResMapping.put(packageName, typeMap);
                 }
-                line = br.readLine();
-            }
-        } catch (IOException ex) {
-            throw new RuntimeException("Error while mapping file");
-        } finally {
-            try {
-                br.close();
-                fr.close();
-            } catch (IOException e) {
-                e.printStackTrace();
+                HashMap<String, String> namesMap = typeMap.get(typeName);
+                if (namesMap == null) {
+                    namesMap = new HashMap<>();
+                    typeMap.put(typeName, namesMap);
+                }
+                namesMap.put(name, replace);
             }
-        }
+        });
+        return mapping;
+    }
+
+    /**
+     * 解析好的旧 mapping 文件
+     */
+    private static final class OldMapping {
+        final HashMap<String, HashMap<String, HashMap<String, String>>> mResMapping = new HashMap<>();
+        final HashMap<String, String> mFileMapping = new HashMap<>();
     }
 }
 
@@ -2,13 +2,24 @@ package com.tencent.mm.resourceproguard;
 
 import com.tencent.mm.androlib.res.util.StringUtil;
 import java.io.File;
+import java.io.Serializable;
 import java.util.ArrayList;
 
-public class InputParam {
+/**
+ * 需要 Serializable，gradle 插件会把它作为参数交给 worker（可能在另外的进程中）执行
+ */
+public class InputParam implements Serializable {
+  private static final long serialVersionUID = 1L;
+
   public final File mappingFile;
   public final boolean use7zip;
   public final boolean keepRoot;
   public final boolean mergeDuplicatedRes;
+  public final boolean streamZip;
+  public final String copyMode;
+  public final boolean incremental;
+  public final boolean reportMetrics;
+  public final String logLevel;
   public final boolean useSign;
   public final String metaName;
   public final String fixedResName;
@@ -22,6 +33,7 @@ public class InputParam {
   public final String storepass;
   public final String zipAlignPath;
   public final String sevenZipPath;
+  public final int compressEffort;
   public final SignatureType signatureType;
   public final String finalApkBackupPath;
   public final String digestAlg;
@@ -33,6 +45,11 @@ public class InputParam {
       boolean useSign,
       boolean keepRoot,
       boolean mergeDuplicatedRes,
+      boolean streamZip,
+      String copyMode,
+      boolean incremental,
+      boolean reportMetrics,
+      String logLevel,
       ArrayList<String> whiteList,
       ArrayList<String> compressFilePattern,
       String apkPath,
@@ -45,6 +62,7 @@ public class InputParam {
       String fixedResName,
       String zipAlignPath,
       String sevenZipPath,
+      int compressEffort,
       SignatureType signatureType,
       String finalApkBackupPath,
       String digestAlg,
@@ -55,6 +73,11 @@ public class InputParam {
     this.useSign = useSign;
     this.keepRoot = keepRoot;
     this.mergeDuplicatedRes = mergeDuplicatedRes;
+    this.streamZip = streamZip;
+    this.copyMode = copyMode;
+    this.incremental = incremental;
+    this.reportMetrics = reportMetrics;
+    this.logLevel = logLevel;
     this.whiteList = whiteList;
     this.compressFilePattern = compressFilePattern;
     this.apkPath = apkPath;
@@ -67,6 +90,7 @@ public class InputParam {
     this.fixedResName = fixedResName;
     this.zipAlignPath = zipAlignPath;
     this.sevenZipPath = sevenZipPath;
+    this.compressEffort = compressEffort;
     this.signatureType = signatureType;
     this.finalApkBackupPath = finalApkBackupPath;
     this.digestAlg = digestAlg;
@@ -83,6 +107,11 @@ public class InputParam {
     private boolean useSign;
     private boolean keepRoot;
     private boolean mergeDuplicatedRes;
+    private boolean streamZip;
+    private String copyMode;
+    private boolean incremental;
+    private boolean reportMetrics;
+    private String logLevel;
     private ArrayList<String> whiteList;
     private ArrayList<String> compressFilePattern;
     private String apkPath;
@@ -95,6 +124,7 @@ public class InputParam {
     private String fixedResName;
     private String zipAlignPath;
     private String sevenZipPath;
+    private int compressEffort;
     private SignatureType signatureType;
     private String finalApkBackupPath;
     private String digestAlg;
@@ -103,6 +133,7 @@ public class InputParam {
     public Builder() {
       use7zip = false;
       keepRoot = false;
+      compressEffort = Configuration.DEFAULT_COMPRESS_EFFORT;
       signatureType = SignatureType.SchemaV1;
     }
 
@@ -131,6 +162,31 @@ public class InputParam {
       return this;
     }
 
+    public Builder setStreamZip(boolean streamZip) {
+      this.streamZip = streamZip;
+      return this;
+    }
+
+    public Builder setCopyMode(String copyMode) {
+      this.copyMode = copyMode;
+      return this;
+    }
+
+    public Builder setIncremental(boolean incremental) {
+      this.incremental = incremental;
+      return this;
+    }
+
+    public Builder setReportMetrics(boolean reportMetrics) {
+      this.reportMetrics = reportMetrics;
+      return this;
+    }
+
+    public Builder setLogLevel(String logLevel) {
+      this.logLevel = logLevel;
+      return this;
+    }
+
     public Builder setWhiteList(ArrayList<String> whiteList) {
       this.whiteList = whiteList;
       return this;
@@ -194,6 +250,11 @@ public class InputParam {
       return this;
     }
 
+    public Builder setCompressEffort(int compressEffort) {
+      this.compressEffort = compressEffort;
+      return this;
+    }
+
     public Builder setSignatureType(SignatureType signatureType) {
       this.signatureType = signatureType;
       return this;
@@ -225,6 +286,11 @@ public class InputParam {
           useSign,
           keepRoot,
           mergeDuplicatedRes,
+          streamZip,
+          copyMode,
+          incremental,
+          reportMetrics,
+          logLevel,
           whiteList,
           compressFilePattern,
           apkPath,
@@ -237,6 +303,7 @@ public class InputParam {
           fixedResName,
           zipAlignPath,
           sevenZipPath,
+          compressEffort,
           signatureType,
           finalApkBackupPath,
           digestAlg,
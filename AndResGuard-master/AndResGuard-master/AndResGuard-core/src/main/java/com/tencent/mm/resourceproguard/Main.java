@@ -3,10 +3,12 @@ package com.tencent.mm.resourceproguard;
 import com.tencent.mm.androlib.AndrolibException;
 import com.tencent.mm.androlib.ApkDecoder;
 import com.tencent.mm.androlib.ResourceApkBuilder;
-import com.tencent.mm.androlib.res.decoder.ARSCDecoder;
 import com.tencent.mm.androlib.res.util.StringUtil;
 import com.tencent.mm.directory.DirectoryException;
 import com.tencent.mm.util.FileOperation;
+import com.tencent.mm.util.Log;
+import com.tencent.mm.util.PhaseMetrics;
+import com.tencent.mm.util.TypedValue;
 import java.io.File;
 import java.io.IOException;
 
@@ -18,9 +20,7 @@ public class Main {
 
   public static final int ERRNO_ERRORS = 1;
   public static final int ERRNO_USAGE = 2;
-  protected static long mRawApkSize;
   protected static String mRunningLocation;
-  protected static long mBeginTime;
 
   /**
    * 是否通过命令行方式设置
@@ -33,49 +33,55 @@ public class Main {
 
   protected Configuration config;
   protected File mOutDir;
+  //这次混淆的状态和每个阶段的耗时，每次混淆重新创建，不再有静态变量，同一个 jvm 里可以同时混淆多个 apk
+  protected ResguardContext mContext;
 
-  public static void gradleRun(InputParam inputParam) {
+  /**
+   * @return 这次混淆每个阶段的耗时和计数
+   */
+  public static PhaseMetrics gradleRun(InputParam inputParam) {
     Main m = new Main();
     m.run(inputParam);
+    return m.getMetrics();
+  }
+
+  public PhaseMetrics getMetrics() {
+    return mContext == null ? null : mContext.getMetrics();
   }
 
   private void run(InputParam inputParam) {
-    synchronized (Main.class) {
     //将gradle中的设置加载到配置中
-      loadConfigFromGradle(inputParam);
-      System.out.println("将gradle中的配置加载到Configuration中");
-
-      this.mFinalApkBackPath = inputParam.finalApkBackupPath;
-      Thread currentThread = Thread.currentThread();
-      System.out.printf(
-          "\n-->AndResGuard starting! Current thread# id: %d, name: %s\n",
-          currentThread.getId(),
-          currentThread.getName()
-      );
-
-      //创建最终生成的apk文件
-      File finalApkFile = StringUtil.isPresent(inputParam.finalApkBackupPath) ?
-          new File(inputParam.finalApkBackupPath)
-          : null;
-      //资源混淆
-      resourceProguard(
-          new File(inputParam.outFolder),
-          finalApkFile,
-          inputParam.apkPath,
-          inputParam.signatureType,
-          inputParam.minSDKVersion
-      );
-      System.out.printf("<--AndResGuard Done! You can find the output in %s\n", mOutDir.getAbsolutePath());
-
-      //清空
-      clean();
-    }
+    loadConfigFromGradle(inputParam);
+    System.out.println("将gradle中的配置加载到Configuration中");
+
+    this.mFinalApkBackPath = inputParam.finalApkBackupPath;
+    Thread currentThread = Thread.currentThread();
+    System.out.printf(
+        "\n-->AndResGuard starting! Current thread# id: %d, name: %s\n",
+        currentThread.getId(),
+        currentThread.getName()
+    );
+
+    //创建最终生成的apk文件
+    File finalApkFile = StringUtil.isPresent(inputParam.finalApkBackupPath) ?
+        new File(inputParam.finalApkBackupPath)
+        : null;
+    //资源混淆
+    resourceProguard(
+        new File(inputParam.outFolder),
+        finalApkFile,
+        inputParam.apkPath,
+        inputParam.signatureType,
+        inputParam.minSDKVersion
+    );
+    System.out.printf("<--AndResGuard Done! You can find the output in %s\n", mOutDir.getAbsolutePath());
+
+    //清空
+    clean();
   }
 
   protected void clean() {
     config = null;
-    ARSCDecoder.mTableStringsResguard.clear();
-    ARSCDecoder.mMergeDuplicatedResCount = 0;
   }
 
   /**
@@ -112,19 +118,28 @@ public class Main {
       goToError();
     }
 
+    mContext = new ResguardContext(new PhaseMetrics(apkFile.getName()));
     //获取输入文件大小
-    mRawApkSize = FileOperation.getFileSizes(apkFile);
-    System.out.printf("原始APk大小= %s byte \n",mRawApkSize);
+    mContext.setRawApkSize(FileOperation.getFileSizes(apkFile));
+    System.out.printf("原始APk大小= %s byte \n", mContext.getRawApkSize());
 
+    Log.enter(config.mLogLevel);
     try {
       ApkDecoder decoder = new ApkDecoder(config, apkFile);
+      decoder.setContext(mContext);
       //解码资源文件
       decodeResource(outputDir, decoder, apkFile);
       /* 默认使用V1签名 */
       buildApk(decoder, apkFile, outputFile, signatureType, minSDKVersoin);
+      if (config.mReportMetrics) {
+        writeMetricsReport(apkFile);
+      }
     } catch (Exception e) {
       e.printStackTrace();
       goToError();
+    } finally {
+      Log.flush();
+      Log.exit(config.mLogLevel);
     }
   }
 
@@ -144,9 +159,11 @@ public class Main {
       ApkDecoder decoder, File apkFile, File outputFile, InputParam.SignatureType signatureType, int minSDKVersion)
       throws Exception {
     ResourceApkBuilder builder = new ResourceApkBuilder(config);
+    builder.setContext(mContext);
     String apkBasename = apkFile.getName();
     apkBasename = apkBasename.substring(0, apkBasename.indexOf(".apk"));
     builder.setOutDir(mOutDir, apkBasename, outputFile);
+    builder.setRawApk(apkFile, decoder.getResRenames());
     System.out.printf("[AndResGuard] buildApk signatureType: %s\n", signatureType);
     switch (signatureType) {
       case SchemaV1:
@@ -158,6 +175,16 @@ public class Main {
     }
   }
 
+  /**
+   * 在 resource_mapping 旁边输出 metrics_xxx.json
+   */
+  private void writeMetricsReport(File apkFile) throws IOException {
+    String apkBasename = apkFile.getName().substring(0, apkFile.getName().indexOf(".apk"));
+    File report = new File(mOutDir, TypedValue.METRICS_FILE + apkBasename + TypedValue.JSON_FILE);
+    mContext.getMetrics().writeJson(report, mContext.getRawApkSize());
+    System.out.printf("[AndResGuard] metrics report: %s\n", report.getAbsolutePath());
+  }
+
   protected void goToError() {
     System.exit(ERRNO_USAGE);
   }
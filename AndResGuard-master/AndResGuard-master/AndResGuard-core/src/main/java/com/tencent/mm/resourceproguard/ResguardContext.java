@@ -0,0 +1,71 @@
+package com.tencent.mm.resourceproguard;
+
+import com.tencent.mm.util.PhaseMetrics;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 一次混淆过程中的状态，每次混淆重新创建，由 {@link Main}、ApkDecoder、ARSCDecoder 和 ResourceApkBuilder 共享
+ * <p>
+ * 原来这些都是静态变量，只能用 synchronized (Main.class) 串行执行，
+ * 放到这里之后同一个 jvm（例如 gradle daemon）里可以同时混淆多个 apk
+ */
+public class ResguardContext {
+  private final long mBeginTime = System.currentTimeMillis();
+  //存放 specNamesId（全局字符串池中的下标）和混淆后的完整路径，重写 resources.arsc 时使用
+  private final Map<Integer, String> mTableStringsResguard = new LinkedHashMap<>();
+  private final PhaseMetrics mMetrics;
+  private long mRawApkSize;
+  private int mMergeDuplicatedResCount;
+  private boolean mResourcesReused;
+
+  public ResguardContext() {
+    this(new PhaseMetrics());
+  }
+
+  public ResguardContext(PhaseMetrics metrics) {
+    mMetrics = metrics;
+  }
+
+  public long getBeginTime() {
+    return mBeginTime;
+  }
+
+  public PhaseMetrics getMetrics() {
+    return mMetrics;
+  }
+
+  public Map<Integer, String> getTableStringsResguard() {
+    return mTableStringsResguard;
+  }
+
+  public long getRawApkSize() {
+    return mRawApkSize;
+  }
+
+  public void setRawApkSize(long rawApkSize) {
+    mRawApkSize = rawApkSize;
+  }
+
+  /**
+   * @return 因为内容重复被合并掉的 res 文件个数
+   */
+  public int getMergeDuplicatedResCount() {
+    return mMergeDuplicatedResCount;
+  }
+
+  public void setMergeDuplicatedResCount(int count) {
+    mMergeDuplicatedResCount = count;
+  }
+
+  /**
+   * @return 增量混淆时资源没有变化，直接复用了上一次输出的 resources.arsc 和 mapping
+   */
+  public boolean isResourcesReused() {
+    return mResourcesReused;
+  }
+
+  public void setResourcesReused(boolean reused) {
+    mResourcesReused = reused;
+  }
+}
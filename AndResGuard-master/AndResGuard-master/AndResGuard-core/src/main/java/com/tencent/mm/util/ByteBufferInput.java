@@ -0,0 +1,188 @@
+package com.tencent.mm.util;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * 基于 ByteBuffer 的小端读取，和 ExtDataInput 接口保持一致，但不再一个字节一个字节地拼 int
+ * 支持按绝对偏移读取，int 数组直接通过 IntBuffer 视图批量读取
+ */
+public class ByteBufferInput {
+  private final ByteBuffer mBuffer;
+
+  public ByteBufferInput(ByteBuffer buffer) {
+    mBuffer = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+  }
+
+  public static ByteBufferInput wrap(byte[] data) {
+    return new ByteBufferInput(ByteBuffer.wrap(data));
+  }
+
+  /**
+   * 只读映射整个文件，映射在 buffer 被回收前一直有效，文件本身可以马上关闭
+   */
+  public static ByteBufferInput map(File file) throws IOException {
+    try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+      return new ByteBufferInput(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+    }
+  }
+
+  /**
+   * 和当前数据共享内容的只读 buffer，position 为 0
+   */
+  public ByteBuffer buffer() {
+    ByteBuffer buffer = mBuffer.asReadOnlyBuffer().order(ByteOrder.LITTLE_ENDIAN);
+    buffer.clear();
+    return buffer;
+  }
+
+  /**
+   * 截取 [start, end) 这一段作为新的 input，position 从 0 开始
+   */
+  public ByteBufferInput slice(int start, int end) {
+    ByteBuffer buffer = mBuffer.duplicate();
+    buffer.clear();
+    buffer.position(start);
+    buffer.limit(end);
+    return new ByteBufferInput(buffer);
+  }
+
+  public int position() {
+    return mBuffer.position();
+  }
+
+  public void position(int position) throws IOException {
+    if (position < 0 || position > mBuffer.limit()) {
+      throw new EOFException(String.format("position %d out of range %d", position, mBuffer.limit()));
+    }
+    mBuffer.position(position);
+  }
+
+  public int size() {
+    return mBuffer.limit();
+  }
+
+  public int remaining() {
+    return mBuffer.remaining();
+  }
+
+  /**
+   * 从 position 开始的 count 个 int 的视图，不拷贝数据
+   */
+  public IntBuffer getIntBuffer(int position, int count) throws IOException {
+    require(position, count * 4);
+    ByteBuffer buffer = mBuffer.duplicate();
+    buffer.clear();
+    buffer.position(position);
+    buffer.limit(position + count * 4);
+    return buffer.slice().order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+  }
+
+  public byte readByte() throws IOException {
+    require(1);
+    return mBuffer.get();
+  }
+
+  public int readUnsignedByte() throws IOException {
+    return readByte() & 0xFF;
+  }
+
+  public short readShort() throws IOException {
+    require(2);
+    return mBuffer.getShort();
+  }
+
+  public int readUnsignedShort() throws IOException {
+    return readShort() & 0xFFFF;
+  }
+
+  public int readInt() throws IOException {
+    require(4);
+    return mBuffer.getInt();
+  }
+
+  public int[] readIntArray(int length) throws IOException {
+    int[] array = new int[length];
+    getIntBuffer(mBuffer.position(), length).get(array);
+    mBuffer.position(mBuffer.position() + length * 4);
+    return array;
+  }
+
+  public void readFully(byte[] b) throws IOException {
+    require(b.length);
+    mBuffer.get(b);
+  }
+
+  public void skipBytes(int n) throws IOException {
+    require(n);
+    mBuffer.position(mBuffer.position() + n);
+  }
+
+  public void skipInt() throws IOException {
+    skipBytes(4);
+  }
+
+  public void skipCheckInt(int expected) throws IOException {
+    int got = readInt();
+    if (got != expected) {
+      throw new IOException(String.format("Expected: 0x%08x, got: 0x%08x", expected, got));
+    }
+  }
+
+  public void skipCheckChunkTypeInt(int expected, int possible) throws IOException {
+    int got = readInt();
+    if (got == possible) {
+      skipCheckChunkTypeInt(expected, -1);
+    } else if (got != expected) {
+      throw new IOException(String.format("Expected: 0x%08x, got: 0x%08x", expected, got));
+    }
+  }
+
+  public void skipCheckShort(short expected) throws IOException {
+    short got = readShort();
+    if (got != expected) {
+      throw new IOException(String.format("Expected: 0x%08x, got: 0x%08x", expected, got));
+    }
+  }
+
+  public void skipCheckByte(byte expected) throws IOException {
+    byte got = readByte();
+    if (got != expected) {
+      throw new IOException(String.format("Expected: 0x%08x, got: 0x%08x", expected, got));
+    }
+  }
+
+  public String readNullEndedString(int length, boolean fixed) throws IOException {
+    StringBuilder string = new StringBuilder(16);
+    while (length-- != 0) {
+      short ch = readShort();
+      if (ch == 0) {
+        break;
+      }
+      string.append((char) ch);
+    }
+    if (fixed) {
+      skipBytes(length * 2);
+    }
+
+    return string.toString();
+  }
+
+  private void require(int n) throws EOFException {
+    if (n < 0 || mBuffer.remaining() < n) {
+      throw new EOFException(String.format("need %d bytes at %d, only %d left", n, mBuffer.position(), mBuffer.remaining()));
+    }
+  }
+
+  private void require(int position, int n) throws EOFException {
+    if (position < 0 || n < 0 || position > mBuffer.limit() - n) {
+      throw new EOFException(String.format("need %d bytes at %d, size %d", n, position, mBuffer.limit()));
+    }
+  }
+}
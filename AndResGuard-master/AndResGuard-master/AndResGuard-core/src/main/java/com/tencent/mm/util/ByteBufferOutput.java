@@ -0,0 +1,180 @@
+package com.tencent.mm.util;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UTFDataFormatException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * 基于可增长 ByteBuffer 的小端写入，写完之后可以按绝对偏移回填 chunkSize 等字段，
+ * 最后一次性写到文件中
+ */
+public class ByteBufferOutput implements DataOutput {
+  private ByteBuffer mBuffer;
+
+  public ByteBufferOutput(int initialCapacity) {
+    mBuffer = ByteBuffer.allocate(Math.max(initialCapacity, 64)).order(ByteOrder.LITTLE_ENDIAN);
+  }
+
+  public int position() {
+    return mBuffer.position();
+  }
+
+  /**
+   * 拷贝 src 中 position 到 limit 之间的内容，src 的 position 会移动到 limit
+   */
+  public void write(ByteBuffer src) {
+    ensureCapacity(src.remaining());
+    mBuffer.put(src);
+  }
+
+  public void writeIntArray(int[] array) {
+    ensureCapacity(array.length * 4);
+    mBuffer.asIntBuffer().put(array);
+    mBuffer.position(mBuffer.position() + array.length * 4);
+  }
+
+  public void putInt(int position, int value) {
+    mBuffer.putInt(position, value);
+  }
+
+  public void writeTo(OutputStream out) throws IOException {
+    out.write(mBuffer.array(), mBuffer.arrayOffset(), mBuffer.position());
+  }
+
+  @Override
+  public void write(int b) {
+    ensureCapacity(1);
+    mBuffer.put((byte) b);
+  }
+
+  @Override
+  public void write(byte[] b) {
+    write(b, 0, b.length);
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) {
+    ensureCapacity(len);
+    mBuffer.put(b, off, len);
+  }
+
+  @Override
+  public void writeBoolean(boolean v) {
+    write(v ? 1 : 0);
+  }
+
+  @Override
+  public void writeByte(int v) {
+    write(v);
+  }
+
+  @Override
+  public void writeShort(int v) {
+    ensureCapacity(2);
+    mBuffer.putShort((short) v);
+  }
+
+  @Override
+  public void writeChar(int v) {
+    ensureCapacity(2);
+    mBuffer.putChar((char) v);
+  }
+
+  @Override
+  public void writeInt(int v) {
+    ensureCapacity(4);
+    mBuffer.putInt(v);
+  }
+
+  @Override
+  public void writeLong(long v) {
+    ensureCapacity(8);
+    mBuffer.putLong(v);
+  }
+
+  @Override
+  public void writeFloat(float v) {
+    writeInt(Float.floatToIntBits(v));
+  }
+
+  @Override
+  public void writeDouble(double v) {
+    writeLong(Double.doubleToLongBits(v));
+  }
+
+  @Override
+  public void writeBytes(String s) {
+    int len = s.length();
+    ensureCapacity(len);
+    for (int i = 0; i < len; i++) {
+      mBuffer.put((byte) s.charAt(i));
+    }
+  }
+
+  @Override
+  public void writeChars(String s) {
+    int len = s.length();
+    ensureCapacity(len * 2);
+    for (int i = 0; i < len; i++) {
+      mBuffer.putChar(s.charAt(i));
+    }
+  }
+
+  /**
+   * 和 DataOutputStream 一样写 modified UTF-8，长度和 {@link #writeShort} 一样是小端的 u2
+   */
+  @Override
+  public void writeUTF(String s) throws UTFDataFormatException {
+    int len = s.length();
+    int utfLen = 0;
+    for (int i = 0; i < len; i++) {
+      char c = s.charAt(i);
+      if (c >= 0x0001 && c <= 0x007F) {
+        utfLen++;
+      } else if (c > 0x07FF) {
+        utfLen += 3;
+      } else {
+        utfLen += 2;
+      }
+    }
+    if (utfLen > 0xFFFF) {
+      throw new UTFDataFormatException(String.format("encoded string too long: %d bytes", utfLen));
+    }
+    ensureCapacity(utfLen + 2);
+    mBuffer.putShort((short) utfLen);
+    for (int i = 0; i < len; i++) {
+      char c = s.charAt(i);
+      if (c >= 0x0001 && c <= 0x007F) {
+        mBuffer.put((byte) c);
+      } else if (c > 0x07FF) {
+        mBuffer.put((byte) (0xE0 | ((c >> 12) & 0x0F)));
+        mBuffer.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+        mBuffer.put((byte) (0x80 | (c & 0x3F)));
+      } else {
+        mBuffer.put((byte) (0xC0 | ((c >> 6) & 0x1F)));
+        mBuffer.put((byte) (0x80 | (c & 0x3F)));
+      }
+    }
+  }
+
+  private void ensureCapacity(int n) {
+    if (mBuffer.remaining() >= n) {
+      return;
+    }
+    int capacity = mBuffer.capacity();
+    int required = mBuffer.position() + n;
+    while (capacity < required) {
+      capacity = capacity * 2;
+      if (capacity < 0) {
+        capacity = required;
+      }
+    }
+    ByteBuffer grown = ByteBuffer.allocate(capacity).order(ByteOrder.LITTLE_ENDIAN);
+    mBuffer.flip();
+    grown.put(mBuffer);
+    mBuffer = grown;
+  }
+}
@@ -0,0 +1,91 @@
+package com.tencent.mm.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * 把 temp/res 下的文件输出到 r/ 的方式，输出的内容都是一样的
+ */
+public enum FileCopyStrategy {
+  /**
+   * 用 8K 的缓冲区读写
+   */
+  COPY("copy") {
+    @Override
+    public void copy(File source, File dest) throws IOException {
+      FileOperation.copyFileUsingStream(source, dest);
+    }
+  },
+  /**
+   * FileChannel.transferTo，数据不用经过用户态
+   */
+  TRANSFER("transfer") {
+    @Override
+    public void copy(File source, File dest) throws IOException {
+      try (FileInputStream is = new FileInputStream(source);
+           FileOutputStream os = new FileOutputStream(dest, false)) {
+        FileChannel in = is.getChannel();
+        FileChannel out = os.getChannel();
+        long size = in.size();
+        long position = 0;
+        while (position < size) {
+          position += in.transferTo(position, size - position, out);
+        }
+      }
+    }
+  },
+  /**
+   * 硬链接，不在同一个文件系统或者不支持硬链接的时候退回 transfer
+   * 链接之后两边是同一个文件，不能再修改其中任何一个
+   */
+  LINK("link") {
+    @Override
+    public void copy(File source, File dest) throws IOException {
+      try {
+        Files.deleteIfExists(dest.toPath());
+        Files.createLink(dest.toPath(), source.toPath());
+      } catch (UnsupportedOperationException | FileSystemException e) {
+        TRANSFER.copy(source, dest);
+      }
+    }
+  },
+  /**
+   * 直接把文件从 temp 移动过去，temp/res 里面只会剩下被合并掉的重复文件
+   */
+  MOVE("move") {
+    @Override
+    public void copy(File source, File dest) throws IOException {
+      Files.move(source.toPath(), dest.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+  };
+
+  private final String mName;
+
+  FileCopyStrategy(String name) {
+    mName = name;
+  }
+
+  public static FileCopyStrategy fromName(String name) throws IOException {
+    for (FileCopyStrategy strategy : values()) {
+      if (strategy.mName.equalsIgnoreCase(name.trim())) {
+        return strategy;
+      }
+    }
+    throw new IOException(String.format("unknown copy mode %s, must be one of copy, transfer, link, move", name));
+  }
+
+  /**
+   * dest 的父目录需要已经存在
+   */
+  public abstract void copy(File source, File dest) throws IOException;
+
+  public String getName() {
+    return mName;
+  }
+}
@@ -7,13 +7,13 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.Collection;
 import java.util.Enumeration;
 import java.util.HashMap;
-import java.util.zip.CRC32;
+import java.util.Map;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
-import java.util.zip.ZipOutputStream;
 
 public class FileOperation {
   private static final int BUFFER = 8192;
@@ -198,41 +198,171 @@ public class FileOperation {
    * @param baseFolder file(dir) base folder, we should calc relative path of resFile with base
    * @param zipFile output zip file
    * @param compressData compress data
+   * @return the count of entries written to zipFile
    * @throws IOException io exception
    */
-  public static void zipFiles(
+  public static int zipFiles(
       Collection<File> resFileList, File baseFolder, File zipFile, HashMap<String, Integer> compressData)
       throws IOException {
-    ZipOutputStream zipOut = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(zipFile), BUFFER));
-    for (File resFile : resFileList) {
-      if (resFile.exists()) {
-        if (resFile.getAbsolutePath().contains(baseFolder.getAbsolutePath())) {
-          String relativePath = baseFolder.toURI().relativize(resFile.getParentFile().toURI()).getPath();
-          // remove slash at end of relativePath
-          if (relativePath.length() > 1) {
-            relativePath = relativePath.substring(0, relativePath.length() - 1);
+    return zipFiles(resFileList, baseFolder, zipFile, compressData, null, null);
+  }
+
+  /**
+   * zip list of file, the entries which are not changed will be copied from raw apk without recompressing
+   *
+   * @param resFileList file(dir) list
+   * @param baseFolder file(dir) base folder, we should calc relative path of resFile with base
+   * @param zipFile output zip file
+   * @param compressData compress data
+   * @param rawApk raw apk file, can be null
+   * @param rawEntryNames new entry name -> raw entry name, only for the entries whose content is not changed
+   * @return the count of entries written to zipFile
+   * @throws IOException io exception
+   */
+  public static int zipFiles(
+      Collection<File> resFileList, File baseFolder, File zipFile, HashMap<String, Integer> compressData,
+      File rawApk, Map<String, String> rawEntryNames) throws IOException {
+    RawZipFile rawZipFile = rawApk != null ? new RawZipFile(rawApk) : null;
+    RawZipOutputStream zipOut =
+        new RawZipOutputStream(new BufferedOutputStream(new FileOutputStream(zipFile), BUFFER));
+    try {
+      for (File resFile : resFileList) {
+        if (resFile.exists()) {
+          if (resFile.getAbsolutePath().contains(baseFolder.getAbsolutePath())) {
+            String relativePath = baseFolder.toURI().relativize(resFile.getParentFile().toURI()).getPath();
+            // remove slash at end of relativePath
+            if (relativePath.length() > 1) {
+              relativePath = relativePath.substring(0, relativePath.length() - 1);
+            } else {
+              relativePath = "";
+            }
+            zipFile(resFile, zipOut, relativePath, compressData, rawZipFile, rawEntryNames);
           } else {
-            relativePath = "";
+            zipFile(resFile, zipOut, "", compressData, rawZipFile, rawEntryNames);
           }
-          zipFile(resFile, zipOut, relativePath, compressData);
+        }
+      }
+      return zipOut.getEntryCount();
+    } finally {
+      zipOut.close();
+      if (rawZipFile != null) {
+        rawZipFile.close();
+      }
+    }
+  }
+
+  /**
+   * zip the entries of raw apk into a new zip file directly, without unzipping them to disk
+   *
+   * @param rawApk raw apk file
+   * @param entryNames raw entry name -> new entry name, the entries not in it will be ignored
+   * @param replaceFiles raw entry name -> file whose content should replace the raw entry
+   * @param zipFile output zip file
+   * @param compressData compress data
+   * @return the count of entries written to zipFile
+   * @throws IOException io exception
+   */
+  public static int zipFilesFromApk(
+      File rawApk, Map<String, String> entryNames, Map<String, File> replaceFiles, File zipFile,
+      HashMap<String, Integer> compressData) throws IOException {
+    RawZipFile rawZipFile = new RawZipFile(rawApk);
+    ZipFile inflateZipFile = new ZipFile(rawApk);
+    RawZipOutputStream zipOut =
+        new RawZipOutputStream(new BufferedOutputStream(new FileOutputStream(zipFile), BUFFER));
+    try {
+      for (RawZipFile.Entry rawEntry : rawZipFile.entries()) {
+        if (rawEntry.isDirectory()) {
+          continue;
+        }
+        String rawName = rawEntry.getName();
+        String name = entryNames.get(rawName);
+        if (name == null) {
+          continue;
+        }
+        if (!compressData.containsKey(name)) {
+          System.err.printf(String.format("do not have the compress data path =%s in resource.asrc\n", name));
+          continue;
+        }
+        int compressMethod = compressData.get(name);
+        File replaceFile = replaceFiles.get(rawName);
+        if (replaceFile != null) {
+          zipSingleFile(replaceFile, zipOut, name, compressMethod);
+        } else if (rawEntry.canCopyRaw(compressMethod)) {
+          //压缩方式没变，直接拷贝压缩后的数据
+          zipOut.putRawEntry(name, rawZipFile, rawEntry);
         } else {
-          zipFile(resFile, zipOut, "", compressData);
+          zipEntry(inflateZipFile, rawName, zipOut, name, compressMethod);
         }
       }
+      return zipOut.getEntryCount();
+    } finally {
+      zipOut.close();
+      inflateZipFile.close();
+      rawZipFile.close();
     }
-    zipOut.close();
+  }
+
+  /**
+   * repackage the apk with {@link ZopfliDeflater} in process, the stored entries are kept stored,
+   * and all the other entries are recompressed in parallel
+   *
+   * @param rawApk raw apk file
+   * @param zipFile output zip file
+   * @param compressEffort iterations of ZopfliDeflater
+   * @throws IOException io exception
+   */
+  public static void recompressApk(File rawApk, File zipFile, int compressEffort) throws IOException {
+    RawZipFile rawZipFile = new RawZipFile(rawApk);
+    ZipFile inflateZipFile = new ZipFile(rawApk);
+    RawZipOutputStream zipOut = new RawZipOutputStream(
+        new BufferedOutputStream(new FileOutputStream(zipFile), BUFFER),
+        Runtime.getRuntime().availableProcessors(),
+        compressEffort
+    );
+    try {
+      for (RawZipFile.Entry rawEntry : rawZipFile.entries()) {
+        if (rawEntry.isDirectory()) {
+          continue;
+        }
+        if (rawEntry.canCopyRaw(ZipEntry.STORED)) {
+          zipOut.putRawEntry(rawEntry.getName(), rawZipFile, rawEntry);
+        } else {
+          zipEntry(inflateZipFile, rawEntry.getName(), zipOut, rawEntry.getName(), ZipEntry.DEFLATED);
+        }
+      }
+    } finally {
+      zipOut.close();
+      inflateZipFile.close();
+      rawZipFile.close();
+    }
+  }
+
+  private static void zipEntry(
+      ZipFile rawZipFile, String rawName, RawZipOutputStream zipout, String name, int compressMethod)
+      throws IOException {
+    InputStream is = rawZipFile.getInputStream(rawZipFile.getEntry(rawName));
+    try {
+      zipout.putEntry(name, compressMethod, is);
+    } finally {
+      is.close();
+    }
+  }
+
+  private static void zipSingleFile(File resFile, RawZipOutputStream zipout, String name, int compressMethod)
+      throws IOException {
+    zipout.putEntry(name, compressMethod, readContents(resFile));
   }
 
   private static void zipFile(
-      File resFile, ZipOutputStream zipout, String rootpath, HashMap<String, Integer> compressData) throws IOException {
+      File resFile, RawZipOutputStream zipout, String rootpath, HashMap<String, Integer> compressData,
+      RawZipFile rawZipFile, Map<String, String> rawEntryNames) throws IOException {
     rootpath = rootpath + (rootpath.trim().length() == 0 ? "" : File.separator) + resFile.getName();
     if (resFile.isDirectory()) {
       File[] fileList = resFile.listFiles();
       for (File file : fileList) {
-        zipFile(file, zipout, rootpath, compressData);
+        zipFile(file, zipout, rootpath, compressData, rawZipFile, rawEntryNames);
       }
     } else {
-      final byte[] fileContents = readContents(resFile);
       //这里需要强转成linux格式，果然坑！！
       if (rootpath.contains("\\")) {
         rootpath = rootpath.replace("\\", "/");
@@ -243,21 +373,16 @@ public class FileOperation {
         return;
       }
       int compressMethod = compressData.get(rootpath);
-      ZipEntry entry = new ZipEntry(rootpath);
-
-      if (compressMethod == ZipEntry.DEFLATED) {
-        entry.setMethod(ZipEntry.DEFLATED);
+      RawZipFile.Entry rawEntry = null;
+      if (rawZipFile != null && rawEntryNames != null && rawEntryNames.containsKey(rootpath)) {
+        rawEntry = rawZipFile.getEntry(rawEntryNames.get(rootpath));
+      }
+      if (rawEntry != null && rawEntry.canCopyRaw(compressMethod) && rawEntry.getSize() == resFile.length()) {
+        //压缩方式没变，直接拷贝压缩后的数据
+        zipout.putRawEntry(rootpath, rawZipFile, rawEntry);
       } else {
-        entry.setMethod(ZipEntry.STORED);
-        entry.setSize(fileContents.length);
-        final CRC32 checksumCalculator = new CRC32();
-        checksumCalculator.update(fileContents);
-        entry.setCrc(checksumCalculator.getValue());
+        zipSingleFile(resFile, zipout, rootpath, compressMethod);
       }
-      zipout.putNextEntry(entry);
-      zipout.write(fileContents);
-      zipout.flush();
-      zipout.closeEntry();
     }
   }
 
@@ -0,0 +1,142 @@
+package com.tencent.mm.util;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 往 Java Flight Recorder 里面写 AndResGuard 自己的事件，录制 gradle 构建时可以和 GC、IO 放在一起看
+ * <p>
+ * 工程还要能在没有 jdk.jfr 的 jdk8 上编译和运行，所以事件类型是通过反射用 EventFactory 动态创建的，
+ * 没有 jfr 或者没有在录制的时候 {@link #begin(EventType)} 返回一个什么都不做的 handle
+ */
+public final class JfrEvents {
+  private static final Handle NO_OP = new Handle(null, null);
+
+  /**
+   * 混淆的一个阶段，字段：apk, stage, entries, bytesRead, bytesWritten
+   */
+  public static final EventType STAGE = EventType.create("com.tencent.mm.andresguard.Stage",
+      "AndResGuard Stage",
+      new Class<?>[] {String.class, String.class, long.class, long.class, long.class},
+      new String[] {"apk", "stage", "entries", "bytesRead", "bytesWritten"}
+  );
+
+  /**
+   * 调用的外部命令，字段：apk, command, exitCode, outputBytes
+   */
+  public static final EventType COMMAND = EventType.create("com.tencent.mm.andresguard.Command",
+      "AndResGuard Command",
+      new Class<?>[] {String.class, String.class, int.class, long.class},
+      new String[] {"apk", "command", "exitCode", "outputBytes"}
+  );
+
+  private JfrEvents() {
+  }
+
+  public static Handle begin(EventType type) {
+    if (type == null) {
+      return NO_OP;
+    }
+    try {
+      Object event = type.mNewEvent.invoke(type.mFactory);
+      if (!(Boolean) type.mIsEnabled.invoke(event)) {
+        return NO_OP;
+      }
+      type.mBegin.invoke(event);
+      return new Handle(type, event);
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      return NO_OP;
+    }
+  }
+
+  public static final class EventType {
+    private final Object mFactory;
+    private final Method mNewEvent;
+    private final Method mIsEnabled;
+    private final Method mBegin;
+    private final Method mEnd;
+    private final Method mShouldCommit;
+    private final Method mSet;
+    private final Method mCommit;
+
+    private EventType(Object factory, Class<?> factoryClass, Class<?> eventClass) throws ReflectiveOperationException {
+      mFactory = factory;
+      mNewEvent = factoryClass.getMethod("newEvent");
+      mIsEnabled = eventClass.getMethod("isEnabled");
+      mBegin = eventClass.getMethod("begin");
+      mEnd = eventClass.getMethod("end");
+      mShouldCommit = eventClass.getMethod("shouldCommit");
+      mSet = eventClass.getMethod("set", int.class, Object.class);
+      mCommit = eventClass.getMethod("commit");
+    }
+
+    /**
+     * @return 当前 jvm 不支持 jfr 时返回 null
+     */
+    static EventType create(String name, String label, Class<?>[] types, String[] fieldNames) {
+      try {
+        Class<?> factoryClass = Class.forName("jdk.jfr.EventFactory");
+        Class<?> eventClass = Class.forName("jdk.jfr.Event");
+        Class<?> annotationClass = Class.forName("jdk.jfr.AnnotationElement");
+        Class<?> descriptorClass = Class.forName("jdk.jfr.ValueDescriptor");
+        Constructor<?> annotation = annotationClass.getConstructor(Class.class, Object.class);
+        Constructor<?> descriptor = descriptorClass.getConstructor(Class.class, String.class);
+
+        List<Object> annotations = Arrays.asList(
+            annotation.newInstance(Class.forName("jdk.jfr.Name"), name),
+            annotation.newInstance(Class.forName("jdk.jfr.Label"), label),
+            annotation.newInstance(Class.forName("jdk.jfr.Category"), new String[] {"AndResGuard"})
+        );
+        List<Object> fields = new ArrayList<>();
+        for (int i = 0; i < types.length; i++) {
+          fields.add(descriptor.newInstance(types[i], fieldNames[i]));
+        }
+        Object factory = factoryClass.getMethod("create", List.class, List.class).invoke(null, annotations, fields);
+        return new EventType(factory, factoryClass, eventClass);
+      } catch (ReflectiveOperationException | LinkageError | RuntimeException e) {
+        return null;
+      }
+    }
+  }
+
+  public static final class Handle {
+    private final EventType mType;
+    private final Object mEvent;
+
+    private Handle(EventType type, Object event) {
+      mType = type;
+      mEvent = event;
+    }
+
+    /**
+     * @return 是否在录制这个事件，字段的值需要额外计算时先判断一下
+     */
+    public boolean isEnabled() {
+      return mEvent != null;
+    }
+
+    /**
+     * 结束计时并提交，values 按创建事件类型时的字段顺序传入
+     */
+    public void commit(Object... values) {
+      if (mEvent == null) {
+        return;
+      }
+      try {
+        mType.mEnd.invoke(mEvent);
+        if (!(Boolean) mType.mShouldCommit.invoke(mEvent)) {
+          return;
+        }
+        for (int i = 0; i < values.length; i++) {
+          mType.mSet.invoke(mEvent, i, values[i]);
+        }
+        mType.mCommit.invoke(mEvent);
+      } catch (ReflectiveOperationException | RuntimeException e) {
+        // jfr 只是用来观察的，失败了不影响混淆
+      }
+    }
+  }
+}
@@ -0,0 +1,279 @@
+package com.tencent.mm.util;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * 分级别的日志，低于当前级别的日志不会格式化也不会输出
+ * <p>
+ * 逐条资源打印的地方先用 {@link #isLoggable(Level)} 判断，或者用 {@link Supplier} 延迟生成内容，
+ * 这样关闭日志时不会有任何字符串拼接和装箱
+ * <p>
+ * verbose 级别的日志量很大，会交给后台线程输出，队列满了之后打印的线程会等待
+ * <p>
+ * 控制台是整个进程共用的，同一个 jvm 里同时有几次混淆时（{@link #enter(Level)}），按其中最详细的级别输出
+ */
+public final class Log {
+  public enum Level {
+    ERROR, WARN, INFO, DEBUG, VERBOSE;
+
+    public static Level fromName(String name) {
+      for (Level level : values()) {
+        if (level.name().equalsIgnoreCase(name.trim())) {
+          return level;
+        }
+      }
+      throw new IllegalArgumentException(String.format("unknown log level %s, must be one of error, warn, info, debug, verbose",
+          name
+      ));
+    }
+  }
+
+  private static final int ASYNC_QUEUE_SIZE = 4096;
+
+  private static volatile Level sLevel = Level.INFO;
+  //没有正在进行的混淆时使用的级别
+  private static Level sDefaultLevel = Level.INFO;
+  //每个级别正在进行的混淆个数
+  private static final int[] sActiveCounts = new int[Level.values().length];
+  //append 不加锁读取，shutdown 之后还可能拿到旧的实例，由 AsyncAppender 自己兜底
+  private static volatile AsyncAppender sAsyncAppender;
+
+  private Log() {
+  }
+
+  public static Level getLevel() {
+    return sLevel;
+  }
+
+  /**
+   * 设置没有正在进行的混淆时的级别
+   */
+  public static synchronized void setLevel(Level level) {
+    sDefaultLevel = level;
+    updateLevel();
+  }
+
+  /**
+   * 一次混淆开始，和 {@link #exit(Level)} 成对调用
+   */
+  public static synchronized void enter(Level level) {
+    sActiveCounts[level.ordinal()]++;
+    updateLevel();
+  }
+
+  public static synchronized void exit(Level level) {
+    if (sActiveCounts[level.ordinal()] > 0) {
+      sActiveCounts[level.ordinal()]--;
+    }
+    updateLevel();
+  }
+
+  /**
+   * verbose 时打开异步输出，其他级别直接打印到控制台
+   */
+  private static void updateLevel() {
+    Level level = sDefaultLevel;
+    for (int i = sActiveCounts.length - 1; i >= 0; i--) {
+      if (sActiveCounts[i] > 0) {
+        level = Level.values()[i];
+        break;
+      }
+    }
+    sLevel = level;
+    if (level == Level.VERBOSE && sAsyncAppender == null) {
+      sAsyncAppender = new AsyncAppender(System.out, ASYNC_QUEUE_SIZE);
+    } else if (level != Level.VERBOSE && sAsyncAppender != null) {
+      sAsyncAppender.shutdown();
+      sAsyncAppender = null;
+    }
+  }
+
+  public static boolean isLoggable(Level level) {
+    return level.ordinal() <= sLevel.ordinal();
+  }
+
+  public static boolean isDebug() {
+    return isLoggable(Level.DEBUG);
+  }
+
+  public static boolean isVerbose() {
+    return isLoggable(Level.VERBOSE);
+  }
+
+  public static void i(String tag, String format, Object... args) {
+    log(Level.INFO, tag, format, args);
+  }
+
+  public static void d(String tag, String format, Object... args) {
+    log(Level.DEBUG, tag, format, args);
+  }
+
+  public static void v(String tag, String format, Object... args) {
+    log(Level.VERBOSE, tag, format, args);
+  }
+
+  public static void v(String tag, Supplier<String> message) {
+    if (isLoggable(Level.VERBOSE)) {
+      append("[" + tag + "] " + message.get());
+    }
+  }
+
+  public static void log(Level level, String tag, String format, Object... args) {
+    if (isLoggable(level)) {
+      append("[" + tag + "] " + (args.length == 0 ? format : String.format(format, args)));
+    }
+  }
+
+  /**
+   * 等待异步输出的日志全部打印完
+   */
+  public static synchronized void flush() {
+    if (sAsyncAppender != null) {
+      sAsyncAppender.flush();
+    }
+  }
+
+  private static void append(String line) {
+    AsyncAppender appender = sAsyncAppender;
+    if (appender != null) {
+      appender.append(line);
+    } else {
+      System.out.println(line);
+    }
+  }
+
+  private static final class AsyncAppender implements Runnable {
+    private static final long POLL_MILLIS = 100;
+    private static final Object SHUTDOWN = new Object();
+
+    private final PrintStream mOut;
+    //日志行，或者 flush 时放入的 CountDownLatch
+    private final BlockingQueue<Object> mQueue;
+    private final Thread mThread;
+    private volatile boolean mClosed;
+
+    AsyncAppender(PrintStream out, int capacity) {
+      mOut = out;
+      mQueue = new ArrayBlockingQueue<>(capacity);
+      mThread = new Thread(this, "andresguard-log");
+      mThread.setDaemon(true);
+      mThread.start();
+    }
+
+    void append(String line) {
+      if (!put(line)) {
+        mOut.println(line);
+      } else if (mClosed) {
+        //可能排在 SHUTDOWN 后面，写线程不会再处理，由当前线程打印
+        drainRemaining();
+      }
+    }
+
+    /**
+     * 每次 flush 放入自己的标记，放入时不持有任何锁，写线程处理到这个标记时说明之前的日志都已经输出了
+     */
+    void flush() {
+      CountDownLatch flushed = new CountDownLatch(1);
+      if (!put(flushed)) {
+        mOut.flush();
+        return;
+      }
+      try {
+        while (!flushed.await(POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+          if (!mThread.isAlive()) {
+            drainRemaining();
+            return;
+          }
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    void shutdown() {
+      flush();
+      mClosed = true;
+      if (put(SHUTDOWN)) {
+        try {
+          mThread.join();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return;
+        }
+      }
+      drainRemaining();
+    }
+
+    /**
+     * @return 写线程已经退出、没有放入队列时返回 false
+     */
+    private boolean put(Object item) {
+      try {
+        while (!mQueue.offer(item, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+          if (!mThread.isAlive()) {
+            drainRemaining();
+            return false;
+          }
+        }
+        return true;
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return false;
+      }
+    }
+
+    /**
+     * 写线程退出之后，输出队列里剩下的内容
+     */
+    private synchronized void drainRemaining() {
+      if (mThread.isAlive()) {
+        return;
+      }
+      Object item;
+      while ((item = mQueue.poll()) != null) {
+        write(item);
+      }
+      mOut.flush();
+    }
+
+    private void write(Object item) {
+      if (item instanceof CountDownLatch) {
+        mOut.flush();
+        ((CountDownLatch) item).countDown();
+      } else if (item != SHUTDOWN) {
+        mOut.println(item);
+      }
+    }
+
+    @Override
+    public void run() {
+      List<Object> items = new ArrayList<>();
+      try {
+        while (true) {
+          items.add(mQueue.take());
+          mQueue.drainTo(items);
+          boolean shutdown = false;
+          for (Object item : items) {
+            //同一批里排在 SHUTDOWN 后面的也输出完
+            shutdown |= item == SHUTDOWN;
+            write(item);
+          }
+          items.clear();
+          if (shutdown) {
+            mOut.flush();
+            return;
+          }
+        }
+      } catch (InterruptedException e) {
+        mOut.flush();
+      }
+    }
+  }
+}
@@ -0,0 +1,67 @@
+package com.tencent.mm.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 进程内共享的 LRU 缓存，线程安全
+ * <p>
+ * 在 gradle daemon 中多次混淆（多个变体、多次构建）时复用解析好的结果，key 一般是输入文件内容的 md5，
+ * 文件变了 key 也会变，不需要主动失效。加载在锁外进行，并发时同一个 key 可能会加载多次，只保留第一个结果
+ */
+public final class LruCache<K, V> {
+  private final int mMaxSize;
+  private final Map<K, V> mEntries;
+  private long mHits;
+  private long mMisses;
+
+  public interface Loader<V, E extends Exception> {
+    V load() throws E;
+  }
+
+  public LruCache(final int maxSize) {
+    mMaxSize = maxSize;
+    mEntries = new LinkedHashMap<K, V>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+        return size() > mMaxSize;
+      }
+    };
+  }
+
+  public <E extends Exception> V get(K key, Loader<V, E> loader) throws E {
+    synchronized (this) {
+      V value = mEntries.get(key);
+      if (value != null) {
+        mHits++;
+        return value;
+      }
+      mMisses++;
+    }
+    V loaded = loader.load();
+    synchronized (this) {
+      V value = mEntries.get(key);
+      if (value != null) {
+        return value;
+      }
+      mEntries.put(key, loaded);
+      return loaded;
+    }
+  }
+
+  public synchronized void clear() {
+    mEntries.clear();
+  }
+
+  public synchronized int size() {
+    return mEntries.size();
+  }
+
+  public synchronized long getHits() {
+    return mHits;
+  }
+
+  public synchronized long getMisses() {
+    return mMisses;
+  }
+}
@@ -0,0 +1,519 @@
+package com.tencent.mm.util;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * resource_mapping 文件的读写，支持原来的文本格式和带索引的二进制格式
+ * <p>
+ * 二进制格式（大端）：
+ * <pre>
+ * header        magic, version, 以及下面各部分的 offset 和个数，共 8 个 int
+ * string table  (count + 1) 个 int 的 offset（相对字符串数据的开头），然后是 UTF-8 的字符串数据
+ * file mapping  count 组 (原路径 id, 混淆后路径 id)
+ * package index 每个 package：name id, type 个数，每个 type：name id, section offset, entry 个数
+ * type section  entry 个数组 (原名字 id, 混淆后名字 id)，按原名字的 UTF-8 字节排序
+ * </pre>
+ * 文件可以直接 mmap，按 (package, type, name) 查找时在 type section 里二分，不需要把整个文件解析成 map
+ */
+public final class MappingFile implements Closeable {
+  private static final int MAGIC = 0x41524D50; // "ARMP"
+  private static final int VERSION = 1;
+  private static final int HEADER_SIZE = 8 * 4;
+  private static final int ENTRY_SIZE = 2 * 4;
+  private static final String FILE_MAPPING_HEADER = "res path mapping:";
+  private static final String RES_MAPPING_HEADER = "res id mapping:";
+  private static final String ARROW = "->";
+
+  private static final Comparator<byte[]> UTF8_ORDER = (a, b) -> compare(a, b, 0, b.length, null);
+
+  private final ByteBuffer mBuffer;
+  private final int mStringCount;
+  private final int mStringOffsetsStart;
+  private final int mStringDataStart;
+  private final int mFileMappingStart;
+  private final int mFileMappingCount;
+  private final int mPackageIndexStart;
+  private final int mPackageCount;
+  //解码过的字符串，同一个 id 只解码一次
+  private final String[] mStrings;
+
+  /**
+   * 解析 mapping 文件的回调，文件路径的对应关系都在资源名字的对应关系之前
+   */
+  public interface Visitor {
+    /**
+     * @param raw    原路径，如 res/anim
+     * @param result 混淆后路径，如 r/a
+     */
+    void visitFile(String raw, String result) throws IOException;
+
+    /**
+     * @param packageName 包名，如 com.tencent.mm
+     * @param typeName    资源类型，如 drawable
+     * @param name        原名字
+     * @param replace     混淆后的名字
+     */
+    void visitRes(String packageName, String typeName, String name, String replace) throws IOException;
+  }
+
+  private MappingFile(File file) throws IOException {
+    mBuffer = load(file);
+    if (mBuffer.limit() < HEADER_SIZE || mBuffer.getInt(0) != MAGIC) {
+      throw new IOException(String.format("%s is not a binary mapping file", file.getAbsolutePath()));
+    }
+    if (mBuffer.getInt(4) != VERSION) {
+      throw new IOException(String.format("unsupported binary mapping version %d, path=%s",
+          mBuffer.getInt(4),
+          file.getAbsolutePath()
+      ));
+    }
+    mStringOffsetsStart = mBuffer.getInt(8);
+    mStringCount = mBuffer.getInt(12);
+    mStringDataStart = mStringOffsetsStart + (mStringCount + 1) * 4;
+    mFileMappingStart = mBuffer.getInt(16);
+    mFileMappingCount = mBuffer.getInt(20);
+    mPackageIndexStart = mBuffer.getInt(24);
+    mPackageCount = mBuffer.getInt(28);
+    mStrings = new String[mStringCount];
+  }
+
+  /**
+   * 和 ARSCTable 一样，windows 上被映射的文件在 buffer 回收之前删不掉，
+   * mapping 文件在上一次的输出目录里时会导致清空输出目录失败，所以 windows 上整个读进来
+   */
+  private static ByteBuffer load(File file) throws IOException {
+    if (!File.separator.contains("/")) {
+      return ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+    }
+    try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+      return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+  }
+
+  /**
+   * 打开一个二进制 mapping 文件，windows 以外直接 mmap
+   */
+  public static MappingFile open(File file) throws IOException {
+    return new MappingFile(file);
+  }
+
+  /**
+   * @return 文件是否是二进制格式
+   */
+  public static boolean isBinary(File file) throws IOException {
+    if (file.length() < HEADER_SIZE) {
+      return false;
+    }
+    try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+      return in.readInt() == MAGIC;
+    }
+  }
+
+  /**
+   * 读取 mapping 文件，根据文件头自动区分文本格式和二进制格式
+   */
+  public static void read(File file, Visitor visitor) throws IOException {
+    if (!file.exists()) {
+      throw new IOException(String.format("Could not find old mapping file %s", file.getAbsolutePath()));
+    }
+    if (isBinary(file)) {
+      try (MappingFile mapping = open(file)) {
+        mapping.accept(visitor);
+      }
+    } else {
+      readText(file, visitor);
+    }
+  }
+
+  /**
+   * 文本格式转成二进制格式，或者二进制格式转成文本格式
+   *
+   * @return 是否是转成了二进制格式
+   */
+  public static boolean convert(File in, File out) throws IOException {
+    if (isBinary(in)) {
+      try (TextWriter writer = new TextWriter(out)) {
+        read(in, writer);
+      }
+      return false;
+    }
+    BinaryWriter writer = new BinaryWriter();
+    readText(in, writer);
+    writer.write(out);
+    return true;
+  }
+
+  /**
+   * 解析文本格式，每一行是 "    原名字 -> 混淆后名字"，带 / 的是文件路径，否则是 package.R.type.name
+   */
+  private static void readText(File file, Visitor visitor) throws IOException {
+    try (BufferedReader br = new BufferedReader(new FileReader(file))) {
+      String line;
+      while ((line = br.readLine()) != null) {
+        //和原来的正则 \s+(.*)->(.*) 一致：箭头前面要有空白，取最后一个箭头
+        int arrow = line.lastIndexOf(ARROW);
+        int start = arrow == -1 ? -1 : indexOfWhitespace(line, arrow);
+        if (start == -1) {
+          continue;
+        }
+        String nameBefore = line.substring(start, arrow).trim();
+        String nameAfter = line.substring(arrow + ARROW.length()).trim();
+        if (line.indexOf('/') != -1) {
+          visitor.visitFile(nameBefore, nameAfter);
+          continue;
+        }
+        int packagePos = nameBefore.indexOf(".R.");
+        if (packagePos == -1) {
+          throw new IOException(String.format("the old mapping file packagename is malformed, "
+                                              + "it should be like com.tencent.mm.R.attr.test, yours %s\n", nameBefore));
+        }
+        String packageName = nameBefore.substring(0, packagePos);
+        int nextDot = nameBefore.indexOf(".", packagePos + 3);
+        String typeName = nameBefore.substring(packagePos + 3, nextDot);
+        String name = nameBefore.substring(nextDot + 1);
+        String replace = nameAfter.substring(nameAfter.indexOf(".", packagePos + 3) + 1);
+        visitor.visitRes(packageName, typeName, name, replace);
+      }
+    } catch (FileNotFoundException ex) {
+      throw new IOException(String.format("Could not find old mapping file %s", file.getAbsolutePath()));
+    }
+  }
+
+  private static int indexOfWhitespace(String line, int end) {
+    for (int i = 0; i < end; i++) {
+      if (Character.isWhitespace(line.charAt(i))) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * 按 (package, type, name) 查找混淆后的名字
+   *
+   * @return 没有的话返回 null
+   */
+  public String getReplace(String packageName, String typeName, String name) {
+    byte[] packageBytes = packageName.getBytes(StandardCharsets.UTF_8);
+    byte[] typeBytes = typeName.getBytes(StandardCharsets.UTF_8);
+    byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+    int position = mPackageIndexStart;
+    for (int i = 0; i < mPackageCount; i++) {
+      int packageId = mBuffer.getInt(position);
+      int typeCount = mBuffer.getInt(position + 4);
+      position += 8;
+      if (!equalsString(packageId, packageBytes)) {
+        position += typeCount * 12;
+        continue;
+      }
+      for (int j = 0; j < typeCount; j++, position += 12) {
+        if (equalsString(mBuffer.getInt(position), typeBytes)) {
+          return findInSection(mBuffer.getInt(position + 4), mBuffer.getInt(position + 8), nameBytes);
+        }
+      }
+      return null;
+    }
+    return null;
+  }
+
+  private String findInSection(int sectionStart, int count, byte[] nameBytes) {
+    int low = 0;
+    int high = count - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      int entry = sectionStart + mid * ENTRY_SIZE;
+      int cmp = compareString(mBuffer.getInt(entry), nameBytes);
+      if (cmp < 0) {
+        low = mid + 1;
+      } else if (cmp > 0) {
+        high = mid - 1;
+      } else {
+        return getString(mBuffer.getInt(entry + 4));
+      }
+    }
+    return null;
+  }
+
+  /**
+   * 按文件中的顺序遍历所有的对应关系
+   */
+  public void accept(Visitor visitor) throws IOException {
+    try {
+      for (int i = 0; i < mFileMappingCount; i++) {
+        int entry = mFileMappingStart + i * ENTRY_SIZE;
+        visitor.visitFile(getString(mBuffer.getInt(entry)), getString(mBuffer.getInt(entry + 4)));
+      }
+      int position = mPackageIndexStart;
+      for (int i = 0; i < mPackageCount; i++) {
+        String packageName = getString(mBuffer.getInt(position));
+        int typeCount = mBuffer.getInt(position + 4);
+        position += 8;
+        for (int j = 0; j < typeCount; j++, position += 12) {
+          String typeName = getString(mBuffer.getInt(position));
+          int sectionStart = mBuffer.getInt(position + 4);
+          int count = mBuffer.getInt(position + 8);
+          for (int k = 0; k < count; k++) {
+            int entry = sectionStart + k * ENTRY_SIZE;
+            visitor.visitRes(packageName, typeName, getString(mBuffer.getInt(entry)), getString(mBuffer.getInt(entry + 4)));
+          }
+        }
+      }
+    } catch (IndexOutOfBoundsException | BufferUnderflowException e) {
+      throw new IOException("the binary mapping file is truncated", e);
+    }
+  }
+
+  private String getString(int id) {
+    String value = mStrings[id];
+    if (value == null) {
+      int start = mStringDataStart + mBuffer.getInt(mStringOffsetsStart + id * 4);
+      int end = mStringDataStart + mBuffer.getInt(mStringOffsetsStart + (id + 1) * 4);
+      byte[] bytes = new byte[end - start];
+      ByteBuffer duplicate = mBuffer.duplicate();
+      duplicate.position(start);
+      duplicate.get(bytes);
+      value = new String(bytes, StandardCharsets.UTF_8);
+      mStrings[id] = value;
+    }
+    return value;
+  }
+
+  private boolean equalsString(int id, byte[] bytes) {
+    return compareString(id, bytes) == 0;
+  }
+
+  /**
+   * 直接比较 mmap 中的 UTF-8 字节，不需要解码
+   */
+  private int compareString(int id, byte[] bytes) {
+    int start = mStringDataStart + mBuffer.getInt(mStringOffsetsStart + id * 4);
+    int end = mStringDataStart + mBuffer.getInt(mStringOffsetsStart + (id + 1) * 4);
+    return -compare(bytes, null, start, end, mBuffer);
+  }
+
+  /**
+   * 按无符号字节比较 a 和 b，b 是数组 other 或者 buffer 中 [start, end) 的一段
+   */
+  private static int compare(byte[] a, byte[] other, int start, int end, ByteBuffer buffer) {
+    int length = end - start;
+    int min = Math.min(a.length, length);
+    for (int i = 0; i < min; i++) {
+      int x = a[i] & 0xff;
+      int y = (other != null ? other[start + i] : buffer.get(start + i)) & 0xff;
+      if (x != y) {
+        return x - y;
+      }
+    }
+    return a.length - length;
+  }
+
+  /**
+   * 文件在 open 的时候就已经关闭了，mmap 的内存由 gc 回收，这里不需要释放什么
+   */
+  @Override
+  public void close() {
+  }
+
+  /**
+   * 生成文本格式，和 ARSCDecoder 输出的 resource_mapping 一致
+   */
+  public static final class TextWriter implements Visitor, Closeable {
+    private final Writer mWriter;
+    private boolean mResStarted;
+
+    public TextWriter(File file) throws IOException {
+      mWriter = new BufferedWriter(new FileWriter(file, false));
+      mWriter.write(FILE_MAPPING_HEADER + "\n");
+    }
+
+    @Override
+    public void visitFile(String raw, String result) throws IOException {
+      mWriter.write("    " + raw + " -> " + result + "\n");
+    }
+
+    @Override
+    public void visitRes(String packageName, String typeName, String name, String replace) throws IOException {
+      startResMapping();
+      String prefix = packageName + ".R." + typeName + ".";
+      mWriter.write("    " + prefix + name + " -> " + prefix + replace + "\n");
+    }
+
+    private void startResMapping() throws IOException {
+      if (!mResStarted) {
+        mResStarted = true;
+        mWriter.write("\n\n" + RES_MAPPING_HEADER + "\n");
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      startResMapping();
+      mWriter.close();
+    }
+  }
+
+  /**
+   * 生成二进制格式，先在内存中收集所有的对应关系，{@link #write(File)} 时排序并一次性写出
+   * <p>
+   * 同一个原名字出现多次时以最后一次为准，和解析文本格式到 HashMap 的结果一致
+   */
+  public static final class BinaryWriter implements Visitor {
+    private final Map<String, Integer> mStringIds = new HashMap<>();
+    private final List<byte[]> mStrings = new ArrayList<>();
+    private final LinkedHashMap<String, String> mFileMapping = new LinkedHashMap<>();
+    private final LinkedHashMap<String, LinkedHashMap<String, LinkedHashMap<String, String>>> mResMapping =
+        new LinkedHashMap<>();
+
+    @Override
+    public void visitFile(String raw, String result) {
+      mFileMapping.put(raw, result);
+    }
+
+    @Override
+    public void visitRes(String packageName, String typeName, String name, String replace) {
+      LinkedHashMap<String, LinkedHashMap<String, String>> types = mResMapping.get(packageName);
+      if (types == null) {
+        types = new LinkedHashMap<>();
+        mResMapping.put(packageName, types);
+      }
+      LinkedHashMap<String, String> names = types.get(typeName);
+      if (names == null) {
+        names = new LinkedHashMap<>();
+        types.put(typeName, names);
+      }
+      names.put(name, replace);
+    }
+
+    public void write(File file) throws IOException {
+      //先给所有字符串分配 id，才能算出各部分的位置
+      int[] fileEntries = new int[mFileMapping.size() * 2];
+      int index = 0;
+      for (Map.Entry<String, String> entry : mFileMapping.entrySet()) {
+        fileEntries[index++] = stringId(entry.getKey());
+        fileEntries[index++] = stringId(entry.getValue());
+      }
+      int packageIndexSize = 0;
+      List<int[]> sections = new ArrayList<>();
+      List<int[]> packages = new ArrayList<>();
+      for (Map.Entry<String, LinkedHashMap<String, LinkedHashMap<String, String>>> packageEntry
+          : mResMapping.entrySet()) {
+        int[] types = new int[1 + packageEntry.getValue().size()];
+        types[0] = stringId(packageEntry.getKey());
+        int typeIndex = 1;
+        for (Map.Entry<String, LinkedHashMap<String, String>> typeEntry : packageEntry.getValue().entrySet()) {
+          types[typeIndex++] = stringId(typeEntry.getKey());
+          sections.add(sortedSection(typeEntry.getValue()));
+        }
+        packages.add(types);
+        packageIndexSize += 8 + (types.length - 1) * 12;
+      }
+
+      int stringDataSize = 0;
+      for (byte[] bytes : mStrings) {
+        stringDataSize += bytes.length;
+      }
+      int stringTableStart = HEADER_SIZE;
+      int fileMappingStart = stringTableStart + (mStrings.size() + 1) * 4 + stringDataSize;
+      int packageIndexStart = fileMappingStart + fileEntries.length * 4;
+      int sectionStart = packageIndexStart + packageIndexSize;
+
+      try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(stringTableStart);
+        out.writeInt(mStrings.size());
+        out.writeInt(fileMappingStart);
+        out.writeInt(mFileMapping.size());
+        out.writeInt(packageIndexStart);
+        out.writeInt(packages.size());
+
+        int offset = 0;
+        for (byte[] bytes : mStrings) {
+          out.writeInt(offset);
+          offset += bytes.length;
+        }
+        out.writeInt(offset);
+        for (byte[] bytes : mStrings) {
+          out.write(bytes);
+        }
+
+        for (int id : fileEntries) {
+          out.writeInt(id);
+        }
+
+        int sectionIndex = 0;
+        int sectionOffset = sectionStart;
+        for (int[] types : packages) {
+          out.writeInt(types[0]);
+          out.writeInt(types.length - 1);
+          for (int i = 1; i < types.length; i++) {
+            int[] section = sections.get(sectionIndex++);
+            out.writeInt(types[i]);
+            out.writeInt(sectionOffset);
+            out.writeInt(section.length / 2);
+            sectionOffset += section.length * 4;
+          }
+        }
+
+        for (int[] section : sections) {
+          for (int id : section) {
+            out.writeInt(id);
+          }
+        }
+      }
+    }
+
+    private int[] sortedSection(Map<String, String> names) {
+      String[] keys = names.keySet().toArray(new String[0]);
+      final byte[][] keyBytes = new byte[keys.length][];
+      Integer[] order = new Integer[keys.length];
+      for (int i = 0; i < keys.length; i++) {
+        keyBytes[i] = keys[i].getBytes(StandardCharsets.UTF_8);
+        order[i] = i;
+      }
+      Arrays.sort(order, (a, b) -> UTF8_ORDER.compare(keyBytes[a], keyBytes[b]));
+      int[] section = new int[keys.length * 2];
+      for (int i = 0; i < order.length; i++) {
+        section[i * 2] = stringId(keys[order[i]]);
+        section[i * 2 + 1] = stringId(names.get(keys[order[i]]));
+      }
+      return section;
+    }
+
+    private int stringId(String value) {
+      Integer id = mStringIds.get(value);
+      if (id == null) {
+        id = mStrings.size();
+        mStringIds.put(value, id);
+        mStrings.add(value.getBytes(StandardCharsets.UTF_8));
+      }
+      return id;
+    }
+  }
+}
@@ -4,6 +4,7 @@ package com.tencent.mm.util;
 import org.apache.commons.io.FileUtils;
 
 import java.io.File;
+import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 
@@ -38,6 +39,21 @@ public class Md5Util {
         return bytesToHexString(digest.digest());
     }
 
+    public static String getMD5Str(InputStream in) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("MD5");
+            byte[] buffer = new byte[8192];
+            int length;
+            while ((length = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, length);
+            }
+        } catch (Exception e) {
+            return "";
+        }
+        return bytesToHexString(digest.digest());
+    }
+
     public static String bytesToHexString(byte[] src) {
         if (src.length <= 0) {
             return "";
@@ -0,0 +1,95 @@
+package com.tencent.mm.util;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 把文件拷贝交给后台的 io 线程去做，调用方（解析 arsc 的线程）只负责提交任务
+ * 队列是有界的，队列满了之后由提交的线程自己拷贝，避免任务堆积
+ * 所有任务要在 {@link #await()} 之后才保证已经写完
+ */
+public class ParallelFileCopier implements Closeable {
+  private static final int QUEUE_SIZE = 256;
+
+  private final FileCopyStrategy mStrategy;
+  private final ThreadPoolExecutor mExecutor;
+  private final List<Future<?>> mFutures = new ArrayList<>();
+  //已经创建过的目录，只在提交的线程中访问
+  private final Set<File> mCreatedDirs = new HashSet<>();
+
+  public ParallelFileCopier(FileCopyStrategy strategy, int threadCount) {
+    mStrategy = strategy;
+    AtomicInteger index = new AtomicInteger();
+    mExecutor = new ThreadPoolExecutor(threadCount,
+        threadCount,
+        0L,
+        TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<Runnable>(QUEUE_SIZE),
+        runnable -> {
+          Thread thread = new Thread(runnable, "res-copy-" + index.incrementAndGet());
+          thread.setDaemon(true);
+          return thread;
+        },
+        new ThreadPoolExecutor.CallerRunsPolicy()
+    );
+  }
+
+  /**
+   * io 线程数，拷贝基本是在等磁盘，可以比 cpu 核数多一些
+   */
+  public static int defaultThreadCount() {
+    return Math.max(2, Runtime.getRuntime().availableProcessors());
+  }
+
+  public void copy(File source, File dest) {
+    //目录在提交的时候就创建好，避免多个线程同时 mkdirs 同一个目录
+    File parent = dest.getParentFile();
+    if (parent != null && mCreatedDirs.add(parent) && !parent.exists()) {
+      parent.mkdirs();
+    }
+    mFutures.add(mExecutor.submit(() -> {
+      mStrategy.copy(source, dest);
+      return null;
+    }));
+  }
+
+  /**
+   * 等待已经提交的拷贝全部完成，有失败的话抛出第一个异常
+   */
+  public void await() throws IOException {
+    IOException failure = null;
+    for (Future<?> future : mFutures) {
+      try {
+        future.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException("interrupted while copying res files", e);
+      } catch (ExecutionException e) {
+        if (failure == null) {
+          Throwable cause = e.getCause();
+          failure = cause instanceof IOException ? (IOException) cause : new IOException(cause);
+        }
+      }
+    }
+    mFutures.clear();
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+  @Override
+  public void close() {
+    mExecutor.shutdownNow();
+  }
+}
@@ -0,0 +1,195 @@
+package com.tencent.mm.util;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 记录一次混淆中每个阶段的耗时和计数，最后可以输出成 json 报告
+ * <p>
+ * cpu 时间和分配的内存只统计开始这个阶段的线程，后台拷贝线程和并行压缩线程的开销不计算在内
+ * <p>
+ * 每个阶段同时也会作为 {@link JfrEvents#STAGE} 事件写到 jfr 中
+ */
+public class PhaseMetrics {
+  public static final String DECODE_APK = "decodeApk";
+  public static final String UNZIP = "unzip";
+  public static final String RAW_DECODE = "rawDecode";
+  public static final String MERGE_DUPLICATED = "mergeDuplicated";
+  public static final String DECODE = "decode";
+  public static final String COPY = "copy";
+  public static final String WRITE_ARSC = "writeArsc";
+  public static final String ZIP = "zip";
+  public static final String SEVEN_ZIP = "7z";
+  public static final String ZIPALIGN = "zipalign";
+  public static final String SIGN = "sign";
+
+  private static final ThreadMXBean THREAD_BEAN = ManagementFactory.getThreadMXBean();
+
+  private final String mApkName;
+  private final long mBeginNanos = System.nanoTime();
+  private final List<Phase> mPhases = Collections.synchronizedList(new ArrayList<Phase>());
+
+  public PhaseMetrics() {
+    this("");
+  }
+
+  public PhaseMetrics(String apkName) {
+    mApkName = apkName;
+  }
+
+  public String getApkName() {
+    return mApkName;
+  }
+
+  /**
+   * 开始一个阶段，配合 try-with-resources 使用，close 的时候结束计时
+   */
+  public Phase start(String name) {
+    Phase phase = new Phase(mApkName, name);
+    mPhases.add(phase);
+    return phase;
+  }
+
+  public List<Phase> getPhases() {
+    synchronized (mPhases) {
+      return new ArrayList<>(mPhases);
+    }
+  }
+
+  public void writeJson(File file, long rawApkSize) throws IOException {
+    try (Writer writer = new OutputStreamWriter(new FileOutputStream(file, false), StandardCharsets.UTF_8)) {
+      writer.write("{\n");
+      writer.write(String.format("  \"apk\": \"%s\",\n", escape(mApkName)));
+      writer.write(String.format("  \"rawApkSize\": %d,\n", rawApkSize));
+      writer.write(String.format("  \"totalWallMs\": %.3f,\n", (System.nanoTime() - mBeginNanos) / 1e6));
+      writer.write("  \"phases\": [");
+      List<Phase> phases = getPhases();
+      for (int i = 0; i < phases.size(); i++) {
+        Phase phase = phases.get(i);
+        writer.write(i == 0 ? "\n" : ",\n");
+        writer.write(String.format(
+            "    {\"name\": \"%s\", \"wallMs\": %.3f, \"cpuMs\": %.3f, \"allocatedBytes\": %d, "
+            + "\"bytesRead\": %d, \"bytesWritten\": %d, \"entries\": %d}",
+            escape(phase.mName),
+            phase.getWallNanos() / 1e6,
+            phase.getCpuNanos() / 1e6,
+            phase.getAllocatedBytes(),
+            phase.mBytesRead.get(),
+            phase.mBytesWritten.get(),
+            phase.mEntries.get()
+        ));
+      }
+      writer.write("\n  ]\n}\n");
+    }
+  }
+
+  private static String escape(String value) {
+    StringBuilder builder = new StringBuilder(value.length());
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c == '"' || c == '\\') {
+        builder.append('\\').append(c);
+      } else if (c < 0x20) {
+        builder.append(String.format("\\u%04x", (int) c));
+      } else {
+        builder.append(c);
+      }
+    }
+    return builder.toString();
+  }
+
+  private static long currentThreadCpuTime() {
+    return THREAD_BEAN.isCurrentThreadCpuTimeSupported() ? THREAD_BEAN.getCurrentThreadCpuTime() : -1;
+  }
+
+  private static long currentThreadAllocatedBytes() {
+    if (THREAD_BEAN instanceof com.sun.management.ThreadMXBean) {
+      com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) THREAD_BEAN;
+      if (bean.isThreadAllocatedMemorySupported() && bean.isThreadAllocatedMemoryEnabled()) {
+        return bean.getThreadAllocatedBytes(Thread.currentThread().getId());
+      }
+    }
+    return -1;
+  }
+
+  public static class Phase implements AutoCloseable {
+    private final String mApkName;
+    private final String mName;
+    private final JfrEvents.Handle mEvent;
+    private final long mStartNanos;
+    private final long mStartCpu;
+    private final long mStartAllocated;
+    private final AtomicLong mBytesRead = new AtomicLong();
+    private final AtomicLong mBytesWritten = new AtomicLong();
+    private final AtomicLong mEntries = new AtomicLong();
+    private long mWallNanos = -1;
+    private long mCpuNanos = -1;
+    private long mAllocatedBytes = -1;
+
+    private Phase(String apkName, String name) {
+      mApkName = apkName;
+      mName = name;
+      mEvent = JfrEvents.begin(JfrEvents.STAGE);
+      mStartNanos = System.nanoTime();
+      mStartCpu = currentThreadCpuTime();
+      mStartAllocated = currentThreadAllocatedBytes();
+    }
+
+    public String getName() {
+      return mName;
+    }
+
+    public Phase addBytesRead(long bytes) {
+      mBytesRead.addAndGet(bytes);
+      return this;
+    }
+
+    public Phase addBytesWritten(long bytes) {
+      mBytesWritten.addAndGet(bytes);
+      return this;
+    }
+
+    public Phase addEntries(long count) {
+      mEntries.addAndGet(count);
+      return this;
+    }
+
+    /**
+     * @return 还没结束的阶段返回 -1
+     */
+    public long getWallNanos() {
+      return mWallNanos;
+    }
+
+    public long getCpuNanos() {
+      return mCpuNanos;
+    }
+
+    public long getAllocatedBytes() {
+      return mAllocatedBytes;
+    }
+
+    @Override
+    public void close() {
+      if (mWallNanos >= 0) {
+        return;
+      }
+      mWallNanos = System.nanoTime() - mStartNanos;
+      long cpu = currentThreadCpuTime();
+      mCpuNanos = cpu >= 0 && mStartCpu >= 0 ? cpu - mStartCpu : -1;
+      long allocated = currentThreadAllocatedBytes();
+      mAllocatedBytes = allocated >= 0 && mStartAllocated >= 0 ? allocated - mStartAllocated : -1;
+      mEvent.commit(mApkName, mName, mEntries.get(), mBytesRead.get(), mBytesWritten.get());
+    }
+  }
+}
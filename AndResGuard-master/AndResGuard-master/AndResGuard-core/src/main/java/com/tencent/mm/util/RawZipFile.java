@@ -0,0 +1,206 @@
+package com.tencent.mm.util;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+/**
+ * 只解析zip的central directory，用来把entry压缩后的数据原样拷贝到新的zip中，不需要先解压再压缩
+ * 不支持zip64，apk一般也不会用到
+ */
+public class RawZipFile implements Closeable {
+  private static final int BUFFER = 8192;
+
+  private static final int LOCSIG = 0x04034b50;
+  private static final int CENSIG = 0x02014b50;
+  private static final int ENDSIG = 0x06054b50;
+  private static final int LOCHDR = 30;
+  private static final int CENHDR = 46;
+  private static final int ENDHDR = 22;
+  private static final int MAX_COMMENT_LEN = 0xFFFF;
+
+  private final File mFile;
+  private final RandomAccessFile mRaf;
+  //entry名（linux的斜杠） 和 entry 的对应关系，按central directory的顺序
+  private final LinkedHashMap<String, Entry> mEntries = new LinkedHashMap<>();
+
+  public RawZipFile(File file) throws IOException {
+    mFile = file;
+    mRaf = new RandomAccessFile(file, "r");
+    try {
+      readCentralDirectory();
+    } catch (IOException e) {
+      mRaf.close();
+      throw e;
+    }
+  }
+
+  public Entry getEntry(String name) {
+    return mEntries.get(name);
+  }
+
+  public Collection<Entry> entries() {
+    return mEntries.values();
+  }
+
+  /**
+   * 把entry压缩后的数据原样写到out中
+   */
+  public void copyRawData(Entry entry, OutputStream out) throws IOException {
+    mRaf.seek(getDataOffset(entry));
+    byte[] buffer = new byte[BUFFER];
+    long remain = entry.compressedSize;
+    while (remain > 0) {
+      int length = mRaf.read(buffer, 0, (int) Math.min(buffer.length, remain));
+      if (length == -1) {
+        throw new ZipException(String.format("unexpected end of entry %s in %s", entry.name, mFile));
+      }
+      out.write(buffer, 0, length);
+      remain -= length;
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    mRaf.close();
+  }
+
+  private long getDataOffset(Entry entry) throws IOException {
+    if (entry.dataOffset == -1) {
+      byte[] header = new byte[LOCHDR];
+      mRaf.seek(entry.localHeaderOffset);
+      mRaf.readFully(header);
+      ByteBuffer buffer = ByteBuffer.wrap(header).order(ByteOrder.LITTLE_ENDIAN);
+      if (buffer.getInt(0) != LOCSIG) {
+        throw new ZipException(String.format("invalid local header of entry %s in %s", entry.name, mFile));
+      }
+      int nameLength = buffer.getShort(26) & 0xFFFF;
+      int extraLength = buffer.getShort(28) & 0xFFFF;
+      entry.dataOffset = entry.localHeaderOffset + LOCHDR + nameLength + extraLength;
+    }
+    return entry.dataOffset;
+  }
+
+  private void readCentralDirectory() throws IOException {
+    long fileLength = mRaf.length();
+    if (fileLength < ENDHDR) {
+      throw new ZipException(String.format("zip file is too small, path=%s", mFile));
+    }
+    //end of central directory 后面可能跟着comment，需要从后往前找
+    int tailLength = (int) Math.min(fileLength, ENDHDR + MAX_COMMENT_LEN);
+    byte[] tail = new byte[tailLength];
+    mRaf.seek(fileLength - tailLength);
+    mRaf.readFully(tail);
+    ByteBuffer tailBuffer = ByteBuffer.wrap(tail).order(ByteOrder.LITTLE_ENDIAN);
+    int endPos = -1;
+    for (int i = tailLength - ENDHDR; i >= 0; i--) {
+      if (tailBuffer.getInt(i) == ENDSIG) {
+        endPos = i;
+        break;
+      }
+    }
+    if (endPos == -1) {
+      throw new ZipException(String.format("can not found the end of central directory, path=%s", mFile));
+    }
+    int entryCount = tailBuffer.getShort(endPos + 10) & 0xFFFF;
+    long cenSize = tailBuffer.getInt(endPos + 12) & 0xFFFFFFFFL;
+    long cenOffset = tailBuffer.getInt(endPos + 16) & 0xFFFFFFFFL;
+    if (entryCount == 0xFFFF || cenSize == 0xFFFFFFFFL || cenOffset == 0xFFFFFFFFL) {
+      throw new ZipException(String.format("zip64 is not supported, path=%s", mFile));
+    }
+    if (cenOffset + cenSize > fileLength) {
+      throw new ZipException(String.format("invalid central directory, path=%s", mFile));
+    }
+
+    byte[] cen = new byte[(int) cenSize];
+    mRaf.seek(cenOffset);
+    mRaf.readFully(cen);
+    ByteBuffer buffer = ByteBuffer.wrap(cen).order(ByteOrder.LITTLE_ENDIAN);
+    int pos = 0;
+    for (int i = 0; i < entryCount; i++) {
+      if (pos + CENHDR > cen.length || buffer.getInt(pos) != CENSIG) {
+        throw new ZipException(String.format("invalid central directory header, path=%s", mFile));
+      }
+      Entry entry = new Entry();
+      entry.flags = buffer.getShort(pos + 8) & 0xFFFF;
+      entry.method = buffer.getShort(pos + 10) & 0xFFFF;
+      entry.dosTime = buffer.getInt(pos + 12);
+      entry.crc = buffer.getInt(pos + 16) & 0xFFFFFFFFL;
+      entry.compressedSize = buffer.getInt(pos + 20) & 0xFFFFFFFFL;
+      entry.size = buffer.getInt(pos + 24) & 0xFFFFFFFFL;
+      int nameLength = buffer.getShort(pos + 28) & 0xFFFF;
+      int extraLength = buffer.getShort(pos + 30) & 0xFFFF;
+      int commentLength = buffer.getShort(pos + 32) & 0xFFFF;
+      entry.localHeaderOffset = buffer.getInt(pos + 42) & 0xFFFFFFFFL;
+      //要用linux的斜杠
+      entry.name = new String(cen, pos + CENHDR, nameLength, StandardCharsets.UTF_8).replace("\\", "/");
+      if (!mEntries.containsKey(entry.name)) {
+        mEntries.put(entry.name, entry);
+      }
+      pos += CENHDR + nameLength + extraLength + commentLength;
+    }
+  }
+
+  public static class Entry {
+    private String name;
+    private int flags;
+    private int method;
+    private int dosTime;
+    private long crc;
+    private long compressedSize;
+    private long size;
+    private long localHeaderOffset;
+    private long dataOffset = -1;
+
+    public String getName() {
+      return name;
+    }
+
+    public int getFlags() {
+      return flags;
+    }
+
+    public int getMethod() {
+      return method;
+    }
+
+    public int getDosTime() {
+      return dosTime;
+    }
+
+    public long getCrc() {
+      return crc;
+    }
+
+    public long getCompressedSize() {
+      return compressedSize;
+    }
+
+    public long getSize() {
+      return size;
+    }
+
+    public boolean isDirectory() {
+      return name.endsWith("/");
+    }
+
+    /**
+     * 压缩方式相同并且没有加密的entry，才可以把压缩后的数据原样拷贝过去
+     */
+    public boolean canCopyRaw(int compressMethod) {
+      if ((flags & 1) != 0 || method != compressMethod) {
+        return false;
+      }
+      return method == ZipEntry.STORED || method == ZipEntry.DEFLATED;
+    }
+  }
+}
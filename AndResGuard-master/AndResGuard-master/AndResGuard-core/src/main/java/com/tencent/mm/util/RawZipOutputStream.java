@@ -0,0 +1,457 @@
+package com.tencent.mm.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+/**
+ * 和ZipOutputStream类似，但是可以把原zip中entry压缩后的数据、crc和大小原样写进来，
+ * 只有压缩方式改变的entry才需要重新压缩。所有entry都在写local header之前确定好crc和大小，所以不需要data descriptor
+ *
+ * 需要重新压缩的entry会放到ForkJoinPool中并行压缩，很大的entry会像pigz一样切成多个block并行压缩，
+ * 再由单独的写线程按put的顺序写出，所以输出的内容和线程数无关
+ *
+ * compressEffort大于0时用 {@link ZopfliDeflater} 代替 Deflater，压缩率更高但是慢很多
+ */
+public class RawZipOutputStream implements Closeable {
+  private static final int BUFFER = 8192;
+
+  private static final int LOCSIG = 0x04034b50;
+  private static final int CENSIG = 0x02014b50;
+  private static final int ENDSIG = 0x06054b50;
+  //名字用utf-8编码，和ZipOutputStream一致
+  private static final int FLAG_EFS = 0x0800;
+  //deflate的压缩级别标记，原样拷贝时需要保留
+  private static final int FLAG_DEFLATE_OPTIONS = 0x0006;
+
+  //超过这个大小的entry切成block并行压缩
+  private static final int BLOCK_SPLIT_THRESHOLD = 1024 * 1024;
+  private static final int BLOCK_SIZE = 128 * 1024;
+  //ZopfliDeflater比较慢，切得大一点对压缩率的影响更小
+  private static final int ZOPFLI_BLOCK_SIZE = 1024 * 1024;
+  //deflate的窗口大小，每个block用前一个block的最后32k作为字典
+  private static final int DICT_SIZE = 32 * 1024;
+
+  private static final EntryRecord END = new EntryRecord("", ZipEntry.STORED);
+
+  private final OutputStream mOut;
+  private final List<EntryRecord> mRecords = new ArrayList<>();
+  private final HashSet<String> mNames = new HashSet<>();
+  private final ForkJoinPool mPool;
+  private final int mCompressEffort;
+  //限制还没写出的entry数量，避免把所有文件内容都留在内存里
+  private final BlockingQueue<EntryRecord> mPending;
+  private final Thread mWriterThread;
+  private volatile IOException mWriteError;
+  private long mWritten = 0;
+  private boolean mClosed = false;
+
+  public RawZipOutputStream(OutputStream out) {
+    this(out, Runtime.getRuntime().availableProcessors());
+  }
+
+  public RawZipOutputStream(OutputStream out, int parallelism) {
+    this(out, parallelism, 0);
+  }
+
+  /**
+   * @param compressEffort 大于0时使用 {@link ZopfliDeflater} 压缩，值为迭代次数
+   */
+  public RawZipOutputStream(OutputStream out, int parallelism, int compressEffort) {
+    mOut = out;
+    mCompressEffort = compressEffort;
+    mPool = new ForkJoinPool(Math.max(1, parallelism));
+    mPending = new ArrayBlockingQueue<>(Math.max(1, parallelism) * 4);
+    mWriterThread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        writeLoop();
+      }
+    }, "AndResGuard-zip-writer");
+    mWriterThread.setDaemon(true);
+    mWriterThread.start();
+  }
+
+  /**
+   * 把原zip中entry压缩后的数据原样写入，调用前需要确认 rawEntry.canCopyRaw
+   */
+  public void putRawEntry(String name, RawZipFile rawZipFile, RawZipFile.Entry rawEntry) throws IOException {
+    EntryRecord record = new EntryRecord(name, rawEntry.getMethod());
+    if (rawEntry.getMethod() == ZipEntry.DEFLATED) {
+      record.flags |= rawEntry.getFlags() & FLAG_DEFLATE_OPTIONS;
+    }
+    record.dosTime = rawEntry.getDosTime();
+    record.crc = rawEntry.getCrc();
+    record.compressedSize = rawEntry.getCompressedSize();
+    record.size = rawEntry.getSize();
+    record.rawZipFile = rawZipFile;
+    record.rawEntry = rawEntry;
+    enqueue(record);
+  }
+
+  /**
+   * 读取in中的全部内容，并按 compressMethod 重新压缩后写入
+   */
+  public void putEntry(String name, int compressMethod, InputStream in) throws IOException {
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    byte[] buffer = new byte[BUFFER];
+    int length;
+    while ((length = in.read(buffer)) != -1) {
+      output.write(buffer, 0, length);
+    }
+    putEntry(name, compressMethod, output.toByteArray());
+  }
+
+  public void putEntry(String name, int compressMethod, byte[] contents) throws IOException {
+    EntryRecord record = new EntryRecord(name, compressMethod == ZipEntry.DEFLATED ? ZipEntry.DEFLATED : ZipEntry.STORED);
+    record.dosTime = currentDosTime();
+    record.size = contents.length;
+    record.compressTask = mPool.submit(new CompressTask(record, contents, mCompressEffort));
+    enqueue(record);
+  }
+
+  /**
+   * @return 已经 put 的 entry 个数
+   */
+  public int getEntryCount() {
+    return mRecords.size();
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (mClosed) {
+      return;
+    }
+    mClosed = true;
+    try {
+      putPending(END);
+      try {
+        mWriterThread.join();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException("interrupted while waiting for the zip writer", e);
+      }
+      checkWriteError();
+
+      long cenOffset = mWritten;
+      for (EntryRecord record : mRecords) {
+        writeCentralHeader(record);
+      }
+      long cenSize = mWritten - cenOffset;
+      if (mRecords.size() > 0xFFFF || cenOffset > 0xFFFFFFFFL || cenSize > 0xFFFFFFFFL) {
+        throw new ZipException("zip64 is not supported, too many entries or the zip file is too large");
+      }
+      writeInt(ENDSIG);
+      writeShort(0);
+      writeShort(0);
+      writeShort(mRecords.size());
+      writeShort(mRecords.size());
+      writeInt(cenSize);
+      writeInt(cenOffset);
+      writeShort(0);
+      mOut.flush();
+    } finally {
+      mPool.shutdownNow();
+      mOut.close();
+    }
+  }
+
+  private void enqueue(EntryRecord record) throws IOException {
+    checkWriteError();
+    if (!mNames.add(record.name)) {
+      throw new ZipException("duplicate entry: " + record.name);
+    }
+    mRecords.add(record);
+    putPending(record);
+  }
+
+  private void putPending(EntryRecord record) throws IOException {
+    try {
+      mPending.put(record);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("interrupted while writing zip entry " + record.name, e);
+    }
+  }
+
+  private void checkWriteError() throws IOException {
+    if (mWriteError != null) {
+      throw mWriteError;
+    }
+  }
+
+  /**
+   * 写线程，按put的顺序等待每个entry压缩完成后写出；出错之后只继续取出剩下的entry，避免put的线程被阻塞
+   */
+  private void writeLoop() {
+    while (true) {
+      EntryRecord record;
+      try {
+        record = mPending.take();
+      } catch (InterruptedException e) {
+        mWriteError = new IOException("zip writer is interrupted", e);
+        return;
+      }
+      if (record == END) {
+        return;
+      }
+      if (mWriteError != null) {
+        continue;
+      }
+      try {
+        writeEntry(record);
+      } catch (IOException e) {
+        mWriteError = e;
+      } catch (RuntimeException e) {
+        mWriteError = new IOException(String.format("write zip entry %s failed", record.name), e);
+      }
+    }
+  }
+
+  private void writeEntry(EntryRecord record) throws IOException {
+    if (record.compressTask != null) {
+      record.compressTask.join();
+    }
+    writeLocalHeader(record);
+    if (record.rawEntry != null) {
+      record.rawZipFile.copyRawData(record.rawEntry, new OutputStream() {
+        @Override
+        public void write(int b) throws IOException {
+          mOut.write(b);
+          mWritten++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+          mOut.write(b, off, len);
+          mWritten += len;
+        }
+      });
+    } else {
+      writeBytes(record.data);
+      record.data = null;
+    }
+  }
+
+  private void writeLocalHeader(EntryRecord record) throws IOException {
+    if (record.compressedSize > 0xFFFFFFFFL || record.size > 0xFFFFFFFFL || mWritten > 0xFFFFFFFFL) {
+      throw new ZipException(String.format("zip64 is not supported, entry=%s", record.name));
+    }
+    record.localHeaderOffset = mWritten;
+    writeInt(LOCSIG);
+    writeShort(record.version());
+    writeShort(record.flags);
+    writeShort(record.method);
+    writeInt(record.dosTime);
+    writeInt(record.crc);
+    writeInt(record.compressedSize);
+    writeInt(record.size);
+    writeShort(record.nameBytes.length);
+    writeShort(0);
+    writeBytes(record.nameBytes);
+  }
+
+  private void writeCentralHeader(EntryRecord record) throws IOException {
+    writeInt(CENSIG);
+    writeShort(record.version());
+    writeShort(record.version());
+    writeShort(record.flags);
+    writeShort(record.method);
+    writeInt(record.dosTime);
+    writeInt(record.crc);
+    writeInt(record.compressedSize);
+    writeInt(record.size);
+    writeShort(record.nameBytes.length);
+    writeShort(0);
+    writeShort(0);
+    writeShort(0);
+    writeShort(0);
+    writeInt(0);
+    writeInt(record.localHeaderOffset);
+    writeBytes(record.nameBytes);
+  }
+
+  private void writeShort(int v) throws IOException {
+    mOut.write(v & 0xFF);
+    mOut.write((v >>> 8) & 0xFF);
+    mWritten += 2;
+  }
+
+  private void writeInt(long v) throws IOException {
+    mOut.write((int) (v & 0xFF));
+    mOut.write((int) ((v >>> 8) & 0xFF));
+    mOut.write((int) ((v >>> 16) & 0xFF));
+    mOut.write((int) ((v >>> 24) & 0xFF));
+    mWritten += 4;
+  }
+
+  private void writeBytes(byte[] b) throws IOException {
+    mOut.write(b);
+    mWritten += b.length;
+  }
+
+  private static int currentDosTime() {
+    Calendar calendar = Calendar.getInstance();
+    int year = calendar.get(Calendar.YEAR);
+    if (year < 1980) {
+      return (1 << 21) | (1 << 16);
+    }
+    return (year - 1980) << 25
+           | (calendar.get(Calendar.MONTH) + 1) << 21
+           | calendar.get(Calendar.DAY_OF_MONTH) << 16
+           | calendar.get(Calendar.HOUR_OF_DAY) << 11
+           | calendar.get(Calendar.MINUTE) << 5
+           | calendar.get(Calendar.SECOND) >> 1;
+  }
+
+  /**
+   * 用raw deflate压缩 contents[off, off + len)，dictLen>0时用前面的dictLen个字节作为字典，
+   * 不是最后一个block时用SYNC_FLUSH结束，这样多个block的结果可以直接拼接成一个deflate流
+   */
+  private static byte[] deflate(byte[] contents, int off, int len, int dictLen, boolean last, int effort) {
+    if (effort > 0) {
+      return ZopfliDeflater.compress(contents, off, len, dictLen, last, effort);
+    }
+    ByteArrayOutputStream output = new ByteArrayOutputStream(len / 2 + 64);
+    Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+    try {
+      if (dictLen > 0) {
+        deflater.setDictionary(contents, off - dictLen, dictLen);
+      }
+      deflater.setInput(contents, off, len);
+      byte[] buffer = new byte[BUFFER];
+      if (last) {
+        deflater.finish();
+        while (!deflater.finished()) {
+          int length = deflater.deflate(buffer);
+          output.write(buffer, 0, length);
+        }
+      } else {
+        int length;
+        do {
+          length = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+          output.write(buffer, 0, length);
+        } while (length == buffer.length);
+      }
+    } finally {
+      deflater.end();
+    }
+    return output.toByteArray();
+  }
+
+  private static class CompressTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private final EntryRecord record;
+    private final byte[] contents;
+    private final int effort;
+
+    CompressTask(EntryRecord record, byte[] contents, int effort) {
+      this.record = record;
+      this.contents = contents;
+      this.effort = effort;
+    }
+
+    @Override
+    protected void compute() {
+      CRC32 checksumCalculator = new CRC32();
+      checksumCalculator.update(contents);
+      record.crc = checksumCalculator.getValue();
+      if (record.method != ZipEntry.DEFLATED) {
+        record.data = contents;
+      } else if (contents.length <= BLOCK_SPLIT_THRESHOLD) {
+        record.data = deflate(contents, 0, contents.length, 0, true, effort);
+      } else {
+        record.data = deflateBlocks();
+      }
+      record.compressedSize = record.data.length;
+    }
+
+    private byte[] deflateBlocks() {
+      int blockSize = effort > 0 ? ZOPFLI_BLOCK_SIZE : BLOCK_SIZE;
+      int blockCount = (contents.length + blockSize - 1) / blockSize;
+      List<BlockTask> blocks = new ArrayList<>(blockCount);
+      for (int i = 0; i < blockCount; i++) {
+        int off = i * blockSize;
+        int len = Math.min(blockSize, contents.length - off);
+        blocks.add(new BlockTask(contents, off, len, Math.min(DICT_SIZE, off), i == blockCount - 1, effort));
+      }
+      ForkJoinTask.invokeAll(blocks);
+      ByteArrayOutputStream output = new ByteArrayOutputStream(contents.length / 2 + 64);
+      for (BlockTask block : blocks) {
+        output.write(block.result, 0, block.result.length);
+      }
+      return output.toByteArray();
+    }
+  }
+
+  private static class BlockTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private final byte[] contents;
+    private final int off;
+    private final int len;
+    private final int dictLen;
+    private final boolean last;
+    private final int effort;
+    private byte[] result;
+
+    BlockTask(byte[] contents, int off, int len, int dictLen, boolean last, int effort) {
+      this.contents = contents;
+      this.off = off;
+      this.len = len;
+      this.dictLen = dictLen;
+      this.last = last;
+      this.effort = effort;
+    }
+
+    @Override
+    protected void compute() {
+      result = deflate(contents, off, len, dictLen, last, effort);
+    }
+  }
+
+  private static class EntryRecord {
+    final String name;
+    final byte[] nameBytes;
+    final int method;
+    int flags = FLAG_EFS;
+    int dosTime;
+    long crc;
+    long compressedSize;
+    long size;
+    long localHeaderOffset;
+    //需要重新压缩的entry
+    ForkJoinTask<?> compressTask;
+    byte[] data;
+    //原样拷贝的entry
+    RawZipFile rawZipFile;
+    RawZipFile.Entry rawEntry;
+
+    EntryRecord(String name, int method) {
+      this.name = name;
+      this.nameBytes = name.getBytes(StandardCharsets.UTF_8);
+      this.method = method;
+    }
+
+    int version() {
+      return method == ZipEntry.DEFLATED ? 20 : 10;
+    }
+  }
+}
@@ -40,6 +40,10 @@ public class TypedValue {
 
   public static final String MERGE_DUPLICATED_RES_MAPPING_FILE = "merge_duplicated_res_mapping_";
 
+  public static final String METRICS_FILE = "metrics_";
+
+  public static final String RESGUARD_MANIFEST_FILE = "resguard_manifest_";
+
   public static final int ZIP_STORED = ZipEntry.STORED;//基本不压缩
 
   public static final int ZIP_DEFLATED = ZipEntry.DEFLATED;//压缩
@@ -50,6 +54,10 @@ public class TypedValue {
 
   public static final String XML_FILE = ".xml";
 
+  public static final String BIN_FILE = ".bin";
+
+  public static final String JSON_FILE = ".json";
+
   public static final String CONFIG_FILE = "config.xml";
 
   /**
@@ -10,6 +10,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 import java.util.regex.Pattern;
@@ -58,9 +59,13 @@ public class Utils {
         }
     }
 
-    public static String runCmd(String... cmd) throws IOException, InterruptedException {
-        String output;
+    /**
+     * @param apkName 正在混淆的 apk，记录在 jfr 事件中，同时混淆多个 apk 时用来区分
+     */
+    public static String runCmd(String apkName, String... cmd) throws IOException, InterruptedException {
+        String output = null;
         Process process = null;
+        JfrEvents.Handle event = JfrEvents.begin(JfrEvents.COMMAND);
         try {
             process = new ProcessBuilder(cmd).start();
             output = StringUtil.readInputStream(process.getInputStream());
@@ -70,6 +75,7 @@ public class Utils {
                 throw new RuntimeException(StringUtil.readInputStream(process.getErrorStream()));
             }
         } finally {
+            commitCommandEvent(event, apkName, cmd, process, output);
             if (process != null) {
                 process.destroy();
             }
@@ -77,9 +83,10 @@ public class Utils {
         return output;
     }
 
-    public static String runExec(String[] argv) throws IOException, InterruptedException {
+    public static String runExec(String apkName, String[] argv) throws IOException, InterruptedException {
         Process process = null;
-        String output;
+        String output = null;
+        JfrEvents.Handle event = JfrEvents.begin(JfrEvents.COMMAND);
         try {
             process = Runtime.getRuntime().exec(argv);
             output = StringUtil.readInputStream(process.getInputStream());
@@ -89,6 +96,7 @@ public class Utils {
                 throw new RuntimeException(StringUtil.readInputStream(process.getErrorStream()));
             }
         } finally {
+            commitCommandEvent(event, apkName, argv, process, output);
             if (process != null) {
                 process.destroy();
             }
@@ -96,6 +104,37 @@ public class Utils {
         return output;
     }
 
+    private static void commitCommandEvent(
+            JfrEvents.Handle event, String apkName, String[] cmd, Process process, String output) {
+        if (!event.isEnabled()) {
+            return;
+        }
+        int exitCode = -1;
+        if (process != null && !process.isAlive()) {
+            exitCode = process.exitValue();
+        }
+        event.commit(apkName, describeCommand(cmd), exitCode, (long) (output == null ? 0 : output.length()));
+    }
+
+    /**
+     * jfr 录制的文件会被拿去分析，jarsigner 的 -storepass、-keypass 这类参数后面的密码不能明文写进去
+     */
+    private static String describeCommand(String[] cmd) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < cmd.length; i++) {
+            if (i > 0) {
+                builder.append(' ');
+            }
+            String previous = i > 0 ? cmd[i - 1] : null;
+            if (previous != null && previous.startsWith("-") && previous.toLowerCase(Locale.ENGLISH).contains("pass")) {
+                builder.append("***");
+            } else {
+                builder.append(cmd[i]);
+            }
+        }
+        return builder.toString();
+    }
+
     private static void processOutputStreamInThread(Process process) throws IOException {
         InputStreamReader ir = new InputStreamReader(process.getInputStream());
         LineNumberReader input = new LineNumberReader(ir);
@@ -186,29 +225,20 @@ public class Utils {
     }
 
 
-    static boolean isLogRawARSCDecoder = false;
-    static boolean isLogARSCDecoder = true;
-    static boolean isLogStringBlock = false;
-    static boolean isLogBuildApk = false;
-
+    //下面这些都是 debug 级别的日志，逐条资源的日志请直接用 Log.v 并先判断级别
     public static void logRawARSC(String var1, Object... var2) {
-        if (isLogRawARSCDecoder)
-            System.out.printf("[RawARSC] " + var1 + "\n", var2);
+        Log.d("RawARSC", var1, var2);
     }
 
-
     public static void logARSC(String var1, Object... var2) {
-        if (isLogARSCDecoder)
-            System.out.printf("[ARSC] " + var1 + "\n", var2);
+        Log.d("ARSC", var1, var2);
     }
 
     public static void logStringBlock(String var1, Object... var2) {
-        if (isLogStringBlock)
-            System.out.printf("[StringBlock] " + var1 + "\n", var2);
+        Log.d("StringBlock", var1, var2);
     }
 
     public static void logBuildApk(String var1, Object... var2) {
-        if (isLogBuildApk)
-            System.out.printf("[BuildApk] " + var1 + "\n", var2);
+        Log.d("BuildApk", var1, var2);
     }
 }
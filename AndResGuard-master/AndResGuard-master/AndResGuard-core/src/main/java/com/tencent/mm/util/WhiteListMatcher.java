@@ -0,0 +1,158 @@
+package com.tencent.mm.util;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+
+/**
+ * 同一个 package 同一个 type 下的白名单，把配置的通配符编译成一个匹配器
+ * <p>
+ * 白名单绝大部分是完整的资源名或者 abc_* 这样的前缀，不需要逐条跑正则：
+ * 完整的名字放进 HashSet，prefix* 放进前缀树，只有剩下真正的通配符（?、+、中间的 * 或者正则）
+ * 才合并成一个 Pattern。匹配的结果和逐条执行 {@link Utils#convertToPatternString} 转换出来的 Pattern 一致
+ */
+public final class WhiteListMatcher {
+  //除了通配符 ? * +，白名单里还可以直接写正则，出现这些字符的都当作正则处理
+  private static final String REGEX_CHARS = "?*+\\^$|()[]{}";
+
+  //转换后的正则，用来计算配置的 hash 和作为缓存的 key
+  private final Set<String> mPatterns = new TreeSet<>();
+  private final HashSet<String> mExactNames = new HashSet<>();
+  private final PrefixNode mPrefixes = new PrefixNode();
+  private final Set<String> mWildcards = new LinkedHashSet<>();
+  //mWildcards 合并后的 Pattern，第一次匹配时才生成，添加新的通配符后失效
+  private volatile Pattern mCombined;
+
+  /**
+   * @param name 白名单中 type 后面的部分，比如 com.tencent.mm.R.drawable.abc_* 中的 abc_*
+   * @return 转换后的正则
+   */
+  public synchronized String add(String name) {
+    String regex = Utils.convertToPatternString(name);
+    if (!mPatterns.add(regex)) {
+      return regex;
+    }
+    int last = name.length() - 1;
+    if (!containsRegexChar(name, 0, name.length())) {
+      mExactNames.add(name);
+    } else if (last >= 0 && name.charAt(last) == '*' && !containsRegexChar(name, 0, last)) {
+      mPrefixes.add(name, last);
+    } else {
+      //和原来一样，配置有问题时在解析配置的时候就报错
+      Pattern.compile(regex);
+      mWildcards.add(regex);
+      mCombined = null;
+    }
+    return regex;
+  }
+
+  public boolean matches(String name) {
+    if (mExactNames.contains(name) || mPrefixes.matchesPrefix(name)) {
+      return true;
+    }
+    Pattern combined = getCombinedPattern();
+    return combined != null && combined.matcher(name).matches();
+  }
+
+  public boolean isEmpty() {
+    return mPatterns.isEmpty();
+  }
+
+  /**
+   * @return 排好序的转换后的正则
+   */
+  public Set<String> getPatterns() {
+    return Collections.unmodifiableSet(mPatterns);
+  }
+
+  private Pattern getCombinedPattern() {
+    Pattern combined = mCombined;
+    if (combined != null) {
+      return combined;
+    }
+    synchronized (this) {
+      if (mCombined == null && !mWildcards.isEmpty()) {
+        StringBuilder builder = new StringBuilder();
+        for (String regex : mWildcards) {
+          if (builder.length() > 0) {
+            builder.append('|');
+          }
+          builder.append("(?:").append(regex).append(')');
+        }
+        mCombined = Pattern.compile(builder.toString());
+      }
+      return mCombined;
+    }
+  }
+
+  private static boolean containsRegexChar(String name, int start, int end) {
+    for (int i = start; i < end; i++) {
+      if (REGEX_CHARS.indexOf(name.charAt(i)) >= 0) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * 前缀树，子节点按字符排序存放在数组里二分查找
+   */
+  private static final class PrefixNode {
+    private static final char[] NO_KEYS = new char[0];
+    private static final PrefixNode[] NO_CHILDREN = new PrefixNode[0];
+
+    private char[] mKeys = NO_KEYS;
+    private PrefixNode[] mChildren = NO_CHILDREN;
+    //从根节点到这里是一个配置的前缀
+    private boolean mTerminal;
+
+    void add(String prefix, int length) {
+      PrefixNode node = this;
+      for (int i = 0; i < length && !node.mTerminal; i++) {
+        node = node.child(prefix.charAt(i));
+      }
+      //更短的前缀已经能匹配所有以它开头的名字，更长的前缀不需要再保存
+      node.mTerminal = true;
+      node.mKeys = NO_KEYS;
+      node.mChildren = NO_CHILDREN;
+    }
+
+    boolean matchesPrefix(String name) {
+      PrefixNode node = this;
+      for (int i = 0, n = name.length(); !node.mTerminal; i++) {
+        if (i == n) {
+          return false;
+        }
+        int index = Arrays.binarySearch(node.mKeys, name.charAt(i));
+        if (index < 0) {
+          return false;
+        }
+        node = node.mChildren[index];
+      }
+      return true;
+    }
+
+    private PrefixNode child(char key) {
+      int index = Arrays.binarySearch(mKeys, key);
+      if (index >= 0) {
+        return mChildren[index];
+      }
+      int insert = -index - 1;
+      char[] keys = new char[mKeys.length + 1];
+      PrefixNode[] children = new PrefixNode[mChildren.length + 1];
+      System.arraycopy(mKeys, 0, keys, 0, insert);
+      System.arraycopy(mChildren, 0, children, 0, insert);
+      System.arraycopy(mKeys, insert, keys, insert + 1, mKeys.length - insert);
+      System.arraycopy(mChildren, insert, children, insert + 1, mChildren.length - insert);
+      keys[insert] = key;
+      children[insert] = new PrefixNode();
+      mKeys = keys;
+      mChildren = children;
+      return children[insert];
+    }
+  }
+}
@@ -0,0 +1,1099 @@
+package com.tencent.mm.util;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+/**
+ * 纯java实现的高压缩率deflate编码器，思路和zopfli一致：
+ * 1. 预先用hash chain找出每个位置所有长度的最短距离
+ * 2. 用统计出来的符号代价做最短路径，得到代价最小的lz77序列，再用新的统计结果反复迭代，effort就是迭代的次数
+ * 3. 按代价把lz77序列切成多个block，每个block在dynamic huffman、fixed huffman和stored中选最小的输出
+ *
+ * 输出的是raw deflate数据（没有zlib头），可以直接作为zip中DEFLATED entry的内容。
+ * 比Deflater(9)慢很多，用来替代7z -mx9
+ */
+public class ZopfliDeflater {
+  private static final int WINDOW_SIZE = 32768;
+  private static final int MIN_MATCH = 3;
+  private static final int MAX_MATCH = 258;
+  private static final int MAX_CHAIN_HITS = 8192;
+  private static final int HASH_BITS = 15;
+  private static final int HASH_SIZE = 1 << HASH_BITS;
+  private static final int HASH_MASK = HASH_SIZE - 1;
+  //每个位置最多缓存的(长度, 距离)分段数量
+  private static final int MAX_CACHED_SEGMENTS = 16;
+  //每次只对这么大的数据做最短路径，和zopfli的master block一致
+  private static final int MASTER_BLOCK_SIZE = 1000000;
+  private static final int MAX_SPLIT_BLOCKS = 15;
+  //block splitting时每轮采样的位置数
+  private static final int SPLIT_SAMPLES = 9;
+  private static final int MAX_STORED_BLOCK = 65535;
+
+  private static final int[] LENGTH_BASE = {
+      3, 4, 5, 6, 7, 8, 9, 10, 11, 13, 15, 17, 19, 23, 27, 31, 35, 43, 51, 59, 67, 83, 99, 115, 131, 163, 195, 227, 258
+  };
+  private static final int[] LENGTH_EXTRA = {
+      0, 0, 0, 0, 0, 0, 0, 0, 1, 1, 1, 1, 2, 2, 2, 2, 3, 3, 3, 3, 4, 4, 4, 4, 5, 5, 5, 5, 0
+  };
+  private static final int[] DIST_BASE = {
+      1, 2, 3, 4, 5, 7, 9, 13, 17, 25, 33, 49, 65, 97, 129, 193, 257, 385, 513, 769, 1025, 1537, 2049, 3073, 4097,
+      6145, 8193, 12289, 16385, 24577
+  };
+  private static final int[] DIST_EXTRA = {
+      0, 0, 0, 0, 1, 1, 2, 2, 3, 3, 4, 4, 5, 5, 6, 6, 7, 7, 8, 8, 9, 9, 10, 10, 11, 11, 12, 12, 13, 13
+  };
+  private static final int[] CODE_LENGTH_ORDER = {
+      16, 17, 18, 0, 8, 7, 9, 6, 10, 5, 11, 4, 12, 3, 13, 2, 14, 1, 15
+  };
+
+  //长度 -> 长度符号(257~285)
+  private static final int[] LENGTH_SYMBOL = new int[MAX_MATCH + 1];
+  //距离 -> 距离符号(0~29)
+  private static final int[] DIST_SYMBOL = new int[WINDOW_SIZE + 1];
+  private static final int[] FIXED_LITLEN_LENGTHS = new int[288];
+  private static final int[] FIXED_DIST_LENGTHS = new int[32];
+
+  static {
+    for (int i = 0; i < LENGTH_BASE.length; i++) {
+      int end = i + 1 < LENGTH_BASE.length ? LENGTH_BASE[i + 1] : MAX_MATCH + 1;
+      for (int l = LENGTH_BASE[i]; l < end; l++) {
+        LENGTH_SYMBOL[l] = 257 + i;
+      }
+    }
+    //258有自己的符号285
+    LENGTH_SYMBOL[MAX_MATCH] = 285;
+    for (int i = 0; i < DIST_BASE.length; i++) {
+      int end = i + 1 < DIST_BASE.length ? DIST_BASE[i + 1] : WINDOW_SIZE + 1;
+      for (int d = DIST_BASE[i]; d < end; d++) {
+        DIST_SYMBOL[d] = i;
+      }
+    }
+    for (int i = 0; i < 288; i++) {
+      FIXED_LITLEN_LENGTHS[i] = i < 144 ? 8 : i < 256 ? 9 : i < 280 ? 7 : 8;
+    }
+    Arrays.fill(FIXED_DIST_LENGTHS, 5);
+  }
+
+  private ZopfliDeflater() {
+  }
+
+  /**
+   * 压缩全部数据，输出一个完整的deflate流
+   *
+   * @param effort 迭代次数，越大压缩率越高，耗时也越长
+   */
+  public static byte[] compress(byte[] data, int effort) {
+    return compress(data, 0, data.length, 0, true, effort);
+  }
+
+  /**
+   * 压缩 data[off, off + len)，前面的dictLen个字节作为历史数据（可以被引用但不会输出）。
+   * 不是最后一段时用一个空的stored block结束，保证输出按字节对齐，多段的结果可以直接拼接
+   *
+   * @param effort 迭代次数，越大压缩率越高，耗时也越长
+   */
+  public static byte[] compress(byte[] data, int off, int len, int dictLen, boolean last, int effort) {
+    int iterations = Math.max(1, effort);
+    BitWriter out = new BitWriter(len / 2 + 64);
+    int end = off + len;
+    if (len == 0) {
+      if (last) {
+        writeFixedBlock(out, new Lz77Store(0), 0, 0, true);
+      }
+    }
+    for (int blockStart = off; blockStart < end; blockStart += MASTER_BLOCK_SIZE) {
+      int blockEnd = Math.min(end, blockStart + MASTER_BLOCK_SIZE);
+      int historyStart = Math.max(off - dictLen, blockStart - WINDOW_SIZE);
+      compressMasterBlock(out, data, historyStart, blockStart, blockEnd, last && blockEnd == end, iterations);
+    }
+    if (!last) {
+      //空的stored block，相当于zlib的SYNC_FLUSH
+      out.writeBits(0, 1);
+      out.writeBits(0, 2);
+      out.alignToByte();
+      out.writeBits(0, 16);
+      out.writeBits(0xFFFF, 16);
+    }
+    out.alignToByte();
+    return out.toByteArray();
+  }
+
+  private static void compressMasterBlock(
+      BitWriter out, byte[] data, int historyStart, int start, int end, boolean last, int iterations) {
+    MatchCache cache = new MatchCache(data, historyStart, start, end);
+    Lz77Store store = optimalParse(data, cache, start, end, iterations);
+
+    int[] splits = splitBlocks(data, store, start, end);
+    int blockStart = 0;
+    for (int i = 0; i <= splits.length; i++) {
+      int blockEnd = i < splits.length ? splits[i] : store.size;
+      boolean finalBlock = last && i == splits.length;
+      writeBlockAutoType(out, data, store, blockStart, blockEnd, rangeStart(store, blockStart, end),
+          rangeEnd(store, blockEnd, end), finalBlock);
+      blockStart = blockEnd;
+    }
+  }
+
+  /**
+   * 先用lazy匹配统计一次符号频率，之后每次用上一次的统计结果作为代价做最短路径，保留代价最小的结果
+   */
+  private static Lz77Store optimalParse(byte[] data, MatchCache cache, int start, int end, int iterations) {
+    Lz77Store greedy = lazyParse(cache, start, end);
+    SymbolStats stats = new SymbolStats();
+    stats.collect(greedy, 0, greedy.size);
+    stats.calculate();
+
+    Lz77Store best = greedy;
+    double bestCost = blockCostAutoType(data, greedy, 0, greedy.size, start, end);
+    SymbolStats bestStats = stats;
+    SymbolStats lastStats = null;
+    double lastCost = 0;
+    int lastRandomStep = -1;
+    RandomGenerator random = new RandomGenerator();
+
+    int n = end - start;
+    float[] costs = new float[n + 1];
+    int[] lengths = new int[n + 1];
+    for (int i = 0; i < iterations; i++) {
+      Lz77Store current = shortestPath(data, cache, start, end, stats, costs, lengths);
+      double cost = blockCostAutoType(data, current, 0, current.size, start, end);
+      if (cost < bestCost) {
+        best = current;
+        bestCost = cost;
+        bestStats = stats;
+      }
+      lastStats = stats;
+      stats = new SymbolStats();
+      stats.collect(current, 0, current.size);
+      if (lastRandomStep != -1) {
+        //随机化之后，混合上一次的结果，避免结果跳得太远
+        stats.addWeighted(lastStats, 0.5);
+      }
+      if (i > 5 && cost == lastCost) {
+        stats = bestStats.copy();
+        stats.randomize(random);
+        lastRandomStep = i;
+      }
+      stats.calculate();
+      lastCost = cost;
+    }
+    return best;
+  }
+
+  private static Lz77Store lazyParse(MatchCache cache, int start, int end) {
+    Lz77Store store = new Lz77Store(end - start);
+    int pos = start;
+    while (pos < end) {
+      int length = cache.longestLength(pos);
+      if (length >= MIN_MATCH && pos + 1 < end && cache.longestLength(pos + 1) > length + 1) {
+        length = 0;
+      }
+      if (length >= MIN_MATCH) {
+        store.add(length, cache.distance(pos, length), pos);
+        pos += length;
+      } else {
+        store.add(cache.data[pos] & 0xFF, 0, pos);
+        pos++;
+      }
+    }
+    return store;
+  }
+
+  /**
+   * 按当前的符号代价求从start到end代价最小的路径
+   */
+  private static Lz77Store shortestPath(
+      byte[] data, MatchCache cache, int start, int end, SymbolStats stats, float[] costs, int[] lengths) {
+    int n = end - start;
+    Arrays.fill(costs, Float.MAX_VALUE);
+    costs[0] = 0;
+    float[] lengthCosts = new float[MAX_MATCH + 1];
+    float minLengthCost = Float.MAX_VALUE;
+    for (int l = MIN_MATCH; l <= MAX_MATCH; l++) {
+      int symbol = LENGTH_SYMBOL[l];
+      lengthCosts[l] = (float) (stats.litLenBits[symbol] + LENGTH_EXTRA[symbol - 257]);
+      minLengthCost = Math.min(minLengthCost, lengthCosts[l]);
+    }
+    float minDistCost = Float.MAX_VALUE;
+    float[] distSymbolCosts = new float[30];
+    for (int s = 0; s < 30; s++) {
+      distSymbolCosts[s] = (float) (stats.distBits[s] + DIST_EXTRA[s]);
+      minDistCost = Math.min(minDistCost, distSymbolCosts[s]);
+    }
+    float minMatchCost = minLengthCost + minDistCost;
+    float longRepeatCost = lengthCosts[MAX_MATCH] + distSymbolCosts[0];
+
+    for (int i = 0; i < n; i++) {
+      int pos = start + i;
+      float base = costs[i];
+      //很长的重复字节直接用(258, 1)跳过，和zopfli一样
+      if (cache.same(pos) > MAX_MATCH * 2 && i > MAX_MATCH + 1 && i + MAX_MATCH * 2 + 1 < n
+          && cache.same(pos - MAX_MATCH) > MAX_MATCH) {
+        for (int k = 0; k < MAX_MATCH; k++) {
+          costs[i + MAX_MATCH] = costs[i] + longRepeatCost;
+          lengths[i + MAX_MATCH] = MAX_MATCH;
+          i++;
+        }
+        pos = start + i;
+        base = costs[i];
+      }
+
+      float literalCost = base + (float) stats.litLenBits[data[pos] & 0xFF];
+      if (literalCost < costs[i + 1]) {
+        costs[i + 1] = literalCost;
+        lengths[i + 1] = 1;
+      }
+      int segmentCount = cache.segmentCount(pos);
+      int segmentOffset = cache.segmentOffset(pos);
+      int prevLength = MIN_MATCH - 1;
+      for (int s = 0; s < segmentCount; s++) {
+        int segmentLength = cache.segmentLength(segmentOffset + s);
+        int distance = cache.segmentDistance(segmentOffset + s);
+        float distCost = distSymbolCosts[DIST_SYMBOL[distance]];
+        int maxLength = Math.min(segmentLength, n - i);
+        for (int k = prevLength + 1; k <= maxLength; k++) {
+          if (costs[i + k] <= base + minMatchCost) {
+            continue;
+          }
+          float cost = base + lengthCosts[k] + distCost;
+          if (cost < costs[i + k]) {
+            costs[i + k] = cost;
+            lengths[i + k] = k;
+          }
+        }
+        prevLength = segmentLength;
+        if (segmentLength >= n - i) {
+          break;
+        }
+      }
+    }
+
+    //从后往前回溯路径
+    int count = 0;
+    int[] path = new int[n];
+    for (int i = n; i > 0; i -= lengths[i]) {
+      path[count++] = lengths[i];
+    }
+    Lz77Store store = new Lz77Store(count);
+    int pos = start;
+    for (int i = count - 1; i >= 0; i--) {
+      int length = path[i];
+      if (length == 1) {
+        store.add(data[pos] & 0xFF, 0, pos);
+      } else {
+        store.add(length, cache.distance(pos, length), pos);
+      }
+      pos += length;
+    }
+    return store;
+  }
+
+  /**
+   * 按代价把lz77序列切成多个block，返回切分点（lz77序列中的下标）
+   */
+  private static int[] splitBlocks(byte[] data, Lz77Store store, int start, int end) {
+    int[] splits = new int[0];
+    if (store.size < 10) {
+      return splits;
+    }
+    boolean[] done = new boolean[MAX_SPLIT_BLOCKS];
+    while (splits.length + 1 < MAX_SPLIT_BLOCKS) {
+      //找到还没处理过并且最大的一段
+      int target = -1;
+      int targetSize = 0;
+      for (int i = 0; i <= splits.length; i++) {
+        int ls = i == 0 ? 0 : splits[i - 1];
+        int le = i == splits.length ? store.size : splits[i];
+        if (!done[i] && le - ls > targetSize) {
+          target = i;
+          targetSize = le - ls;
+        }
+      }
+      if (target == -1) {
+        break;
+      }
+      int ls = target == 0 ? 0 : splits[target - 1];
+      int le = target == splits.length ? store.size : splits[target];
+      int split = -1;
+      if (le - ls >= 10) {
+        double origCost = blockCostAutoType(data, store, ls, le, start, end);
+        double[] bestCost = new double[1];
+        int candidate = findMinimumSplit(data, store, ls, le, start, end, bestCost);
+        if (candidate > ls && candidate < le && bestCost[0] < origCost) {
+          split = candidate;
+        }
+      }
+      if (split == -1) {
+        done[target] = true;
+        continue;
+      }
+      int[] newSplits = new int[splits.length + 1];
+      System.arraycopy(splits, 0, newSplits, 0, target);
+      newSplits[target] = split;
+      System.arraycopy(splits, target, newSplits, target + 1, splits.length - target);
+      splits = newSplits;
+      //插入之后后面的段下标都往后移
+      System.arraycopy(done, target + 1, done, target + 2, MAX_SPLIT_BLOCKS - target - 2);
+      done[target] = false;
+      done[target + 1] = false;
+    }
+    return splits;
+  }
+
+  /**
+   * 在 (ls, le) 中找切分之后代价最小的点，每轮采样SPLIT_SAMPLES个位置再缩小范围
+   */
+  private static int findMinimumSplit(
+      byte[] data, Lz77Store store, int ls, int le, int start, int end, double[] bestCostOut) {
+    int lo = ls + 1;
+    int hi = le;
+    int best = lo;
+    double bestCost = Double.MAX_VALUE;
+    while (hi - lo > 0) {
+      int step = Math.max(1, (hi - lo) / (SPLIT_SAMPLES + 1));
+      int localBest = -1;
+      double localCost = Double.MAX_VALUE;
+      for (int i = 0; i < SPLIT_SAMPLES; i++) {
+        int p = lo + step * (i + 1);
+        if (p >= hi) {
+          break;
+        }
+        double cost = blockCostAutoType(data, store, ls, p, start, end)
+                      + blockCostAutoType(data, store, p, le, start, end);
+        if (cost < localCost) {
+          localCost = cost;
+          localBest = p;
+        }
+      }
+      if (localBest == -1 || localCost > bestCost) {
+        break;
+      }
+      best = localBest;
+      bestCost = localCost;
+      lo = Math.max(lo, localBest - step);
+      hi = Math.min(hi, localBest + step);
+      if (step == 1) {
+        break;
+      }
+    }
+    bestCostOut[0] = bestCost;
+    return best;
+  }
+
+  private static int rangeStart(Lz77Store store, int ls, int end) {
+    return ls < store.size ? store.pos[ls] : end;
+  }
+
+  private static int rangeEnd(Lz77Store store, int le, int end) {
+    return le < store.size ? store.pos[le] : end;
+  }
+
+  private static double blockCostAutoType(byte[] data, Lz77Store store, int ls, int le, int start, int end) {
+    int byteLength = rangeEnd(store, le, end) - rangeStart(store, ls, end);
+    double stored = storedBlockBits(byteLength);
+    double fixed = fixedBlockBits(store, ls, le);
+    double dynamic = dynamicBlockBits(store, ls, le);
+    return Math.min(stored, Math.min(fixed, dynamic));
+  }
+
+  private static double storedBlockBits(int byteLength) {
+    int blocks = Math.max(1, (byteLength + MAX_STORED_BLOCK - 1) / MAX_STORED_BLOCK);
+    return blocks * 5 * 8 + byteLength * 8.0;
+  }
+
+  private static double fixedBlockBits(Lz77Store store, int ls, int le) {
+    int[] litLenCounts = new int[288];
+    int[] distCounts = new int[32];
+    store.count(ls, le, litLenCounts, distCounts);
+    return 3 + dataBits(litLenCounts, distCounts, FIXED_LITLEN_LENGTHS, FIXED_DIST_LENGTHS);
+  }
+
+  private static double dynamicBlockBits(Lz77Store store, int ls, int le) {
+    int[] litLenCounts = new int[288];
+    int[] distCounts = new int[32];
+    store.count(ls, le, litLenCounts, distCounts);
+    int[] litLenLengths = HuffmanCode.lengths(litLenCounts, 15);
+    int[] distLengths = HuffmanCode.lengths(distCounts, 15);
+    patchDistanceCodes(distLengths);
+    return 3 + treeBits(litLenLengths, distLengths) + dataBits(litLenCounts, distCounts, litLenLengths, distLengths);
+  }
+
+  private static long dataBits(int[] litLenCounts, int[] distCounts, int[] litLenLengths, int[] distLengths) {
+    long bits = 0;
+    for (int i = 0; i < 286; i++) {
+      bits += (long) litLenCounts[i] * litLenLengths[i];
+      if (i >= 257) {
+        bits += (long) litLenCounts[i] * LENGTH_EXTRA[i - 257];
+      }
+    }
+    for (int i = 0; i < 30; i++) {
+      bits += (long) distCounts[i] * (distLengths[i] + DIST_EXTRA[i]);
+    }
+    return bits;
+  }
+
+  /**
+   * 有些解码器不支持只有0个或1个距离码，补足两个
+   */
+  private static void patchDistanceCodes(int[] distLengths) {
+    int count = 0;
+    for (int i = 0; i < 30; i++) {
+      if (distLengths[i] != 0) {
+        count++;
+      }
+    }
+    if (count == 0) {
+      distLengths[0] = 1;
+      distLengths[1] = 1;
+    } else if (count == 1) {
+      distLengths[distLengths[0] != 0 ? 1 : 0] = 1;
+    }
+  }
+
+  private static void writeBlockAutoType(
+      BitWriter out, byte[] data, Lz77Store store, int ls, int le, int byteStart, int byteEnd, boolean finalBlock) {
+    double stored = storedBlockBits(byteEnd - byteStart);
+    double fixed = fixedBlockBits(store, ls, le);
+    double dynamic = dynamicBlockBits(store, ls, le);
+    if (stored <= fixed && stored <= dynamic) {
+      writeStoredBlocks(out, data, byteStart, byteEnd, finalBlock);
+    } else if (fixed <= dynamic) {
+      writeFixedBlock(out, store, ls, le, finalBlock);
+    } else {
+      writeDynamicBlock(out, store, ls, le, finalBlock);
+    }
+  }
+
+  private static void writeStoredBlocks(BitWriter out, byte[] data, int byteStart, int byteEnd, boolean finalBlock) {
+    int pos = byteStart;
+    do {
+      int length = Math.min(MAX_STORED_BLOCK, byteEnd - pos);
+      out.writeBits(finalBlock && pos + length == byteEnd ? 1 : 0, 1);
+      out.writeBits(0, 2);
+      out.alignToByte();
+      out.writeBits(length, 16);
+      out.writeBits(~length & 0xFFFF, 16);
+      out.writeBytes(data, pos, length);
+      pos += length;
+    } while (pos < byteEnd);
+  }
+
+  private static void writeFixedBlock(BitWriter out, Lz77Store store, int ls, int le, boolean finalBlock) {
+    out.writeBits(finalBlock ? 1 : 0, 1);
+    out.writeBits(1, 2);
+    writeSymbols(out, store, ls, le, FIXED_LITLEN_LENGTHS, FIXED_DIST_LENGTHS);
+  }
+
+  private static void writeDynamicBlock(BitWriter out, Lz77Store store, int ls, int le, boolean finalBlock) {
+    int[] litLenCounts = new int[288];
+    int[] distCounts = new int[32];
+    store.count(ls, le, litLenCounts, distCounts);
+    int[] litLenLengths = HuffmanCode.lengths(litLenCounts, 15);
+    int[] distLengths = HuffmanCode.lengths(distCounts, 15);
+    patchDistanceCodes(distLengths);
+
+    out.writeBits(finalBlock ? 1 : 0, 1);
+    out.writeBits(2, 2);
+    writeTree(out, litLenLengths, distLengths);
+    writeSymbols(out, store, ls, le, litLenLengths, distLengths);
+  }
+
+  private static void writeSymbols(
+      BitWriter out, Lz77Store store, int ls, int le, int[] litLenLengths, int[] distLengths) {
+    int[] litLenCodes = HuffmanCode.codes(litLenLengths);
+    int[] distCodes = HuffmanCode.codes(distLengths);
+    for (int i = ls; i < le; i++) {
+      int litLen = store.litLens[i];
+      int dist = store.dists[i];
+      if (dist == 0) {
+        out.writeHuffman(litLenCodes[litLen], litLenLengths[litLen]);
+      } else {
+        int symbol = LENGTH_SYMBOL[litLen];
+        out.writeHuffman(litLenCodes[symbol], litLenLengths[symbol]);
+        out.writeBits(litLen - LENGTH_BASE[symbol - 257], LENGTH_EXTRA[symbol - 257]);
+        int distSymbol = DIST_SYMBOL[dist];
+        out.writeHuffman(distCodes[distSymbol], distLengths[distSymbol]);
+        out.writeBits(dist - DIST_BASE[distSymbol], DIST_EXTRA[distSymbol]);
+      }
+    }
+    out.writeHuffman(litLenCodes[256], litLenLengths[256]);
+  }
+
+  private static long treeBits(int[] litLenLengths, int[] distLengths) {
+    long best = Long.MAX_VALUE;
+    for (int flags = 0; flags < 8; flags++) {
+      best = Math.min(best, encodeTree(null, litLenLengths, distLengths, flags));
+    }
+    return best;
+  }
+
+  private static void writeTree(BitWriter out, int[] litLenLengths, int[] distLengths) {
+    long best = Long.MAX_VALUE;
+    int bestFlags = 0;
+    for (int flags = 0; flags < 8; flags++) {
+      long bits = encodeTree(null, litLenLengths, distLengths, flags);
+      if (bits < best) {
+        best = bits;
+        bestFlags = flags;
+      }
+    }
+    encodeTree(out, litLenLengths, distLengths, bestFlags);
+  }
+
+  /**
+   * 计算（out不为空时同时写出）dynamic block的huffman树头部
+   *
+   * @param flags 是否使用16，17，18三种重复码，和zopfli一样都试一遍取最小的
+   * @return 头部的bit数
+   */
+  private static long encodeTree(BitWriter out, int[] litLenLengths, int[] distLengths, int flags) {
+    boolean use16 = (flags & 1) != 0;
+    boolean use17 = (flags & 2) != 0;
+    boolean use18 = (flags & 4) != 0;
+    int hlit = 29;
+    while (hlit > 0 && litLenLengths[257 + hlit - 1] == 0) {
+      hlit--;
+    }
+    int hdist = 29;
+    while (hdist > 0 && distLengths[1 + hdist - 1] == 0) {
+      hdist--;
+    }
+    int litLenCount = hlit + 257;
+    int distCount = hdist + 1;
+    int[] lengths = new int[litLenCount + distCount];
+    System.arraycopy(litLenLengths, 0, lengths, 0, litLenCount);
+    System.arraycopy(distLengths, 0, lengths, litLenCount, distCount);
+
+    //rle编码后的符号和额外bits
+    int[] symbols = new int[lengths.length];
+    int[] extras = new int[lengths.length];
+    int symbolCount = 0;
+    int[] codeLengthCounts = new int[19];
+    for (int i = 0; i < lengths.length; ) {
+      int value = lengths[i];
+      int run = 1;
+      while (i + run < lengths.length && lengths[i + run] == value) {
+        run++;
+      }
+      i += run;
+      if (value == 0 && run >= 3 && (use17 || use18)) {
+        while (run >= 11 && use18) {
+          int count = Math.min(run, 138);
+          symbols[symbolCount] = 18;
+          extras[symbolCount++] = count - 11;
+          codeLengthCounts[18]++;
+          run -= count;
+        }
+        while (run >= 3 && use17) {
+          int count = Math.min(run, 10);
+          symbols[symbolCount] = 17;
+          extras[symbolCount++] = count - 3;
+          codeLengthCounts[17]++;
+          run -= count;
+        }
+      }
+      if (value != 0 && run >= 4 && use16) {
+        //先写一个值，后面的用16重复
+        symbols[symbolCount++] = value;
+        codeLengthCounts[value]++;
+        run--;
+        while (run >= 3) {
+          int count = Math.min(run, 6);
+          symbols[symbolCount] = 16;
+          extras[symbolCount++] = count - 3;
+          codeLengthCounts[16]++;
+          run -= count;
+        }
+      }
+      while (run > 0) {
+        symbols[symbolCount++] = value;
+        codeLengthCounts[value]++;
+        run--;
+      }
+    }
+
+    int[] codeLengthLengths = HuffmanCode.lengths(codeLengthCounts, 7);
+    int hclen = 15;
+    while (hclen > 0 && codeLengthLengths[CODE_LENGTH_ORDER[hclen + 4 - 1]] == 0) {
+      hclen--;
+    }
+
+    long bits = 14 + (hclen + 4) * 3;
+    for (int i = 0; i < symbolCount; i++) {
+      int symbol = symbols[i];
+      bits += codeLengthLengths[symbol];
+      if (symbol == 16) {
+        bits += 2;
+      } else if (symbol == 17) {
+        bits += 3;
+      } else if (symbol == 18) {
+        bits += 7;
+      }
+    }
+
+    if (out != null) {
+      int[] codeLengthCodes = HuffmanCode.codes(codeLengthLengths);
+      out.writeBits(hlit, 5);
+      out.writeBits(hdist, 5);
+      out.writeBits(hclen, 4);
+      for (int i = 0; i < hclen + 4; i++) {
+        out.writeBits(codeLengthLengths[CODE_LENGTH_ORDER[i]], 3);
+      }
+      for (int i = 0; i < symbolCount; i++) {
+        int symbol = symbols[i];
+        out.writeHuffman(codeLengthCodes[symbol], codeLengthLengths[symbol]);
+        if (symbol == 16) {
+          out.writeBits(extras[i], 2);
+        } else if (symbol == 17) {
+          out.writeBits(extras[i], 3);
+        } else if (symbol == 18) {
+          out.writeBits(extras[i], 7);
+        }
+      }
+    }
+    return bits;
+  }
+
+  /**
+   * 每个位置所有匹配长度对应的最短距离，按长度分段保存：长度在(上一段的长度, 本段长度]之间的都用本段的距离
+   */
+  private static class MatchCache {
+    final byte[] data;
+    private final int start;
+    private final int end;
+    private final int[] segmentOffsets;
+    private final byte[] segmentCounts;
+    private byte[] segmentLengths;
+    private char[] segmentDistances;
+    private int segmentSize;
+    //从这个位置开始连续相同字节的数量
+    private final char[] same;
+
+    MatchCache(byte[] data, int historyStart, int start, int end) {
+      this.data = data;
+      this.start = start;
+      this.end = end;
+      int n = end - start;
+      segmentOffsets = new int[n];
+      segmentCounts = new byte[n];
+      segmentLengths = new byte[Math.max(16, n)];
+      segmentDistances = new char[Math.max(16, n)];
+      same = new char[n];
+
+      for (int i = n - 1; i >= 0; i--) {
+        int pos = start + i;
+        if (pos + 1 < end && data[pos + 1] == data[pos]) {
+          same[i] = (char) Math.min(0xFFFF, same[i + 1] + 1);
+        }
+      }
+
+      int[] head = new int[HASH_SIZE];
+      Arrays.fill(head, -1);
+      int[] prev = new int[end - historyStart];
+      int[] tempLengths = new int[MAX_MATCH + 1];
+      int[] tempDistances = new int[MAX_MATCH + 1];
+      for (int pos = historyStart; pos < end; pos++) {
+        int hash = pos + MIN_MATCH <= end ? hash(data, pos) : -1;
+        if (pos >= start) {
+          int count = findMatches(head, prev, historyStart, pos, hash, tempLengths, tempDistances);
+          //太多的时候只保留长的那些段，短的长度也可以用长的那段的距离
+          int first = Math.max(0, count - MAX_CACHED_SEGMENTS);
+          addSegments(pos - start, tempLengths, tempDistances, first, count);
+        }
+        if (hash != -1) {
+          prev[pos - historyStart] = head[hash];
+          head[hash] = pos;
+        }
+      }
+    }
+
+    private int findMatches(
+        int[] head, int[] prev, int historyStart, int pos, int hash, int[] lengths, int[] distances) {
+      if (hash == -1) {
+        return 0;
+      }
+      int maxLength = Math.min(MAX_MATCH, end - pos);
+      int bestLength = MIN_MATCH - 1;
+      int count = 0;
+      int hits = 0;
+      for (int candidate = head[hash]; candidate != -1 && hits < MAX_CHAIN_HITS;
+           candidate = prev[candidate - historyStart], hits++) {
+        int distance = pos - candidate;
+        if (distance > WINDOW_SIZE) {
+          break;
+        }
+        if (data[candidate + bestLength] != data[pos + bestLength]) {
+          continue;
+        }
+        int length = 0;
+        while (length < maxLength && data[candidate + length] == data[pos + length]) {
+          length++;
+        }
+        if (length > bestLength) {
+          //越往后距离越远，所以第一次达到某个长度时的距离就是这个长度的最短距离
+          lengths[count] = length;
+          distances[count] = distance;
+          count++;
+          bestLength = length;
+          if (length >= maxLength) {
+            break;
+          }
+        }
+      }
+      return count;
+    }
+
+    private void addSegments(int index, int[] lengths, int[] distances, int from, int to) {
+      int count = to - from;
+      if (segmentSize + count > segmentLengths.length) {
+        int capacity = Math.max(segmentLengths.length * 2, segmentSize + count);
+        segmentLengths = Arrays.copyOf(segmentLengths, capacity);
+        segmentDistances = Arrays.copyOf(segmentDistances, capacity);
+      }
+      segmentOffsets[index] = segmentSize;
+      segmentCounts[index] = (byte) count;
+      for (int i = from; i < to; i++) {
+        segmentLengths[segmentSize] = (byte) (lengths[i] - MIN_MATCH);
+        segmentDistances[segmentSize] = (char) distances[i];
+        segmentSize++;
+      }
+    }
+
+    private static int hash(byte[] data, int pos) {
+      return (((data[pos] & 0xFF) << 10) ^ ((data[pos + 1] & 0xFF) << 5) ^ (data[pos + 2] & 0xFF)) & HASH_MASK;
+    }
+
+    int segmentCount(int pos) {
+      return segmentCounts[pos - start];
+    }
+
+    int segmentOffset(int pos) {
+      return segmentOffsets[pos - start];
+    }
+
+    int segmentLength(int segment) {
+      return (segmentLengths[segment] & 0xFF) + MIN_MATCH;
+    }
+
+    int segmentDistance(int segment) {
+      return segmentDistances[segment];
+    }
+
+    int same(int pos) {
+      return same[pos - start];
+    }
+
+    int longestLength(int pos) {
+      int count = segmentCount(pos);
+      return count == 0 ? 0 : segmentLength(segmentOffset(pos) + count - 1);
+    }
+
+    int distance(int pos, int length) {
+      int offset = segmentOffset(pos);
+      int count = segmentCount(pos);
+      for (int i = 0; i < count; i++) {
+        if (segmentLength(offset + i) >= length) {
+          return segmentDistance(offset + i);
+        }
+      }
+      throw new IllegalStateException(String.format("no match of length %d at %d", length, pos));
+    }
+  }
+
+  /**
+   * lz77序列，dist为0时litLen是字面量，否则是匹配长度
+   */
+  private static class Lz77Store {
+    int[] litLens;
+    int[] dists;
+    int[] pos;
+    int size;
+
+    Lz77Store(int capacity) {
+      capacity = Math.max(16, capacity);
+      litLens = new int[capacity];
+      dists = new int[capacity];
+      pos = new int[capacity];
+    }
+
+    void add(int litLen, int dist, int position) {
+      if (size == litLens.length) {
+        litLens = Arrays.copyOf(litLens, size * 2);
+        dists = Arrays.copyOf(dists, size * 2);
+        pos = Arrays.copyOf(pos, size * 2);
+      }
+      litLens[size] = litLen;
+      dists[size] = dist;
+      pos[size] = position;
+      size++;
+    }
+
+    void count(int ls, int le, int[] litLenCounts, int[] distCounts) {
+      for (int i = ls; i < le; i++) {
+        if (dists[i] == 0) {
+          litLenCounts[litLens[i]]++;
+        } else {
+          litLenCounts[LENGTH_SYMBOL[litLens[i]]]++;
+          distCounts[DIST_SYMBOL[dists[i]]]++;
+        }
+      }
+      litLenCounts[256] = 1;
+    }
+  }
+
+  private static class SymbolStats {
+    final double[] litLenCounts = new double[288];
+    final double[] distCounts = new double[32];
+    final double[] litLenBits = new double[288];
+    final double[] distBits = new double[32];
+
+    void collect(Lz77Store store, int ls, int le) {
+      int[] litLen = new int[288];
+      int[] dist = new int[32];
+      store.count(ls, le, litLen, dist);
+      for (int i = 0; i < 288; i++) {
+        litLenCounts[i] = litLen[i];
+      }
+      for (int i = 0; i < 32; i++) {
+        distCounts[i] = dist[i];
+      }
+    }
+
+    void addWeighted(SymbolStats other, double weight) {
+      for (int i = 0; i < 288; i++) {
+        litLenCounts[i] += other.litLenCounts[i] * weight;
+      }
+      for (int i = 0; i < 32; i++) {
+        distCounts[i] += other.distCounts[i] * weight;
+      }
+      litLenCounts[256] = 1;
+    }
+
+    void randomize(RandomGenerator random) {
+      randomize(random, litLenCounts, 288);
+      randomize(random, distCounts, 30);
+      litLenCounts[256] = 1;
+    }
+
+    private static void randomize(RandomGenerator random, double[] counts, int n) {
+      for (int i = 0; i < n; i++) {
+        if ((random.next() >>> 4) % 3 == 0) {
+          counts[i] = counts[(int) (random.next() % n)];
+        }
+      }
+    }
+
+    SymbolStats copy() {
+      SymbolStats stats = new SymbolStats();
+      System.arraycopy(litLenCounts, 0, stats.litLenCounts, 0, 288);
+      System.arraycopy(distCounts, 0, stats.distCounts, 0, 32);
+      return stats;
+    }
+
+    void calculate() {
+      entropy(litLenCounts, litLenBits, 288);
+      entropy(distCounts, distBits, 32);
+    }
+
+    /**
+     * 每个符号的代价就是它的信息量 log2(total / count)，没出现过的符号按出现一次算
+     */
+    private static void entropy(double[] counts, double[] bits, int n) {
+      double sum = 0;
+      for (int i = 0; i < n; i++) {
+        sum += counts[i];
+      }
+      double log2sum = sum == 0 ? Math.log(n) / Math.log(2) : Math.log(sum) / Math.log(2);
+      for (int i = 0; i < n; i++) {
+        if (counts[i] == 0) {
+          bits[i] = log2sum;
+        } else {
+          bits[i] = log2sum - Math.log(counts[i]) / Math.log(2);
+        }
+        if (bits[i] < 0) {
+          bits[i] = 0;
+        }
+      }
+    }
+  }
+
+  /**
+   * 固定种子的随机数，保证同样的输入得到同样的输出
+   */
+  private static class RandomGenerator {
+    private long m_w = 1;
+    private long m_z = 2;
+
+    long next() {
+      m_z = (36969 * (m_z & 65535) + (m_z >>> 16)) & 0xFFFFFFFFL;
+      m_w = (18000 * (m_w & 65535) + (m_w >>> 16)) & 0xFFFFFFFFL;
+      return ((m_z << 16) + m_w) & 0xFFFFFFFFL;
+    }
+  }
+
+  private static class HuffmanCode {
+    /**
+     * 用package-merge算法计算长度不超过maxBits的最优huffman码长
+     */
+    static int[] lengths(int[] counts, int maxBits) {
+      int n = counts.length;
+      int[] lengths = new int[n];
+      int used = 0;
+      for (int count : counts) {
+        if (count != 0) {
+          used++;
+        }
+      }
+      if (used == 0) {
+        return lengths;
+      }
+      Node[] leaves = new Node[used];
+      int index = 0;
+      for (int i = 0; i < n; i++) {
+        if (counts[i] != 0) {
+          leaves[index++] = new Node(counts[i], i, null, null);
+        }
+      }
+      if (used == 1) {
+        lengths[leaves[0].symbol] = 1;
+        return lengths;
+      }
+      Arrays.sort(leaves, (a, b) -> a.weight != b.weight ? Long.compare(a.weight, b.weight)
+          : Integer.compare(a.symbol, b.symbol));
+
+      Node[] list = leaves;
+      for (int level = 1; level < maxBits; level++) {
+        int packageCount = list.length / 2;
+        Node[] packages = new Node[packageCount];
+        for (int i = 0; i < packageCount; i++) {
+          Node left = list[2 * i];
+          Node right = list[2 * i + 1];
+          packages[i] = new Node(left.weight + right.weight, -1, left, right);
+        }
+        Node[] merged = new Node[leaves.length + packageCount];
+        int li = 0;
+        int pi = 0;
+        for (int i = 0; i < merged.length; i++) {
+          if (pi >= packageCount || (li < leaves.length && leaves[li].weight <= packages[pi].weight)) {
+            merged[i] = leaves[li++];
+          } else {
+            merged[i] = packages[pi++];
+          }
+        }
+        list = merged;
+      }
+      for (int i = 0; i < 2 * used - 2; i++) {
+        countLeaves(list[i], lengths);
+      }
+      return lengths;
+    }
+
+    private static void countLeaves(Node node, int[] lengths) {
+      if (node.symbol >= 0) {
+        lengths[node.symbol]++;
+      } else {
+        countLeaves(node.left, lengths);
+        countLeaves(node.right, lengths);
+      }
+    }
+
+    /**
+     * 按rfc1951由码长生成canonical huffman码
+     */
+    static int[] codes(int[] lengths) {
+      int maxBits = 0;
+      for (int length : lengths) {
+        maxBits = Math.max(maxBits, length);
+      }
+      int[] lengthCounts = new int[maxBits + 1];
+      for (int length : lengths) {
+        if (length != 0) {
+          lengthCounts[length]++;
+        }
+      }
+      int[] nextCode = new int[maxBits + 2];
+      int code = 0;
+      for (int bits = 1; bits <= maxBits; bits++) {
+        code = (code + lengthCounts[bits - 1]) << 1;
+        nextCode[bits] = code;
+      }
+      int[] codes = new int[lengths.length];
+      for (int i = 0; i < lengths.length; i++) {
+        if (lengths[i] != 0) {
+          codes[i] = nextCode[lengths[i]]++;
+        }
+      }
+      return codes;
+    }
+
+    private static class Node {
+      final long weight;
+      final int symbol;
+      final Node left;
+      final Node right;
+
+      Node(long weight, int symbol, Node left, Node right) {
+        this.weight = weight;
+        this.symbol = symbol;
+        this.left = left;
+        this.right = right;
+      }
+    }
+  }
+
+  private static class BitWriter {
+    private final ByteArrayOutputStream out;
+    private int bitBuffer;
+    private int bitCount;
+
+    BitWriter(int capacity) {
+      out = new ByteArrayOutputStream(capacity);
+    }
+
+    /**
+     * deflate的普通数据从低位开始写
+     */
+    void writeBits(int value, int bits) {
+      for (int i = 0; i < bits; i++) {
+        bitBuffer |= ((value >>> i) & 1) << bitCount;
+        bitCount++;
+        if (bitCount == 8) {
+          out.write(bitBuffer);
+          bitBuffer = 0;
+          bitCount = 0;
+        }
+      }
+    }
+
+    /**
+     * huffman码从高位开始写
+     */
+    void writeHuffman(int code, int bits) {
+      for (int i = bits - 1; i >= 0; i--) {
+        bitBuffer |= ((code >>> i) & 1) << bitCount;
+        bitCount++;
+        if (bitCount == 8) {
+          out.write(bitBuffer);
+          bitBuffer = 0;
+          bitCount = 0;
+        }
+      }
+    }
+
+    void alignToByte() {
+      if (bitCount > 0) {
+        out.write(bitBuffer);
+        bitBuffer = 0;
+        bitCount = 0;
+      }
+    }
+
+    void writeBytes(byte[] data, int off, int len) {
+      out.write(data, off, len);
+    }
+
+    byte[] toByteArray() {
+      return out.toByteArray();
+    }
+  }
+}
@@ -10,11 +10,18 @@ class AndResGuardExtension {
 
   File mappingFile
   boolean use7zip
+  int compressEffort
   boolean useSign
   String metaName
   String fixedResName
   boolean keepRoot
   boolean mergeDuplicatedRes
+  boolean streamZip
+  String copyMode
+  boolean incremental
+  boolean reportMetrics
+  String logLevel
+  String workerIsolation
   Iterable<String> whiteList
   Iterable<String> compressFilePattern
   String finalApkBackupPath
@@ -25,11 +32,18 @@ class AndResGuardExtension {
 
   AndResGuardExtension() {
     use7zip = false
+    compressEffort = 15
     useSign = false
     metaName = "META-INF"
     fixedResName = null
     keepRoot = false
     mergeDuplicatedRes = false
+    streamZip = false
+    copyMode = "transfer"
+    incremental = false
+    reportMetrics = false
+    logLevel = "info"
+    workerIsolation = "none"
     whiteList = []
     compressFilePattern = []
     mappingFile = null
@@ -52,6 +66,10 @@ class AndResGuardExtension {
     return use7zip
   }
 
+  int getCompressEffort() {
+    return compressEffort
+  }
+
   boolean getUseSign() {
     return useSign
   }
@@ -72,6 +90,30 @@ class AndResGuardExtension {
     return mergeDuplicatedRes
   }
 
+  boolean getStreamZip() {
+    return streamZip
+  }
+
+  String getCopyMode() {
+    return copyMode
+  }
+
+  boolean getIncremental() {
+    return incremental
+  }
+
+  boolean getReportMetrics() {
+    return reportMetrics
+  }
+
+  String getLogLevel() {
+    return logLevel
+  }
+
+  String getWorkerIsolation() {
+    return workerIsolation
+  }
+
   Iterable<String> getWhiteList() {
     return whiteList
   }
@@ -99,11 +141,18 @@ class AndResGuardExtension {
   @Override
   String toString() {
     """| use7zip = ${use7zip}
+           | compressEffort = ${compressEffort}
            | useSign = ${useSign}
            | metaName = ${metaName}
            | fixedResName = ${fixedResName}
            | keepRoot = ${keepRoot}
            | mergeDuplicatedRes = ${mergeDuplicatedRes}
+           | streamZip = ${streamZip}
+           | copyMode = ${copyMode}
+           | incremental = ${incremental}
+           | reportMetrics = ${reportMetrics}
+           | logLevel = ${logLevel}
+           | workerIsolation = ${workerIsolation}
            | whiteList = ${whiteList}
            | compressFilePattern = ${compressFilePattern}
            | finalApkBackupPath = ${finalApkBackupPath}
@@ -5,6 +5,9 @@ import org.gradle.api.Project
 
 /**
  * Registers the plugin's tasks.
+ * <p>
+ * Tasks are registered lazily: each variant output is visited once and turned into a {@link BuildInfo} of providers,
+ * and a resguard task only picks its own outputs and resolves the apk path when it is actually created.
  *
  * @author sim sun (sunsj1231@gmail.com)
  */
@@ -21,34 +24,68 @@ class AndResGuardPlugin implements Plugin<Project> {
 
     project.afterEvaluate {
       def android = project.extensions.android
-      createTask(project, USE_APK_TASK_NAME)
+      //所有变体的输出，每个变体只遍历一次，任务创建的时候再从里面挑出自己的
+      List<BuildInfo> buildInfos = []
+      registerTask(project, USE_APK_TASK_NAME, buildInfos)
 
       android.applicationVariants.all { variant ->
+        variant.outputs.all { output ->
+          buildInfos << createBuildInfo(project, variant, output)
+        }
         def variantName = variant.name.capitalize()
-        createTask(project, variantName)
+        registerTask(project, variantName, buildInfos)
       }
 
       android.buildTypes.all { buildType ->
         def buildTypeName = buildType.name.capitalize()
-        createTask(project, buildTypeName)
+        registerTask(project, buildTypeName, buildInfos)
       }
 
       android.productFlavors.all { flavor ->
         def flavorName = flavor.name.capitalize()
-        createTask(project, flavorName)
+        registerTask(project, flavorName, buildInfos)
       }
 
       project.extensions.findByName("sevenzip").loadArtifact(project)
     }
   }
 
-  private static void createTask(Project project, variantName) {
+  private static void registerTask(Project project, variantName, List<BuildInfo> buildInfos) {
     def taskName = "resguard${variantName}"
-    if (project.tasks.findByPath(taskName) == null) {
-      def task = project.task(taskName, type: AndResGuardTask)
+    if (project.tasks.names.contains(taskName)) {
+      return
+    }
+    project.tasks.register(taskName, AndResGuardTask) { task ->
+      task.buildInfos = buildInfos
       if (variantName != USE_APK_TASK_NAME) {
         task.dependsOn "assemble${variantName}"
       }
     }
   }
-}
\ No newline at end of file
+
+  private static BuildInfo createBuildInfo(Project project, variant, output) {
+    //输出apk文件路径(例：E:\111work\code\code_me\demo\app\build\outputs\apk\debug\app-debug.apk)
+    //要拿到 package 任务才能知道，延迟到 resguard 任务用到的时候再计算，不会提前创建 package 任务
+    def apkFile = project.provider {
+      File outputFile = null
+      try {
+        if (variant.metaClass.respondsTo(variant, "getPackageApplicationProvider")) {
+          outputFile = new File(variant.packageApplicationProvider.get().outputDirectory, output.outputFileName)
+        }
+      } catch (Exception ignore) {
+        // no-op
+      } finally {
+        outputFile = outputFile ?: output.outputFile
+      }
+      return outputFile
+    }
+    return new BuildInfo(
+        apkFile,
+        project.provider { variant.variantData.variantConfiguration.signingConfig },
+        project.provider { variant.variantData.variantConfiguration.applicationId },
+        variant.name,
+        variant.buildType.name,
+        variant.productFlavors,
+        project.provider { variant.mergedFlavor.minSdkVersion.apiLevel })
+  }
+}
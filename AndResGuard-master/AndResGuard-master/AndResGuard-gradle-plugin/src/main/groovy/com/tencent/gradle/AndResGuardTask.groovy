@@ -3,70 +3,97 @@ package com.tencent.gradle
 import com.tencent.mm.androlib.res.util.StringUtil
 import com.tencent.mm.directory.PathNotExist
 import com.tencent.mm.resourceproguard.InputParam
-import com.tencent.mm.resourceproguard.Main
+import com.tencent.mm.util.Md5Util
 import org.gradle.api.DefaultTask
 import org.gradle.api.GradleException
+import org.gradle.api.file.FileCollection
+import org.gradle.api.tasks.CacheableTask
+import org.gradle.api.tasks.Input
+import org.gradle.api.tasks.InputFile
+import org.gradle.api.tasks.InputFiles
+import org.gradle.api.tasks.Internal
+import org.gradle.api.tasks.Optional
+import org.gradle.api.tasks.OutputDirectories
+import org.gradle.api.tasks.OutputFile
+import org.gradle.api.tasks.PathSensitive
+import org.gradle.api.tasks.PathSensitivity
 import org.gradle.api.tasks.TaskAction
+import org.gradle.workers.IsolationMode
+import org.gradle.workers.WorkerConfiguration
+import org.gradle.workers.WorkerExecutor
+
+import javax.inject.Inject
 
 /**
  * The configuration properties.
  *
  * @author Sim Sun (sunsj1231@gmail.com)
  */
+@CacheableTask
 class AndResGuardTask extends DefaultTask {
+  @Internal
   AndResGuardExtension configuration
+  @Internal
   def android
-  def buildConfigs = []
+  //所有变体的输出，由 AndResGuardPlugin 在任务创建时设置，afterEvaluate 之后才会填满
+  @Internal
+  List<BuildInfo> buildInfos = []
+  @Internal
+  ExecutorExtension sevenzip
+  private final WorkerExecutor workerExecutor
 
-  AndResGuardTask() {
+  @Inject
+  AndResGuardTask(WorkerExecutor workerExecutor) {
+    this.workerExecutor = workerExecutor
     description = 'Assemble Resource Proguard APK'
     group = 'andresguard'
-    outputs.upToDateWhen { false }
+    //没有设置 finalApkBackupPath 时会覆盖 assemble 输出的 apk，也就是自己的输入，这时每次都要重新执行
+    outputs.upToDateWhen { StringUtil.isPresent(configuration.finalApkBackupPath) }
+    outputs.cacheIf { StringUtil.isPresent(configuration.finalApkBackupPath) }
     android = project.extensions.android
     configuration = project.andResGuard
+    sevenzip = project.extensions.findByName("sevenzip") as ExecutorExtension
 
     //判断 v1签名时生成jar文件的摘要算法 是否合法
     if (StringUtil.isPresent(configuration.digestalg) && !configuration.digestalg.contains('-')) {
       throw new RuntimeException("Plz add - in your digestalg, such as SHA-1 SHA-256")
     }
 
-    android.applicationVariants.all { variant ->
-      variant.outputs.each { output ->
-        // remove "resguard"(删除task中的resguard字符串 比如原来是 resguardDebug 那么操作后就只有debug)
-        String variantName = this.name["resguard".length()..-1]
-        if (variantName.equalsIgnoreCase(variant.buildType.name as String) || isTargetFlavor(variantName,
-            variant.productFlavors, variant.buildType.name) ||
-            variantName.equalsIgnoreCase(AndResGuardPlugin.USE_APK_TASK_NAME)) {
-
-          //输出apk文件路径(例：E:\111work\code\code_me\demo\app\build\outputs\apk\debug\app-debug.apk)
-          def outputFile = null
-          try {
-            if (variant.metaClass.respondsTo(variant, "getPackageApplicationProvider")) {
-              outputFile = new File(variant.packageApplicationProvider.get().outputDirectory, output.outputFileName)
-            }
-          } catch (Exception ignore) {
-            // no-op
-          } finally {
-            outputFile = outputFile ?: output.outputFile
-          }
-
-          //将 BuildInfo 的内容 map到 buildConfigs中
-          buildConfigs << new BuildInfo(
-              outputFile,
-              variant.variantData.variantConfiguration.signingConfig,
-              variant.variantData.variantConfiguration.applicationId,
-              variant.buildType.name,
-              variant.productFlavors,
-              variantName,
-              variant.mergedFlavor.minSdkVersion.apiLevel)
-        }
-      }
-    }
     if (!project.plugins.hasPlugin('com.android.application')) {
       throw new GradleException('generateARGApk: Android Application plugin required')
     }
   }
 
+  /**
+   * remove "resguard"(删除task中的resguard字符串 比如原来是 resguardDebug 那么操作后就只有debug)
+   */
+  @Internal
+  String getVariantName() {
+    return name["resguard".length()..-1]
+  }
+
+  @Internal
+  boolean isUseApkTask() {
+    return getVariantName().equalsIgnoreCase(AndResGuardPlugin.USE_APK_TASK_NAME)
+  }
+
+  /**
+   * @return 这个任务要混淆的输出
+   */
+  @Internal
+  List<BuildInfo> getBuildConfigs() {
+    return buildInfos.findAll { isTargetBuild(it) }
+  }
+
+  /**
+   * @return 变体的输出是否由这个任务混淆，按 buildType、flavor、变体名称匹配，resguardUseApk 匹配所有输出
+   */
+  boolean isTargetBuild(BuildInfo info) {
+    String variantName = getVariantName()
+    return variantName.equalsIgnoreCase(info.buildType) || isTargetFlavor(variantName, info.flavors, info.buildType) ||
+        isUseApkTask()
+  }
+
   static isTargetFlavor(variantName, flavors, buildType) {
     if (flavors.size() > 0) {
       String flavor = flavors.get(0).name
@@ -81,18 +108,127 @@ class AndResGuardTask extends DefaultTask {
     return "${file.parent}/AndResGuard_${fileName}/"
   }
 
+  /**
+   * @return 这个 BuildInfo 要混淆的 apk，resguardUseApk 没有设置 sourceApk 时返回 null
+   */
+  private File sourceApkOf(config) {
+    if (isUseApkTask()) {
+      return StringUtil.isPresent(configuration.sourceApk) ? new File(configuration.sourceApk) : null
+    }
+    return config.file
+  }
+
+  @InputFiles
+  @PathSensitive(PathSensitivity.NONE)
+  FileCollection getInputApks() {
+    return project.files(buildConfigs.collect { sourceApkOf(it) }.findAll { it != null })
+  }
+
+  @InputFile
+  @Optional
+  @PathSensitive(PathSensitivity.NONE)
+  File getMappingFile() {
+    return configuration.mappingFile
+  }
+
+  @InputFiles
+  @PathSensitive(PathSensitivity.NONE)
+  FileCollection getSigningStoreFiles() {
+    if (!configuration.useSign) {
+      return project.files()
+    }
+    return project.files(buildConfigs.collect { it.signConfig?.storeFile }.findAll { it != null })
+  }
+
+  /**
+   * 会影响输出的配置，logLevel、workerIsolation 和 7z、zipalign 的绝对路径不影响结果，不算在内，
+   * 这样不同机器之间也可以复用 build cache。
+   * 输入的值会明文保存在 .gradle 的任务历史中，签名的 alias 和密码只放 md5
+   */
+  @Input
+  Map<String, Object> getResguardProperties() {
+    Map<String, Object> properties = [
+        use7zip            : configuration.use7zip,
+        compressEffort     : configuration.compressEffort,
+        useSign            : configuration.useSign,
+        metaName           : configuration.metaName,
+        fixedResName       : configuration.fixedResName,
+        keepRoot           : configuration.keepRoot,
+        mergeDuplicatedRes : configuration.mergeDuplicatedRes,
+        streamZip          : configuration.streamZip,
+        copyMode           : configuration.copyMode,
+        incremental        : configuration.incremental,
+        reportMetrics      : configuration.reportMetrics,
+        whiteList          : configuration.whiteList.collect { it.toString() },
+        compressFilePattern: configuration.compressFilePattern.collect { it.toString() },
+        digestalg          : configuration.digestalg,
+        sourceBuildType    : configuration.sourceBuildType,
+        sourceFlavor       : configuration.sourceFlavor,
+        buildToolsVersion  : android.buildToolsVersion?.toString(),
+    ]
+    buildConfigs.eachWithIndex { config, i ->
+      def signConfig = configuration.useSign ? config.signConfig : null
+      properties["buildConfig${i}".toString()] = [
+          packageName     : config.packageName?.toString(),
+          buildType       : config.buildType?.toString(),
+          flavors         : config.flavors.collect { it.name.toString() },
+          minSDKVersion   : config.minSDKVersion,
+          signingKey      : signConfig == null ? null :
+              Md5Util.getMD5Str("${signConfig.keyAlias}\n${signConfig.storePassword}\n${signConfig.keyPassword}".toString()),
+          v2SigningEnabled: signConfig?.hasProperty('v2SigningEnabled') ? signConfig.v2SigningEnabled : null,
+      ]
+    }
+    return properties
+  }
+
+  /**
+   * 每个 apk 的 AndResGuard_xxx 输出目录
+   */
+  @OutputDirectories
+  Map<String, File> getOutputDirectories() {
+    Map<String, File> directories = [:]
+    buildConfigs.each { config ->
+      if (config.file != null) {
+        directories[config.file.name.toString()] = project.file(useFolder(config.file))
+      }
+    }
+    return directories
+  }
+
+  /**
+   * 有多个 apk 时依次拷贝到这里，只保留最后一个
+   */
+  @OutputFile
+  @Optional
+  File getFinalApkFile() {
+    return StringUtil.isPresent(configuration.finalApkBackupPath) ? new File(configuration.finalApkBackupPath) : null
+  }
+
+  @Internal
   def getZipAlignPath() {
     return "${android.getSdkDirectory().getAbsolutePath()}/build-tools/${android.buildToolsVersion}/zipalign"
   }
 
+  @Internal
+  IsolationMode getIsolationMode() {
+    String isolation = configuration.workerIsolation ?: "none"
+    try {
+      return IsolationMode.valueOf(isolation.trim().toUpperCase(Locale.ENGLISH))
+    } catch (IllegalArgumentException ignore) {
+      throw new GradleException("workerIsolation must be one of none, classloader or process, but was ${isolation}")
+    }
+  }
+
   @TaskAction
   run() {
-    project.logger.info("[AndResGuard] configuartion:$configuration")
-    project.logger.info("[AndResGuard] BuildConfigs:$buildConfigs")
+    logger.info("[AndResGuard] configuartion:$configuration")
+    logger.info("[AndResGuard] BuildConfigs:$buildConfigs")
 
+    //先确定要混淆的 apk，再交给 worker
+    List<List> targets = []
     buildConfigs.each { config ->
       //如果是 resguardUseApk Task
-      if (config.taskName == AndResGuardPlugin.USE_APK_TASK_NAME) {
+      if (isUseApkTask()) {
         if (StringUtil.isBlank(configuration.sourceApk) || !new File(configuration.sourceApk).exists()) {
           throw new PathNotExist("Original APK not existed for " + AndResGuardPlugin.USE_APK_TASK_NAME)
         }
@@ -108,23 +244,50 @@ class AndResGuardTask extends DefaultTask {
               0 &&
               config.flavors.get(0).name ==
               configuration.sourceFlavor)) {
-            RunGradleTask(config, configuration.sourceApk, config.minSDKVersion)
+            targets.add([config, configuration.sourceApk])
           }
         }
       } else {
         if (config.file == null || !config.file.exists()) {
           throw new PathNotExist("Original APK not existed")
         }
-        RunGradleTask(config, config.file.getAbsolutePath(), config.minSDKVersion)
+        targets.add([config, config.file.getAbsolutePath()])
+      }
+    }
+
+    //每个 apk 交给一个 worker，在 gradle 的 worker 数量限制内并行混淆。
+    //多个 apk 最终要拷贝到同一个文件时（finalApkBackupPath，或者 resguardUseApk 的 sourceApk），
+    //并行会同时写这个文件，只能和原来一样依次执行，最后一个生效
+    List<String> finalApkPaths = targets.collect { finalApkPathOf(it[1] as String) }
+    boolean sharedBackup = finalApkPaths.toSet().size() < finalApkPaths.size()
+    if (sharedBackup) {
+      logger.warn("[AndResGuard] ${targets.size()} apks are copied to the same final apk, " +
+          "resguard them one by one and keep the last one")
+    }
+    targets.each { target ->
+      def config = target[0]
+      RunGradleTask(config, target[1] as String, config.minSDKVersion)
+      if (sharedBackup) {
+        workerExecutor.await()
       }
     }
+    workerExecutor.await()
+  }
+
+  /**
+   * @return 混淆后的 apk 最终拷贝到的位置，没有设置 finalApkBackupPath 时覆盖输入的 apk
+   */
+  private String finalApkPathOf(String absPath) {
+    if (configuration.finalApkBackupPath != null && configuration.finalApkBackupPath.length() > 0) {
+      return configuration.finalApkBackupPath
+    }
+    return absPath
   }
 
   def RunGradleTask(config, String absPath, int minSDKVersion) {
     def signConfig = config.signConfig
     String packageName = config.packageName
     ArrayList<String> whiteListFullName = new ArrayList<>()
-    ExecutorExtension sevenzip = project.extensions.findByName("sevenzip") as ExecutorExtension
     //对资源文件补全路径
     configuration.whiteList.each { res ->
       if (res.startsWith("R")) {
@@ -138,10 +301,16 @@ class AndResGuardTask extends DefaultTask {
         .setMappingFile(configuration.mappingFile)
         .setWhiteList(whiteListFullName)
         .setUse7zip(configuration.use7zip)
+        .setCompressEffort(configuration.compressEffort)
         .setMetaName(configuration.metaName)
         .setFixedResName(configuration.fixedResName)
         .setKeepRoot(configuration.keepRoot)
         .setMergeDuplicatedRes(configuration.mergeDuplicatedRes)
+        .setStreamZip(configuration.streamZip)
+        .setCopyMode(configuration.copyMode)
+        .setIncremental(configuration.incremental)
+        .setReportMetrics(configuration.reportMetrics)
+        .setLogLevel(configuration.logLevel)
         .setCompressFilePattern(configuration.compressFilePattern)
         .setZipAlign(getZipAlignPath())
         .setSevenZipPath(sevenzip.path)
@@ -151,11 +320,7 @@ class AndResGuardTask extends DefaultTask {
         .setDigestAlg(configuration.digestalg)
         .setMinSDKVersion(minSDKVersion)
 
-    if (configuration.finalApkBackupPath != null && configuration.finalApkBackupPath.length() > 0) {
-      builder.setFinalApkBackupPath(configuration.finalApkBackupPath)
-    } else {
-      builder.setFinalApkBackupPath(absPath)
-    }
+    builder.setFinalApkBackupPath(finalApkPathOf(absPath))
 
     if (configuration.useSign) {
       if (signConfig == null) {
@@ -170,8 +335,13 @@ class AndResGuardTask extends DefaultTask {
       }
     }
 
-    //配置InputParam 并传入 Main的 gradleRun 方法
+    //配置InputParam 并交给 worker 调用 Main的 gradleRun 方法
     InputParam inputParam = builder.create()
-    Main.gradleRun(inputParam)
+    IsolationMode isolationMode = getIsolationMode()
+    workerExecutor.submit(AndResGuardWorker) { WorkerConfiguration workerConfig ->
+      workerConfig.isolationMode = isolationMode
+      workerConfig.displayName = "AndResGuard ${new File(absPath).name}"
+      workerConfig.params(inputParam)
+    }
   }
 }
\ No newline at end of file
@@ -0,0 +1,23 @@
+package com.tencent.gradle
+
+import com.tencent.mm.resourceproguard.InputParam
+import com.tencent.mm.resourceproguard.Main
+
+import javax.inject.Inject
+
+/**
+ * Resguards one apk in a Gradle worker, so the outputs of a task run in parallel under Gradle's worker limits.
+ */
+class AndResGuardWorker implements Runnable {
+  private final InputParam inputParam
+
+  @Inject
+  AndResGuardWorker(InputParam inputParam) {
+    this.inputParam = inputParam
+  }
+
+  @Override
+  void run() {
+    Main.gradleRun(inputParam)
+  }
+}
@@ -1,34 +1,54 @@
 package com.tencent.gradle
 
+import org.gradle.api.provider.Provider
+
 /**
- * Created by simsun on 5/13/16.*/
+ * Created by simsun on 5/13/16.
+ * apk 路径、签名配置、applicationId 和 minSdkVersion 都是 Provider，等 resguard 任务真正用到时才会计算*/
 
 class BuildInfo {
-  def file
-  def signConfig
-  def packageName
-  def buildType
-  def flavors
-  def taskName
-  def minSDKVersion
-
-  BuildInfo(file, sign, packageName, buildType, flavors, taskName, minSDKVersion) {
-    this.file = file
-    this.signConfig = sign
-    this.packageName = packageName
+  private final Provider<File> fileProvider
+  private final Provider<Object> signConfigProvider
+  private final Provider<String> packageNameProvider
+  private final Provider<Integer> minSDKVersionProvider
+  final String variantName
+  final String buildType
+  final def flavors
+
+  BuildInfo(Provider<File> file, Provider<Object> sign, Provider<String> packageName, String variantName,
+      String buildType, flavors, Provider<Integer> minSDKVersion) {
+    this.fileProvider = file
+    this.signConfigProvider = sign
+    this.packageNameProvider = packageName
+    this.variantName = variantName
     this.buildType = buildType
     this.flavors = flavors
-    this.taskName = taskName
-    this.minSDKVersion = minSDKVersion
+    this.minSDKVersionProvider = minSDKVersion
+  }
+
+  File getFile() {
+    return fileProvider.getOrNull()
+  }
+
+  def getSignConfig() {
+    return signConfigProvider.getOrNull()
+  }
+
+  String getPackageName() {
+    return packageNameProvider.getOrNull()
+  }
+
+  int getMinSDKVersion() {
+    return minSDKVersionProvider.get()
   }
 
   @Override
   String toString() {
     """| file = ${file}
        | packageName = ${packageName}
+       | variantName = ${variantName}
        | buildType = ${buildType}
        | flavors = ${flavors}
-       | taskname = ${taskName}
        | minSDKVersion = ${minSDKVersion}
     """.stripMargin()
   }
@@ -11,7 +11,7 @@ public class ParseResourceMain {
 		FileInputStream fis = null;
 		ByteArrayOutputStream bos = null;
 		try{
-			fis = new FileInputStream("E:\\111work\\code\\code_me\\demo\\arscparse\\src\\main\\resource\\resources_gdt1.arsc");
+			fis = new FileInputStream(args.length > 0 ? args[0] : "E:\\111work\\code\\code_me\\demo\\arscparse\\src\\main\\resource\\resources_gdt1.arsc");
 			bos = new ByteArrayOutputStream();
 			byte[] buffer = new byte[1024];
 			int len = 0;